@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import org.bson.RawBsonDocument;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The requests of the run phase through the synchronous driver against an in-process {@link StandInServer}, i.e.
+ * the client side cost of a request including the loopback round trip
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DriverBenchmark {
+
+    private StandInServer server;
+    private MongoClient client;
+    private MongoCollection<RawBsonDocument> collection;
+
+    @State(Scope.Thread)
+    public static class Payloads {
+        private final PayloadCache payloads = new PayloadCache(1024, 1024, new IndexedFields(IndexedFields.DEFAULT_GROUP_CARDINALITY), null);
+        private int id;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StandInServer(1024);
+        final BenchConfig config = new BenchConfig();
+        config.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+        config.setInstances(server.start(new int[]{0}));
+        client = ClientFactory.createClient(config, config.getInstances()[0]);
+        collection = client.getDatabase(MongoBench.DB_NAME).getCollection(MongoBench.COLLECTION_NAME, RawBsonDocument.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public RawBsonDocument read(Payloads payloads) {
+        return collection.find(payloads.payloads.getIdFilter(payloads.id++ & 1023)).first();
+    }
+
+    @Benchmark
+    public void insert(Payloads payloads) {
+        collection.insertOne(payloads.payloads.getInsertDocument(payloads.id++));
+    }
+
+    @Benchmark
+    public void update(Payloads payloads) {
+        collection.updateOne(payloads.payloads.getIdFilter(payloads.id++ & 1023), payloads.payloads.getUpdateDocument());
+    }
+}
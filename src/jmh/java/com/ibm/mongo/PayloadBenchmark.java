@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.apache.commons.lang.RandomStringUtils;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of building the documents sent by the load and run phases
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({"1024"})
+    private int documentSize;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    private final IndexedFields fields = new IndexedFields(IndexedFields.DEFAULT_GROUP_CARDINALITY);
+    private final DocumentGenerator generator = new DocumentGenerator("{name: '$string:8..32', age: '$int:18..90', "
+            + "address: {street: '$string:10..40', zip: '$int:10000..99999'}, tags: {$array: '$string:4..12', $size: '0..8'}, "
+            + "scores: {$array: '$double', $size: 5}, joined: '$date', avatar: '$binary:256~64', data: '$string:512'}",
+            0.5d, 42L, fields);
+    private PayloadCache payloads;
+    private String data;
+    private int id;
+
+    @Setup
+    public void setup() {
+        payloads = new PayloadCache(documentSize, 1024, fields, null);
+        data = RandomStringUtils.randomAlphabetic(documentSize);
+    }
+
+    /**
+     * A batch of the load phase
+     */
+    @Benchmark
+    public List<RawBsonDocument> createDocuments() {
+        return payloads.createDocuments(batchSize, id++);
+    }
+
+    /**
+     * The document of an insert in the run phase
+     */
+    @Benchmark
+    public RawBsonDocument insertDocument() {
+        return payloads.getInsertDocument(id++);
+    }
+
+    /**
+     * Encoding the document of an insert from scratch, as done before the documents were pre-encoded
+     */
+    @Benchmark
+    public RawBsonDocument encodeInsertDocument() {
+        return PayloadCache.encode(new BsonDocument("_id", new BsonInt32(id++)).append("data", new BsonString(data)));
+    }
+
+    /**
+     * A document generated from a schema template
+     */
+    @Benchmark
+    public RawBsonDocument generateDocument() {
+        return generator.createDocument(id++);
+    }
+
+    /**
+     * The document of an insert with the synchronous driver
+     */
+    @Benchmark
+    public RawBsonDocument reusedInsertDocument() {
+        return payloads.getReusedInsertDocument(id++);
+    }
+
+    @Benchmark
+    public RawBsonDocument reusedIdFilter() {
+        return payloads.getReusedIdFilter(id++);
+    }
+
+    @Benchmark
+    public RawBsonDocument cachedIdFilter() {
+        return payloads.getIdFilter(id++ & 1023);
+    }
+
+    @Benchmark
+    public RawBsonDocument uncachedIdFilter() {
+        return payloads.getIdFilter(1024 + (id++ & 0xFFFFF));
+    }
+}
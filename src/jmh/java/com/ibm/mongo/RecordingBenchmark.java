@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The per request overhead of the run phase workers: recording a latency and taking an instance from the scheduler.
+ * Run with several threads (<code>-t</code>) to see the effect of contention between workers sharing the statistics
+ * and the scheduler of the instances
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordingBenchmark {
+
+    private static final int PORT = 27017;
+
+    private static final int NUM_SCHEDULED_PORTS = 16;
+
+    private static final BooleanSupplier RUNNING = () -> false;
+
+    private final PortStats stats = new PortStats("localhost:" + PORT, PORT);
+
+    private Worker closedLoop;
+    private Worker openLoop;
+    private OpenLoopSchedule schedule;
+    private PortScheduler<Object> scheduler;
+
+    @Setup
+    public void setup() {
+        final BenchConfig config = new BenchConfig();
+        config.setInstances(new int[]{PORT});
+        // high enough to never sleep, so only the check itself is measured
+        config.setTargetRate(1e12f);
+        closedLoop = new Worker(config);
+        closedLoop.started();
+        final BenchConfig openLoopConfig = config.copy();
+        openLoopConfig.setArrival(OpenLoopSchedule.Arrival.POISSON);
+        openLoop = new Worker(openLoopConfig);
+        openLoop.started();
+        schedule = new OpenLoopSchedule(1e9f, OpenLoopSchedule.Arrival.POISSON);
+        schedule.start();
+        final BenchConfig schedulerConfig = config.copy();
+        final int[] ports = new int[NUM_SCHEDULED_PORTS];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = PORT + i;
+        }
+        schedulerConfig.setInstances(ports);
+        scheduler = new PortScheduler<>(schedulerConfig, new MetricsRegistry(schedulerConfig), 64, port -> new Object(), client -> {
+        });
+        scheduler.start();
+    }
+
+    @Benchmark
+    public void recordLatency() {
+        final long now = System.nanoTime();
+        closedLoop.recordLatency(OpType.READ, stats, 0, now - 150000, now);
+    }
+
+    @Benchmark
+    public void recordLatencyOpenLoop() {
+        final long now = System.nanoTime();
+        openLoop.recordLatency(OpType.READ, stats, now - 200000, now - 150000, now);
+    }
+
+    /**
+     * Taking the next ready instance from the shared queue and handing it back, including the check of its schedule
+     */
+    @Benchmark
+    public int acquireInstance(LeaseHolder holder) {
+        scheduler.acquire(holder.lease, RUNNING);
+        final PortScheduler.Slot<Object> slot = holder.lease.getSlot();
+        scheduler.release(slot);
+        return slot.getPort();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long openLoopSchedule() {
+        return schedule.next();
+    }
+
+    private static final class Worker extends AbstractRunThread {
+
+        private Worker(BenchConfig config) {
+            super(config, new Workload(OperationMix.parse(OperationMix.DEFAULT_MIX), new UniformKeyChooser(),
+                            config.getInstances(), 1000, 100, new IndexedFields(IndexedFields.DEFAULT_GROUP_CARDINALITY), null));
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LeaseHolder {
+        private final PortScheduler.Lease<Object> lease = new PortScheduler.Lease<>();
+    }
+}
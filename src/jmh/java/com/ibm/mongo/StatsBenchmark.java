@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of collecting and merging the statistics of all workers and instances for a report
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsBenchmark {
+
+    @Param({"16"})
+    private int numThreads;
+
+    @Param({"100"})
+    private int numPorts;
+
+    private final Collection<AbstractRunThread> threads = new ArrayList<>();
+    private MetricsRegistry metrics;
+
+    @Setup
+    public void setup() throws Exception {
+        final BenchConfig config = new BenchConfig();
+        final int[] ports = new int[numPorts];
+        for (int i = 0; i < numPorts; i++) {
+            ports[i] = 30000 + i;
+        }
+        config.setInstances(ports);
+        metrics = new MetricsRegistry(config);
+        final Workload workload = new Workload(OperationMix.parse(OperationMix.DEFAULT_MIX), new UniformKeyChooser(), ports, 1000, 100,
+                new IndexedFields(IndexedFields.DEFAULT_GROUP_CARDINALITY), null);
+        final Random random = new Random(42);
+        for (int i = 0; i < numThreads; i++) {
+            final List<PortStats> slice = new ArrayList<>();
+            for (int port = i; port < numPorts; port += numThreads) {
+                slice.add(metrics.getPortStats(ports[port]));
+            }
+            final AbstractRunThread t = new AbstractRunThread(config, workload) {
+                @Override
+                public void run() {
+                }
+            };
+            for (int j = 0; j < 100000; j++) {
+                final long latency = 50000 + (long) (Math.abs(random.nextGaussian()) * 1000000);
+                t.recordLatency(j % 10 == 0 ? OpType.INSERT : OpType.READ, slice.get(j % slice.size()), 0, 0, latency);
+            }
+            threads.add(t);
+        }
+    }
+
+    /**
+     * Collecting the result of all threads and instances as done for every report
+     */
+    @Benchmark
+    public RunResult collectResult() {
+        return RunResult.collect(threads, metrics, null, 1000);
+    }
+
+    /**
+     * Merging the results of two agents
+     */
+    @Benchmark
+    public RunResult mergeResults() {
+        final RunResult result = RunResult.collect(threads, metrics, null, 1000);
+        result.add(RunResult.collect(threads, metrics, null, 1000));
+        return result;
+    }
+}
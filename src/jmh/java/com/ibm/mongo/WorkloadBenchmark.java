@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of choosing the next operation and document
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkloadBenchmark {
+
+    @Param({"uniform", "zipfian", "latest", "hotspot"})
+    private String keyDistribution;
+
+    private final Random random = new Random();
+    private final KeySpace keys = new KeySpace(1000000);
+    private final OperationMix mix = OperationMix.parse("read=0.5,update=0.3,insert=0.1,scan=0.1");
+    private KeyChooser chooser;
+
+    @Setup
+    public void setup() {
+        chooser = KeyChooser.create(keyDistribution, keys.size());
+    }
+
+    @Benchmark
+    public int nextKey() {
+        return chooser.nextKey(keys, random);
+    }
+
+    @Benchmark
+    public OpType nextOperation() {
+        return mix.next(random);
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency recording and statistics shared by the run phase workers. The instances and the pacing of the requests are
+ * handed to the workers by a shared {@link PortScheduler}
+ */
+public abstract class AbstractRunThread implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(AbstractRunThread.class);
+    private static final int NUM_ID_FILTERS = 1024;
+
+    /**
+     * The granularity of the payload sizes of replayed requests, which limits the number of payloads cached per thread
+     */
+    private static final int PAYLOAD_SIZE_STEP = 256;
+    private final AtomicBoolean stop = new AtomicBoolean(false);
+    private final AtomicBoolean initialized = new AtomicBoolean(false);
+    protected final BenchConfig config;
+    protected final int timeoutMs;
+    protected final Workload workload;
+    private final PayloadCache payloads;
+    private final Map<Integer, PayloadCache> payloadsBySize = new HashMap<>();
+    private TraceRecorder.Part tracePart;
+    private final LongAdder[] counts = new LongAdder[OpType.values().length];
+    private final LongAdder[] documents = new LongAdder[OpType.values().length];
+    private final LongAdder misses = new LongAdder();
+    private final boolean openLoop;
+    private LatencyRecorder latencyRecorder;
+    private final LatencyStats[] latencies = new LatencyStats[OpType.values().length];
+    private final LatencyStats[] serviceTimes = new LatencyStats[OpType.values().length];
+    private volatile long startMillis;
+    private volatile long elapsed = 0l;
+
+    protected AbstractRunThread(BenchConfig config, Workload workload) {
+        this.config = config;
+        this.workload = workload;
+        this.payloads = new PayloadCache(config.getDocumentSize(), NUM_ID_FILTERS, workload.getFields(), workload.getGenerator());
+        this.openLoop = config.getArrival() != null || config.getTraceFile() != null;
+        this.timeoutMs = config.getTimeout() * 1000;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+            documents[i] = new LongAdder();
+            latencies[i] = new LatencyStats();
+            serviceTimes[i] = new LatencyStats();
+        }
+    }
+
+    /**
+     * Write every latency of this thread into the latency file of the run. Must be called before the thread is started
+     */
+    public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
+    /**
+     * Mark the thread as initialized and start the clock for the rate of the thread
+     */
+    protected void started() {
+        startMillis = System.currentTimeMillis();
+        initialized.set(true);
+    }
+
+    protected void updateElapsed() {
+        elapsed = System.currentTimeMillis() - startMillis;
+    }
+
+    /**
+     * Record the latency of a finished request and count it. Safe to call concurrently from multiple threads
+     *
+     * @param type          the type of the request
+     * @param stats         the statistics of the instance the request has been sent to, see
+     *                      {@link PortScheduler.Slot#getStats()}
+     * @param intendedStart the intended start time in open loop mode as handed out by the {@link PortScheduler}
+     * @param start         the actual start time
+     * @param end           the time the response has been received
+     */
+    protected void recordLatency(OpType type, PortStats stats, long intendedStart, long start, long end) {
+        recordLatency(type, stats, intendedStart, start, end, 1);
+    }
+
+    /**
+     * Record the latency of a finished request writing or reading several documents, e.g. a batch of inserts
+     *
+     * @param numDocuments the number of documents of the request
+     * @see #recordLatency(OpType, PortStats, long, long, long)
+     */
+    protected void recordLatency(OpType type, PortStats stats, long intendedStart, long start, long end, int numDocuments) {
+        long latency = end - start;
+        if (openLoop) {
+            serviceTimes[type.ordinal()].record(latency);
+            latency = end - intendedStart;
+        }
+        if (latencyRecorder != null) {
+            latencyRecorder.record(start, type, stats.getInstanceId(), latency);
+        }
+        latencies[type.ordinal()].record(latency);
+        counts[type.ordinal()].increment();
+        documents[type.ordinal()].add(numDocuments);
+        stats.record(type, latency);
+    }
+
+    /**
+     * Write every request of this thread to the given part of a trace. Must be called before the thread is started
+     */
+    public void setTracePart(TraceRecorder.Part tracePart) {
+        this.tracePart = tracePart;
+    }
+
+    /**
+     * Write a request to the trace if a trace is recorded. Must be called before the start of the request is taken,
+     * so recording the trace is not part of the measured latency
+     *
+     * @param intendedStart the intended start time in open loop mode, 0 otherwise
+     * @param key           the _id of the document of the request
+     * @param document      the document written by the request, null for reads
+     */
+    protected void recordTrace(OpType type, int port, long intendedStart, int key, int numDocuments, RawBsonDocument document) {
+        final TraceRecorder.Part part = tracePart;
+        if (part == null) {
+            return;
+        }
+        try {
+            part.record(intendedStart != 0L ? intendedStart : System.nanoTime(), type, port, key,
+                    document != null ? document.getByteBuffer().remaining() : 0, numDocuments);
+        } catch (IOException e) {
+            log.error("Unable to record trace, stopped recording the requests of this thread", e);
+            tracePart = null;
+        }
+    }
+
+    /**
+     * @return the payloads of the configured document size, or of the payload size of a replayed request. Payloads
+     * of other sizes are created on first use, so this must only be called by the worker thread itself
+     */
+    protected PayloadCache getPayloads(TraceRecord record) {
+        if (record == null || record.getPayloadSize() <= 0 || workload.getGenerator() != null) {
+            return payloads;
+        }
+        // the trace holds the encoded size of the documents, the cache the size of their data field
+        final int dataSize = Math.max(record.getPayloadSize() - payloads.getInsertOverhead(), 0);
+        final int size = roundPayloadSize(dataSize);
+        if (size == roundPayloadSize(config.getDocumentSize())) {
+            return payloads;
+        }
+        PayloadCache cache = payloadsBySize.get(size);
+        if (cache == null) {
+            cache = new PayloadCache(size, NUM_ID_FILTERS, workload.getFields(), null);
+            payloadsBySize.put(size, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the document written by a request, i.e. the inserted document or the first document of a batch, or the
+     * update document, null for requests which do not write
+     *
+     * @param reused whether the inserted document may be reused by the next request, which is only the case with the
+     *               synchronous driver
+     */
+    protected static RawBsonDocument getDocument(OpType type, PayloadCache payloads, int id, List<RawBsonDocument> batch, boolean reused) {
+        switch (type) {
+            case INSERT:
+                return batch != null ? batch.get(0) : reused ? payloads.getReusedInsertDocument(id) : payloads.getInsertDocument(id);
+            case UPDATE:
+            case UPSERT:
+            case READ_MODIFY_WRITE:
+                return payloads.getUpdateDocument();
+            default:
+                return null;
+        }
+    }
+
+    private static int roundPayloadSize(int size) {
+        return (size + PAYLOAD_SIZE_STEP - 1) / PAYLOAD_SIZE_STEP * PAYLOAD_SIZE_STEP;
+    }
+
+    /**
+     * Count an operation which did not find the document it was looking for, e.g. because it has been deleted
+     */
+    protected void recordMiss(PortStats stats) {
+        misses.increment();
+        stats.recordMiss();
+    }
+
+    protected boolean isStopped() {
+        return stop.get();
+    }
+
+    public void stop() {
+        stop.set(true);
+    }
+
+    public float getRate() {
+        return ((float) getNumOperations() * 1000f) / (float) elapsed;
+    }
+
+    public long getNumOperations() {
+        long sum = 0;
+        for (final LongAdder count : counts) {
+            sum += count.sum();
+        }
+        return sum;
+    }
+
+    public long getCount(OpType type) {
+        return counts[type.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of documents of the operations of the given type, which differs from the number of
+     * operations for batched inserts
+     */
+    public long getDocuments(OpType type) {
+        return documents[type.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of operations which did not find their document
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public LatencyStats getLatencies(OpType type) {
+        return latencies[type.ordinal()];
+    }
+
+    /**
+     * @return the latencies measured from the actual instead of the intended start of the operations. Only recorded in
+     * open loop mode
+     */
+    public LatencyStats getServiceTimes(OpType type) {
+        return serviceTimes[type.ordinal()];
+    }
+
+    public boolean isOpenLoop() {
+        return openLoop;
+    }
+
+    public boolean isInitialized() {
+        return initialized.get();
+    }
+
+    public synchronized void resetData() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i].reset();
+            documents[i].reset();
+            latencies[i].reset();
+            serviceTimes[i].reset();
+        }
+        misses.reset();
+        startMillis = System.currentTimeMillis();
+    }
+}
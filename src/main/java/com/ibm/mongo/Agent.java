@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.Socket;
+
+/**
+ * Runs a share of the instances of a distributed run on behalf of a {@link Coordinator}. The agent connects to the
+ * coordinator, receives its configuration and then starts, measures and stops its workers when told to.
+ */
+public class Agent {
+
+    private static final Logger log = LoggerFactory.getLogger(Agent.class);
+
+    private final String host;
+    private final int port;
+    private final int timeoutMs;
+
+    /**
+     * @param coordinator the address of the coordinator as [host:]port
+     * @param timeoutMs   the time to wait for the coordinator to accept the connection
+     */
+    public Agent(String coordinator, int timeoutMs) {
+        final int colonIdx = coordinator.lastIndexOf(':');
+        this.host = colonIdx == -1 ? "localhost" : coordinator.substring(0, colonIdx);
+        this.port = Coordinator.parsePort(coordinator);
+        this.timeoutMs = timeoutMs;
+    }
+
+    public void run() throws IOException {
+        try (final Socket socket = connect();
+             final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            out.flush();
+            final MessageInputStream in = new MessageInputStream(new BufferedInputStream(socket.getInputStream()));
+            send(out, new AgentMessage(AgentMessage.Type.HELLO));
+            final AgentMessage task = receive(in);
+            if (task.getType() != AgentMessage.Type.TASK) {
+                throw new IOException("Expected task from coordinator but got " + task.getType());
+            }
+            final BenchConfig config = (BenchConfig) task.getPayload();
+            log.info("Running {} instances for coordinator {}:{}", config.getInstances().length, host, port);
+            final RunEngine engine = new RunEngine(config);
+            engine.start();
+            send(out, new AgentMessage(AgentMessage.Type.READY));
+            boolean stopped = false;
+            try {
+                while (!stopped) {
+                    final AgentMessage message = receive(in);
+                    switch (message.getType()) {
+                        case MEASURE:
+                            final long startAt = (Long) message.getPayload();
+                            final long delay = startAt - System.currentTimeMillis();
+                            if (delay < 0 || delay > Coordinator.MEASURE_DELAY_MS) {
+                                log.warn("The measurement window starts in {} ms instead of at most {} ms, the clocks of the coordinator and this agent are not synchronized",
+                                        delay, Coordinator.MEASURE_DELAY_MS);
+                            }
+                            awaitStart(startAt);
+                            engine.startMeasurement();
+                            break;
+                        case REPORT:
+                            send(out, new AgentMessage(AgentMessage.Type.RESULT, engine.collect()));
+                            break;
+                        case STOP:
+                            stopped = true;
+                            send(out, new AgentMessage(AgentMessage.Type.RESULT, engine.stop()));
+                            break;
+                        default:
+                            log.warn("Ignoring unexpected message {} from coordinator", message.getType());
+                    }
+                }
+            } finally {
+                if (!stopped) {
+                    log.error("Lost connection to coordinator. Stopping workers");
+                    engine.stop();
+                }
+            }
+        }
+        log.info("Agent finished");
+    }
+
+    private Socket connect() throws IOException {
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                log.debug("Coordinator {}:{} not reachable yet", host, port);
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException("Interrupted while connecting to coordinator");
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait until the given time in milliseconds since the epoch, or return early with the interrupt flag set if
+     * interrupted
+     */
+    static void awaitStart(long startAt) {
+        long remaining;
+        while ((remaining = startAt - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void send(ObjectOutputStream out, AgentMessage message) throws IOException {
+        out.writeObject(message);
+        out.reset();
+        out.flush();
+    }
+
+    private static AgentMessage receive(MessageInputStream in) throws IOException {
+        try {
+            return (AgentMessage) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown message from coordinator", e);
+        }
+    }
+}
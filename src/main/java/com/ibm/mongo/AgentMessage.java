@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.io.Serializable;
+
+/**
+ * A message exchanged between the coordinator and the agents of a distributed run
+ */
+public class AgentMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /**
+         * Sent by an agent after connecting to the coordinator
+         */
+        HELLO,
+        /**
+         * Sent by the coordinator with the {@link BenchConfig} of the agent's share of the instances
+         */
+        TASK,
+        /**
+         * Sent by an agent once all its workers are sending requests
+         */
+        READY,
+        /**
+         * Sent by the coordinator at the end of the warmup with the time in milliseconds since the epoch at which all
+         * agents start the measurement window
+         */
+        MEASURE,
+        /**
+         * Sent by the coordinator to request the statistics of the measurement window so far
+         */
+        REPORT,
+        /**
+         * Sent by the coordinator to stop the workers and request the final statistics
+         */
+        STOP,
+        /**
+         * Sent by an agent with a {@link RunResult} in response to {@link #REPORT} and {@link #STOP}
+         */
+        RESULT
+    }
+
+    private final Type type;
+    private final Serializable payload;
+
+    public AgentMessage(Type type) {
+        this(type, null);
+    }
+
+    public AgentMessage(Type type, Serializable payload) {
+        this.type = type;
+        this.payload = payload;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Serializable getPayload() {
+        return payload;
+    }
+}
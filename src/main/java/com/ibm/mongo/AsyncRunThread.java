@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoIterable;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A run phase worker using the asynchronous driver. Instead of waiting for every single response the thread keeps up to
+ * a configured number of requests in flight, each sent to the next ready instance of the shared {@link PortScheduler}.
+ * Latencies are recorded in the completion callbacks.
+ * <p>
+ * Unlike the {@link RunThread} the worker does not replace the client of an instance after a timeout. The client is
+ * shared by all requests in flight to the instance, which would all fail if it was closed, and the connection pool
+ * of the asynchronous driver replaces broken connections by itself.
+ */
+public class AsyncRunThread extends AbstractRunThread {
+    private static final Logger log = LoggerFactory.getLogger(AsyncRunThread.class);
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private final Random random = new Random();
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final LongAdder timeouts = new LongAdder();
+    private final RequestOptions requestOptions;
+
+    private final PortScheduler<MongoClient> scheduler;
+
+    public AsyncRunThread(BenchConfig config, Workload workload, PortScheduler<MongoClient> scheduler) {
+        super(config, workload);
+        this.maxInFlight = config.getInFlight();
+        this.inFlight = new Semaphore(maxInFlight);
+        this.requestOptions = RequestOptions.create(config);
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void run() {
+        final List<PortScheduler.Slot<MongoClient>> slots = scheduler.getSlots();
+        final MongoClient[] clients = new MongoClient[slots.size()];
+        final MongoCollection<RawBsonDocument>[] collections = new MongoCollection[slots.size()];
+        final PortScheduler.Lease<MongoClient> lease = new PortScheduler.Lease<>();
+        final BooleanSupplier stopped = this::isStopped;
+        log.info("Keeping up to {} requests in flight", maxInFlight);
+
+        started();
+
+        // do the actual benchmark measurements
+        try {
+            while (!isStopped()) {
+                if (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                if (!scheduler.acquire(lease, stopped)) {
+                    inFlight.release();
+                    break;
+                }
+                final PortScheduler.Slot<MongoClient> slot = lease.getSlot();
+                final int idx = slot.getIndex();
+                final MongoClient client = slot.getClient();
+                if (clients[idx] != client) {
+                    clients[idx] = client;
+                    collections[idx] = requestOptions.apply(client.getDatabase(ClientFactory.getDatabaseName(config, slot.getPort()))
+                            .getCollection(MongoBench.COLLECTION_NAME, RawBsonDocument.class));
+                }
+                final TraceRecord record = lease.getRecord();
+                final OpType type = record != null ? record.getType() : workload.getMix().next(random);
+                try {
+                    execute(type, collections[idx], slot, lease.getIntendedStart(), record);
+                } catch (RuntimeException e) {
+                    // the request has not been sent, so no callback hands back the instance and the permit
+                    complete(type, slot, lease.getIntendedStart(), System.nanoTime(), e, false);
+                }
+                updateElapsed();
+            }
+            // wait for the outstanding requests before the shared clients are closed
+            if (!inFlight.tryAcquire(maxInFlight, timeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("{} requests did not finish in time", maxInFlight - inFlight.availablePermits());
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while running benchmark", e);
+        }
+
+        log.info("Thread finished with {} timeouts", timeouts.sum());
+    }
+
+    private void execute(final OpType type, final MongoCollection<RawBsonDocument> collection, final PortScheduler.Slot<MongoClient> slot,
+                         final long intendedStart, final TraceRecord record) {
+        final int port = slot.getPort();
+        final KeySpace keys = workload.getKeySpace(port);
+        final IndexedFields fields = workload.getFields();
+        final PayloadCache payloads = getPayloads(record);
+        final int limit = workload.getScanLength();
+        final int batchSize = type != OpType.INSERT ? 1 : record != null ? Math.max(record.getNumDocuments(), 1) : requestOptions.getInsertBatch();
+        // replayed inserts take new keys as well, so they do not collide with the documents of the load phase
+        final int id = type == OpType.INSERT ? keys.nextInsertKeys(batchSize) : record != null ? record.getKey() : workload.getKeyChooser().nextKey(keys, random);
+        final List<RawBsonDocument> batch = batchSize > 1 ? createBatch(payloads, id, batchSize) : null;
+        final RawBsonDocument document = getDocument(type, payloads, id, batch, false);
+        recordTrace(type, port, intendedStart, id, batchSize, document);
+        final long start = System.nanoTime();
+        switch (type) {
+            case READ:
+                collection.find(payloads.getIdFilter(id)).first(new SingleResultCallback<RawBsonDocument>() {
+                    @Override
+                    public void onResult(RawBsonDocument fetched, Throwable t) {
+                        complete(type, slot, intendedStart, start, t, fetched != null);
+                    }
+                });
+                break;
+            case INSERT:
+                final SingleResultCallback<Void> inserted = new SingleResultCallback<Void>() {
+                    @Override
+                    public void onResult(Void result, Throwable t) {
+                        complete(type, slot, intendedStart, start, t, true, batchSize);
+                    }
+                };
+                if (batch != null) {
+                    collection.insertMany(batch, requestOptions.getInsertManyOptions(), inserted);
+                } else {
+                    collection.insertOne(document, inserted);
+                }
+                break;
+            case UPDATE:
+                collection.updateOne(payloads.getIdFilter(id), document, new SingleResultCallback<UpdateResult>() {
+                    @Override
+                    public void onResult(UpdateResult result, Throwable t) {
+                        complete(type, slot, intendedStart, start, t, t == null && result.getMatchedCount() > 0);
+                    }
+                });
+                break;
+            case UPSERT:
+                collection.updateOne(payloads.getIdFilter(id), document, UPSERT, new SingleResultCallback<UpdateResult>() {
+                    @Override
+                    public void onResult(UpdateResult result, Throwable t) {
+                        complete(type, slot, intendedStart, start, t, true);
+                    }
+                });
+                break;
+            case READ_MODIFY_WRITE:
+                collection.find(payloads.getIdFilter(id)).first(new SingleResultCallback<RawBsonDocument>() {
+                    @Override
+                    public void onResult(RawBsonDocument fetched, Throwable t) {
+                        if (t != null || fetched == null) {
+                            complete(type, slot, intendedStart, start, t, false);
+                            return;
+                        }
+                        try {
+                            collection.updateOne(payloads.getIdFilter(id), document, new SingleResultCallback<UpdateResult>() {
+                                @Override
+                                public void onResult(UpdateResult result, Throwable t) {
+                                    complete(type, slot, intendedStart, start, t, t == null && result.getMatchedCount() > 0);
+                                }
+                            });
+                        } catch (RuntimeException e) {
+                            complete(type, slot, intendedStart, start, e, false);
+                        }
+                    }
+                });
+                break;
+            case DELETE:
+                collection.deleteOne(payloads.getIdFilter(id), new SingleResultCallback<DeleteResult>() {
+                    @Override
+                    public void onResult(DeleteResult result, Throwable t) {
+                        complete(type, slot, intendedStart, start, t, t == null && result.getDeletedCount() > 0);
+                    }
+                });
+                break;
+            case SCAN:
+                fetch(type, slot, intendedStart, start, collection.find(payloads.getRangeFilter(id)).limit(limit));
+                break;
+            case QUERY:
+                fetch(type, slot, intendedStart, start, collection.find(fields.getGroupFilter(id)).limit(limit));
+                break;
+            case RANGE_QUERY:
+                fetch(type, slot, intendedStart, start, collection.find(fields.getValueRangeFilter(id, keys.size(), limit)).limit(limit));
+                break;
+            case PROJECTION:
+                fetch(type, slot, intendedStart, start, collection.find(fields.getGroupFilter(id)).projection(fields.getProjection()).limit(limit));
+                break;
+            case SORT:
+                fetch(type, slot, intendedStart, start, collection.find(fields.getGroupFilter(id)).sort(fields.getSort()).limit(limit));
+                break;
+            case COUNT:
+                collection.count(fields.getGroupFilter(id), new SingleResultCallback<Long>() {
+                    @Override
+                    public void onResult(Long count, Throwable t) {
+                        complete(type, slot, intendedStart, start, t, t == null && count > 0);
+                    }
+                });
+                break;
+            case AGGREGATE:
+                fetch(type, slot, intendedStart, start, collection.aggregate(fields.getAggregatePipeline(id)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported operation type " + type);
+        }
+    }
+
+    private void fetch(final OpType type, final PortScheduler.Slot<MongoClient> slot, final long intendedStart, final long start, MongoIterable<RawBsonDocument> results) {
+        results.into(new ArrayList<RawBsonDocument>(), new SingleResultCallback<List<RawBsonDocument>>() {
+            @Override
+            public void onResult(List<RawBsonDocument> fetched, Throwable t) {
+                complete(type, slot, intendedStart, start, t, t == null && !fetched.isEmpty());
+            }
+        });
+    }
+
+    private static List<RawBsonDocument> createBatch(PayloadCache payloads, int firstId, int batchSize) {
+        final List<RawBsonDocument> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(payloads.getInsertDocument(firstId + i));
+        }
+        return batch;
+    }
+
+    private void complete(OpType type, PortScheduler.Slot<MongoClient> slot, long intendedStart, long start, Throwable t, boolean found) {
+        complete(type, slot, intendedStart, start, t, found, 1);
+    }
+
+    private void complete(OpType type, PortScheduler.Slot<MongoClient> slot, long intendedStart, long start, Throwable t, boolean found, int numDocuments) {
+        final long end = System.nanoTime();
+        final PortStats stats = slot.getStats();
+        try {
+            if (t == null) {
+                recordLatency(type, stats, intendedStart, start, end, numDocuments);
+                if (!found) {
+                    recordMiss(stats);
+                }
+                return;
+            }
+            if (t instanceof MongoSocketException || t instanceof MongoTimeoutException) {
+                // the driver replaces the broken connection, see the class comment
+                timeouts.increment();
+                stats.recordTimeout();
+                log.warn("Timeout occured during {} at {}", type.getName(), stats.getInstance());
+            } else {
+                stats.recordError();
+                log.error("Error during {} at {}", type.getName(), stats.getInstance(), t);
+            }
+        } finally {
+            scheduler.release(slot);
+            inFlight.release();
+        }
+    }
+}
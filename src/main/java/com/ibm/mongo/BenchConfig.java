@@ -0,0 +1,730 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import java.io.Serializable;
+
+/**
+ * The settings of a benchmark run as passed on the command line. The settings are sent to the agents in distributed
+ * runs
+ */
+public class BenchConfig implements Serializable, Cloneable {
+
+    /**
+     * The id of the instance of the first connection string. The ids of instances given by connection strings are
+     * above all TCP ports, so they can not be mistaken for a port in latency files, traces and reports
+     */
+    public static final int FIRST_URI_INSTANCE = 1 << 16;
+
+    private static final long serialVersionUID = 1L;
+
+    public enum LoadMode {
+        /**
+         * Drop the database of the benchmark before loading
+         */
+        REPLACE,
+        /**
+         * Keep the existing documents and only insert the missing ones, e.g. to continue an interrupted load or to
+         * top up the collection to a larger number of documents
+         */
+        RESUME
+    }
+
+    public enum ExecutionMode {
+        /**
+         * Every thread issues one blocking request at a time
+         */
+        PLATFORM,
+        /**
+         * Every thread keeps a number of requests in flight using the asynchronous driver
+         */
+        ASYNC,
+        /**
+         * Every instance, or every connection to an instance, gets its own virtual thread issuing one blocking request
+         * at a time
+         */
+        VIRTUAL
+    }
+
+    private String host = "localhost";
+    private int[] instances = new int[]{27017};
+    private String[] uris = null;
+    private int duration = 60;
+    private int numThreads = 1;
+    private int reportingInterval = 60;
+    private int documentSize = 1024;
+    private int numDocuments = 1000;
+    private int warmup = 0;
+    private float targetRate = 0f;
+    private String latencyFilePrefix;
+    private int timeout = 30;
+    private boolean sslEnabled = false;
+    private OpenLoopSchedule.Arrival arrival;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+    private int inFlight = 16;
+    private int connectionsPerPort = 1;
+    private int portConcurrency = 0;
+    private int batchSize = 1000;
+    private int pipelineDepth = 4;
+    private LoadMode loadMode = LoadMode.REPLACE;
+    private boolean dropUriDatabase = false;
+    private int loadRanges = 0;
+    private String collectionOptions = null;
+    private boolean preSplit = false;
+    private boolean deferIndexes = false;
+    private String operationMix = OperationMix.DEFAULT_MIX;
+    private String keyDistribution = "uniform";
+    private int scanLength = 100;
+    private int metricsPort = 0;
+    private String metricsBind;
+    private int numAgents = 0;
+    private String coordinator;
+    private String intervalOutput;
+    private int intervalPeriod = 1;
+    private int serverStatusPeriod = 0;
+    private double stallThreshold = 10d;
+    private int[] calibrationThreads = new int[]{1, 2, 4, 8};
+    private String indexes = null;
+    private int groupCardinality = IndexedFields.DEFAULT_GROUP_CARDINALITY;
+    private String schema = null;
+    private double compressibility = 1d;
+    private long seed = 0L;
+    private int insertBatch = 1;
+    private boolean orderedInserts = true;
+    private String writeConcern = null;
+    private String readPreference = null;
+    private String readConcern = null;
+    private double sloPercentile = 99d;
+    private double sloLatency = 0d;
+    private int searchSteps = 20;
+    private double searchPrecision = 0.05d;
+    private String searchOutput = null;
+    private String recordTrace = null;
+    private String traceFile = null;
+    private float replaySpeed = 1f;
+    private String[] profileExports = null;
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    /**
+     * @return the ids of the instances: the ports of the host, or {@link #FIRST_URI_INSTANCE} plus the index of the
+     * connection string for instances given by connection strings
+     */
+    public int[] getInstances() {
+        return instances;
+    }
+
+    public void setInstances(int[] instances) {
+        this.instances = instances;
+    }
+
+    /**
+     * @return true if the instance is given by a connection string, false if it is a port of the host
+     */
+    public static boolean isUriInstance(int instance) {
+        return instance >= FIRST_URI_INSTANCE;
+    }
+
+    /**
+     * @return the connection string of an instance given by a connection string
+     */
+    public String getUri(int instance) {
+        return uris[instance - FIRST_URI_INSTANCE];
+    }
+
+    /**
+     * @return the connection strings of the instances, or null to connect to the ports of the host. Every connection
+     * string is one instance, see {@link #getInstances()}
+     */
+    public String[] getUris() {
+        return uris;
+    }
+
+    public void setUris(String[] uris) {
+        this.uris = uris;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+
+    public void setDuration(int duration) {
+        this.duration = duration;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getReportingInterval() {
+        return reportingInterval;
+    }
+
+    public void setReportingInterval(int reportingInterval) {
+        this.reportingInterval = reportingInterval;
+    }
+
+    public int getDocumentSize() {
+        return documentSize;
+    }
+
+    public void setDocumentSize(int documentSize) {
+        this.documentSize = documentSize;
+    }
+
+    public int getNumDocuments() {
+        return numDocuments;
+    }
+
+    public void setNumDocuments(int numDocuments) {
+        this.numDocuments = numDocuments;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * @return the overall target rate of all threads in requests per second or 0 if unlimited
+     */
+    public float getTargetRate() {
+        return targetRate;
+    }
+
+    public void setTargetRate(float targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    public String getLatencyFilePrefix() {
+        return latencyFilePrefix;
+    }
+
+    public void setLatencyFilePrefix(String latencyFilePrefix) {
+        this.latencyFilePrefix = latencyFilePrefix;
+    }
+
+    /**
+     * @return the timeout for networking operations in seconds
+     */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public boolean isSslEnabled() {
+        return sslEnabled;
+    }
+
+    public void setSslEnabled(boolean sslEnabled) {
+        this.sslEnabled = sslEnabled;
+    }
+
+    /**
+     * @return the arrival distribution in open loop mode or null if running in closed loop mode
+     */
+    public OpenLoopSchedule.Arrival getArrival() {
+        return arrival;
+    }
+
+    public void setArrival(OpenLoopSchedule.Arrival arrival) {
+        this.arrival = arrival;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * @return the number of outstanding requests per thread in {@link ExecutionMode#ASYNC} mode
+     */
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public void setInFlight(int inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    /**
+     * @return the number of threads per instance in {@link ExecutionMode#VIRTUAL} mode
+     */
+    public int getConnectionsPerPort() {
+        return connectionsPerPort;
+    }
+
+    public void setConnectionsPerPort(int connectionsPerPort) {
+        this.connectionsPerPort = connectionsPerPort;
+    }
+
+    /**
+     * @return the maximum number of requests in flight per instance in the run phase, 0 to spread the concurrency of
+     * all workers evenly across the instances
+     */
+    public int getPortConcurrency() {
+        return portConcurrency;
+    }
+
+    public void setPortConcurrency(int portConcurrency) {
+        this.portConcurrency = portConcurrency;
+    }
+
+    /**
+     * @return the number of documents per bulk insert in the load phase
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the number of bulk inserts in flight per instance in the load phase
+     */
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * @return how the load phase treats existing documents
+     */
+    public LoadMode getLoadMode() {
+        return loadMode;
+    }
+
+    public void setLoadMode(LoadMode loadMode) {
+        this.loadMode = loadMode;
+    }
+
+    /**
+     * @return true if the load phase may drop the database named by a connection string, otherwise only the database of
+     * the benchmark is dropped
+     */
+    public boolean isDropUriDatabase() {
+        return dropUriDatabase;
+    }
+
+    public void setDropUriDatabase(boolean dropUriDatabase) {
+        this.dropUriDatabase = dropUriDatabase;
+    }
+
+    /**
+     * @return the number of _id ranges per instance loaded in parallel, 0 to spread all load threads over the
+     * instances
+     */
+    public int getLoadRanges() {
+        return loadRanges;
+    }
+
+    public void setLoadRanges(int loadRanges) {
+        this.loadRanges = loadRanges;
+    }
+
+    /**
+     * @return the options of the create command as JSON to create the collection explicitly before loading, null to
+     * let the first insert create it
+     */
+    public String getCollectionOptions() {
+        return collectionOptions;
+    }
+
+    public void setCollectionOptions(String collectionOptions) {
+        this.collectionOptions = collectionOptions;
+    }
+
+    /**
+     * @return true to shard the collection of a sharded cluster by _id and split it at the boundaries of the load
+     * ranges before loading
+     */
+    public boolean isPreSplit() {
+        return preSplit;
+    }
+
+    public void setPreSplit(boolean preSplit) {
+        this.preSplit = preSplit;
+    }
+
+    /**
+     * @return true to build the secondary indexes after loading instead of maintaining them during the load
+     */
+    public boolean isDeferIndexes() {
+        return deferIndexes;
+    }
+
+    public void setDeferIndexes(boolean deferIndexes) {
+        this.deferIndexes = deferIndexes;
+    }
+
+    public String getOperationMix() {
+        return operationMix;
+    }
+
+    public void setOperationMix(String operationMix) {
+        this.operationMix = operationMix;
+    }
+
+    /**
+     * @return the specification of the key distribution, see {@link KeyChooser#create(String, int)}
+     */
+    public String getKeyDistribution() {
+        return keyDistribution;
+    }
+
+    public void setKeyDistribution(String keyDistribution) {
+        this.keyDistribution = keyDistribution;
+    }
+
+    /**
+     * @return the number of documents read by a single range scan
+     */
+    public int getScanLength() {
+        return scanLength;
+    }
+
+    public void setScanLength(int scanLength) {
+        this.scanLength = scanLength;
+    }
+
+    /**
+     * @return the port of the HTTP endpoint serving live metrics, 0 if disabled
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @return the address the HTTP endpoint serving live metrics listens on, null for the loopback interface
+     */
+    public String getMetricsBind() {
+        return metricsBind;
+    }
+
+    public void setMetricsBind(String metricsBind) {
+        this.metricsBind = metricsBind;
+    }
+
+    /**
+     * @return the number of agent processes the coordinator of a distributed run waits for, 0 for a local run
+     */
+    public int getNumAgents() {
+        return numAgents;
+    }
+
+    public void setNumAgents(int numAgents) {
+        this.numAgents = numAgents;
+    }
+
+    /**
+     * @return the address of the coordinator as [host:]port
+     */
+    public String getCoordinator() {
+        return coordinator;
+    }
+
+    public void setCoordinator(String coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * @return the file the time series of interval snapshots is written to, null if disabled
+     */
+    public String getIntervalOutput() {
+        return intervalOutput;
+    }
+
+    public void setIntervalOutput(String intervalOutput) {
+        this.intervalOutput = intervalOutput;
+    }
+
+    /**
+     * @return the length of the time windows of the interval output in seconds
+     */
+    /**
+     * @return the time between two serverStatus samples of an instance in seconds, 0 to not sample the servers
+     */
+    public int getServerStatusPeriod() {
+        return serverStatusPeriod;
+    }
+
+    public void setServerStatusPeriod(int serverStatusPeriod) {
+        this.serverStatusPeriod = serverStatusPeriod;
+    }
+
+    /**
+     * @return the stall of the benchmark process in milliseconds above which a time window is flagged
+     */
+    public double getStallThreshold() {
+        return stallThreshold;
+    }
+
+    public void setStallThreshold(double stallThreshold) {
+        this.stallThreshold = stallThreshold;
+    }
+
+    public int getIntervalPeriod() {
+        return intervalPeriod;
+    }
+
+    public void setIntervalPeriod(int intervalPeriod) {
+        this.intervalPeriod = intervalPeriod;
+    }
+
+    /**
+     * @return the thread counts measured by the calibrate phase
+     */
+    public int[] getCalibrationThreads() {
+        return calibrationThreads;
+    }
+
+    public void setCalibrationThreads(int[] calibrationThreads) {
+        this.calibrationThreads = calibrationThreads;
+    }
+
+    /**
+     * @return the indexes created by the load phase, see {@link IndexedFields#parseIndexes(String)}
+     */
+    public String getIndexes() {
+        return indexes;
+    }
+
+    public void setIndexes(String indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * @return the number of distinct values of the group field
+     */
+    public int getGroupCardinality() {
+        return groupCardinality;
+    }
+
+    public void setGroupCardinality(int groupCardinality) {
+        this.groupCardinality = groupCardinality;
+    }
+
+    /**
+     * @return the JSON template of generated documents, see {@link DocumentGenerator}
+     */
+    public String getSchema() {
+        return schema;
+    }
+
+    public void setSchema(String schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * @return the approximate compression ratio of generated strings and binaries
+     */
+    public double getCompressibility() {
+        return compressibility;
+    }
+
+    public void setCompressibility(double compressibility) {
+        this.compressibility = compressibility;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the number of documents inserted by a single insert of the run phase
+     */
+    public int getInsertBatch() {
+        return insertBatch;
+    }
+
+    public void setInsertBatch(int insertBatch) {
+        this.insertBatch = insertBatch;
+    }
+
+    public boolean isOrderedInserts() {
+        return orderedInserts;
+    }
+
+    public void setOrderedInserts(boolean orderedInserts) {
+        this.orderedInserts = orderedInserts;
+    }
+
+    /**
+     * @return the write concern of the run phase, see {@link RequestOptions#parseWriteConcern(String)}
+     */
+    public String getWriteConcern() {
+        return writeConcern;
+    }
+
+    public void setWriteConcern(String writeConcern) {
+        this.writeConcern = writeConcern;
+    }
+
+    public String getReadPreference() {
+        return readPreference;
+    }
+
+    public void setReadPreference(String readPreference) {
+        this.readPreference = readPreference;
+    }
+
+    public String getReadConcern() {
+        return readConcern;
+    }
+
+    public void setReadConcern(String readConcern) {
+        this.readConcern = readConcern;
+    }
+
+    /**
+     * @return the percentile the search phase compares with the latency objective
+     */
+    public double getSloPercentile() {
+        return sloPercentile;
+    }
+
+    public void setSloPercentile(double sloPercentile) {
+        this.sloPercentile = sloPercentile;
+    }
+
+    /**
+     * @return the latency objective of the search phase in milliseconds
+     */
+    public double getSloLatency() {
+        return sloLatency;
+    }
+
+    public void setSloLatency(double sloLatency) {
+        this.sloLatency = sloLatency;
+    }
+
+    public int getSearchSteps() {
+        return searchSteps;
+    }
+
+    public void setSearchSteps(int searchSteps) {
+        this.searchSteps = searchSteps;
+    }
+
+    /**
+     * @return the gap between the highest passing and the lowest failing rate, relative to the passing rate, at which
+     * the search phase stops
+     */
+    public double getSearchPrecision() {
+        return searchPrecision;
+    }
+
+    public void setSearchPrecision(double searchPrecision) {
+        this.searchPrecision = searchPrecision;
+    }
+
+    public String getSearchOutput() {
+        return searchOutput;
+    }
+
+    public void setSearchOutput(String searchOutput) {
+        this.searchOutput = searchOutput;
+    }
+
+    /**
+     * @return the file the requests of the run phase are written to as a trace, null to not record a trace
+     */
+    public String getRecordTrace() {
+        return recordTrace;
+    }
+
+    public void setRecordTrace(String recordTrace) {
+        this.recordTrace = recordTrace;
+    }
+
+    /**
+     * @return the trace replayed by the replay phase or written by the import phase
+     */
+    public String getTraceFile() {
+        return traceFile;
+    }
+
+    public void setTraceFile(String traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * @return the factor by which the replay phase sends the requests of the trace faster than recorded
+     */
+    public float getReplaySpeed() {
+        return replaySpeed;
+    }
+
+    public void setReplaySpeed(float replaySpeed) {
+        this.replaySpeed = replaySpeed;
+    }
+
+    /**
+     * @return the JSON exports of profiler collections the import phase converts into a trace, one per instance
+     */
+    public String[] getProfileExports() {
+        return profileExports;
+    }
+
+    public void setProfileExports(String[] profileExports) {
+        this.profileExports = profileExports;
+    }
+
+    /**
+     * @return a shallow copy of the settings
+     */
+    public BenchConfig copy() {
+        try {
+            return (BenchConfig) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.async.SingleResultCallback;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for the result of an asynchronous operation. Used for the few administrative operations which have to finish
+ * before the actual benchmark can continue
+ */
+public class BlockingCallback<T> implements SingleResultCallback<T> {
+
+    private final CountDownLatch done = new CountDownLatch(1);
+    private T result;
+    private Throwable error;
+
+    @Override
+    public void onResult(T result, Throwable t) {
+        this.result = result;
+        this.error = t;
+        done.countDown();
+    }
+
+    /**
+     * @param timeoutMs the maximum time to wait in milliseconds
+     * @return the result of the operation
+     * @throws MongoException if the operation failed or did not finish in time
+     */
+    public T get(long timeoutMs) {
+        try {
+            if (!done.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new MongoTimeoutException("Operation did not finish within " + timeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoException("Interrupted while waiting for operation", e);
+        }
+        if (error instanceof MongoException) {
+            throw (MongoException) error;
+        } else if (error != null) {
+            throw new MongoException(error.getMessage(), error);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+import com.mongodb.ServerAddress;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.SocketSettings;
+import com.mongodb.connection.SslSettings;
+import com.mongodb.connection.netty.NettyStreamFactoryFactory;
+import com.mongodb.event.CommandListener;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates synchronous and asynchronous clients for a single instance with the timeouts and SSL settings of a run.
+ * <p>
+ * An instance is either a port on the target host or, if connection strings are given, a replica set, sharded cluster
+ * or standalone instance described by a connection string, see {@link BenchConfig#getInstances()}. Options of the
+ * connection string take precedence over the settings of the run.
+ */
+public final class ClientFactory {
+
+    private ClientFactory() {
+    }
+
+    public static MongoClient createClient(BenchConfig config, int instance) {
+        return createClient(config, instance, null);
+    }
+
+    /**
+     * @param listener notified about every command sent to a member of a replica set or sharded cluster given by a
+     *                 connection string, may be null
+     */
+    public static MongoClient createClient(BenchConfig config, int instance, CommandListener listener) {
+        return createClient(config, instance, listener, config.getTimeout() * 1000, 0);
+    }
+
+    /**
+     * Create a client shared by several threads
+     *
+     * @param maxConnections the size of the connection pool
+     * @param listener       notified about every command sent to a member of a replica set or sharded cluster given by
+     *                       a connection string, may be null
+     */
+    public static MongoClient createClient(BenchConfig config, int instance, int maxConnections, CommandListener listener) {
+        return createClient(config, instance, listener, config.getTimeout() * 1000, maxConnections);
+    }
+
+    /**
+     * Create a client without socket timeout for administrative commands which may run for a long time, like index
+     * builds or counts on large collections
+     */
+    public static MongoClient createMaintenanceClient(BenchConfig config, int instance) {
+        return createClient(config, instance, null, 0, 0);
+    }
+
+    private static MongoClient createClient(BenchConfig config, int instance, CommandListener listener, int socketTimeoutMs, int maxConnections) {
+        final int timeoutMs = config.getTimeout() * 1000;
+        final MongoClientOptions.Builder ops = MongoClientOptions.builder()
+                .maxWaitTime(timeoutMs)
+                .connectTimeout(timeoutMs)
+                .socketTimeout(socketTimeoutMs)
+                .heartbeatConnectTimeout(timeoutMs)
+                .serverSelectionTimeout(timeoutMs)
+                .sslEnabled(config.isSslEnabled());
+        if (maxConnections > 0) {
+            ops.connectionsPerHost(maxConnections);
+        }
+        if (config.getUris() != null) {
+            if (listener != null) {
+                ops.addCommandListener(listener);
+            }
+            return new MongoClient(new MongoClientURI(config.getUri(instance), ops));
+        }
+        return new MongoClient(new ServerAddress(config.getHost(), instance), ops.build());
+    }
+
+    public static com.mongodb.async.client.MongoClient createAsyncClient(BenchConfig config, int instance, int maxConnections) {
+        return createAsyncClient(config, instance, maxConnections, null);
+    }
+
+    /**
+     * Create an asynchronous client. SSL connections are handled by Netty since the default asynchronous transport of
+     * the driver does not support SSL
+     *
+     * @param maxConnections the size of the connection pool and the number of requests that may wait for a connection
+     * @param listener       notified about every command sent to a member of a replica set or sharded cluster given by
+     *                       a connection string, may be null
+     */
+    public static com.mongodb.async.client.MongoClient createAsyncClient(BenchConfig config, int instance, int maxConnections, CommandListener listener) {
+        final int timeoutMs = config.getTimeout() * 1000;
+        final ConnectionString uri = config.getUris() == null ? null : new ConnectionString(config.getUri(instance));
+        final ClusterSettings.Builder cluster = ClusterSettings.builder()
+                .serverSelectionTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .maxWaitQueueSize(maxConnections);
+        final ConnectionPoolSettings.Builder pool = ConnectionPoolSettings.builder()
+                .maxSize(maxConnections)
+                .maxWaitQueueSize(maxConnections)
+                .maxWaitTime(timeoutMs, TimeUnit.MILLISECONDS);
+        final SocketSettings.Builder socket = SocketSettings.builder()
+                .connectTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        final SslSettings.Builder ssl = SslSettings.builder().enabled(config.isSslEnabled());
+        final MongoClientSettings.Builder settings = MongoClientSettings.builder();
+        if (uri == null) {
+            cluster.hosts(Collections.singletonList(new ServerAddress(config.getHost(), instance)));
+        } else {
+            cluster.applyConnectionString(uri);
+            pool.applyConnectionString(uri);
+            socket.applyConnectionString(uri);
+            ssl.applyConnectionString(uri);
+            settings.credentialList(uri.getCredentialList());
+            if (uri.getReadPreference() != null) {
+                settings.readPreference(uri.getReadPreference());
+            }
+            if (uri.getWriteConcern() != null) {
+                settings.writeConcern(uri.getWriteConcern());
+            }
+            if (uri.getReadConcern() != null) {
+                settings.readConcern(uri.getReadConcern());
+            }
+            if (listener != null) {
+                settings.addCommandListener(listener);
+            }
+        }
+        final SocketSettings socketSettings = socket.build();
+        final SslSettings sslSettings = ssl.build();
+        settings.clusterSettings(cluster.build())
+                .connectionPoolSettings(pool.build())
+                .socketSettings(socketSettings)
+                .heartbeatSocketSettings(socketSettings)
+                .sslSettings(sslSettings);
+        if (sslSettings.isEnabled()) {
+            settings.streamFactoryFactory(NettyStreamFactoryFactory.builder().build());
+        }
+        return MongoClients.create(settings.build());
+    }
+
+    /**
+     * @return the name of the instance used in logs and reports: host:port, or the hosts and the database of the
+     * connection string, made unique by the index if several connection strings have the same hosts and database
+     */
+    public static String getInstanceName(BenchConfig config, int instance) {
+        if (!BenchConfig.isUriInstance(instance)) {
+            return config.getHost() + ":" + instance;
+        }
+        final String name = getUriName(config.getUri(instance));
+        final int index = instance - BenchConfig.FIRST_URI_INSTANCE;
+        for (int i = 0; i < config.getUris().length; i++) {
+            if (i != index && getUriName(config.getUris()[i]).equals(name)) {
+                return name + "#" + index;
+            }
+        }
+        return name;
+    }
+
+    private static String getUriName(String uri) {
+        final ConnectionString connectionString = new ConnectionString(uri);
+        final StringBuilder name = new StringBuilder();
+        for (final String host : connectionString.getHosts()) {
+            name.append(name.length() == 0 ? "" : ",").append(host);
+        }
+        if (connectionString.getDatabase() != null) {
+            name.append('/').append(connectionString.getDatabase());
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return the database of the connection string of the instance, the database of the benchmark otherwise
+     */
+    public static String getDatabaseName(BenchConfig config, int instance) {
+        if (BenchConfig.isUriInstance(instance)) {
+            final String database = new ConnectionString(config.getUri(instance)).getDatabase();
+            if (database != null) {
+                return database;
+            }
+        }
+        return MongoBench.DB_NAME;
+    }
+}
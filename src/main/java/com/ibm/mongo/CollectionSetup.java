@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexModel;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Prepares the collection of a single instance for the load phase and finishes it afterwards: drops or keeps the
+ * existing documents, creates and pre-splits the collection, builds the secondary indexes before or after loading and
+ * finds the documents missing from a partially loaded collection.
+ * <p>
+ * All commands are sent with a client without socket timeout, since they may take a long time on large collections.
+ */
+public class CollectionSetup implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CollectionSetup.class);
+
+    private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000");
+
+    private final BenchConfig config;
+    private final String name;
+    private final String databaseName;
+    private final MongoClient client;
+    private final MongoDatabase database;
+    private final MongoCollection<BsonDocument> collection;
+
+    public CollectionSetup(BenchConfig config, int port) {
+        this.config = config;
+        this.name = ClientFactory.getInstanceName(config, port);
+        this.databaseName = ClientFactory.getDatabaseName(config, port);
+        this.client = ClientFactory.createMaintenanceClient(config, port);
+        this.database = client.getDatabase(databaseName);
+        this.collection = database.getCollection(MongoBench.COLLECTION_NAME, BsonDocument.class);
+    }
+
+    /**
+     * Prepare the collection before loading
+     *
+     * @param boundaries the first _id of every load range but the first, at which the collection is pre-split
+     */
+    public void prepare(List<Integer> boundaries) {
+        if (config.getLoadMode() == BenchConfig.LoadMode.REPLACE) {
+            dropExisting();
+        }
+        if (config.getCollectionOptions() != null) {
+            createCollection();
+        }
+        if (config.isPreSplit()) {
+            preSplit(boundaries);
+        }
+        if (config.getIndexes() != null && !config.isDeferIndexes()) {
+            buildIndexes();
+        }
+    }
+
+    /**
+     * Drop the database of the benchmark. The database named by a connection string may hold other data, e.g. the
+     * users of the connection, so it is only dropped if explicitly allowed
+     *
+     * @throws IllegalArgumentException if the database is not the one of the benchmark and may not be dropped
+     */
+    private void dropExisting() {
+        if (!MongoBench.DB_NAME.equals(databaseName) && !config.isDropUriDatabase()) {
+            throw new IllegalArgumentException("Refusing to drop the database " + databaseName + " of the connection string, use "
+                    + "--drop-uri-database to drop it or --load-mode resume to keep it");
+        }
+        for (final String existing : client.listDatabaseNames()) {
+            if (existing.equals(databaseName)) {
+                log.warn("Database {} exists at {} and will be purged before inserting", databaseName, name);
+                client.getDatabase(existing).drop();
+                break;
+            }
+        }
+    }
+
+    private void createCollection() {
+        for (final String existing : database.listCollectionNames()) {
+            if (existing.equals(MongoBench.COLLECTION_NAME)) {
+                log.info("Collection {} already exists at {}", MongoBench.COLLECTION_NAME, name);
+                return;
+            }
+        }
+        final BsonDocument command = new BsonDocument("create", new BsonString(MongoBench.COLLECTION_NAME));
+        command.putAll(BsonDocument.parse(config.getCollectionOptions()));
+        database.runCommand(command);
+        log.info("Created collection {} at {} with options {}", MongoBench.COLLECTION_NAME, name, config.getCollectionOptions());
+    }
+
+    /**
+     * Shard the collection by _id and split it at the given boundaries, so the load ranges are inserted into
+     * different chunks. Only applies to sharded clusters
+     */
+    private void preSplit(List<Integer> boundaries) {
+        final MongoDatabase admin = client.getDatabase("admin");
+        final BsonDocument isMaster = admin.runCommand(new BsonDocument("isMaster", new BsonInt32(1)), BsonDocument.class);
+        if (!"isdbgrid".equals(isMaster.getString("msg", new BsonString("")).getValue())) {
+            log.warn("{} is not a sharded cluster. The collection is not pre-split", name);
+            return;
+        }
+        final String namespace = databaseName + "." + MongoBench.COLLECTION_NAME;
+        try {
+            admin.runCommand(new BsonDocument("enableSharding", new BsonString(databaseName)));
+        } catch (MongoCommandException e) {
+            log.info("Unable to enable sharding of {} at {}: {}", databaseName, name, e.getErrorMessage());
+        }
+        try {
+            admin.runCommand(new BsonDocument("shardCollection", new BsonString(namespace))
+                    .append("key", new BsonDocument("_id", new BsonInt32(1))));
+        } catch (MongoCommandException e) {
+            log.info("Unable to shard {} at {}: {}", namespace, name, e.getErrorMessage());
+        }
+        int numSplits = 0;
+        for (final int boundary : boundaries) {
+            try {
+                admin.runCommand(new BsonDocument("split", new BsonString(namespace))
+                        .append("middle", new BsonDocument("_id", new BsonInt32(boundary))));
+                numSplits++;
+            } catch (MongoCommandException e) {
+                log.debug("Unable to split {} at {}: {}", namespace, boundary, e.getErrorMessage());
+            }
+        }
+        log.info("Split {} at {} into {} chunks", namespace, name, numSplits + 1);
+    }
+
+    /**
+     * Create the configured secondary indexes
+     */
+    public void buildIndexes() {
+        final List<IndexModel> indexes = IndexedFields.parseIndexes(config.getIndexes());
+        log.info("Creating {} indexes at {}", indexes.size(), name);
+        final long start = System.currentTimeMillis();
+        final List<String> created = collection.createIndexes(indexes);
+        log.info("Created indexes {} at {} in {} secs", created, name, decimalFormat.format((System.currentTimeMillis() - start) / 1000f));
+    }
+
+    /**
+     * Find the first missing document of a range by bisecting the range with counts on the _id index. All documents
+     * before the returned _id exist, documents after it may exist as well
+     *
+     * @param start the first _id of the range
+     * @param end   the _id after the last one of the range
+     * @return the first missing _id, or end if the range is complete
+     */
+    public int findFirstMissing(int start, int end) {
+        return findFirstMissing(start, end, (from, to) -> (int) count(from, to));
+    }
+
+    /**
+     * @param count the number of existing documents with an _id in [from, to)
+     * @see #findFirstMissing(int, int)
+     */
+    static int findFirstMissing(int start, int end, IntBinaryOperator count) {
+        if (count.applyAsInt(start, end) == end - start) {
+            return end;
+        }
+        // all documents in [start, low) exist, some in [low, high) are missing
+        int low = start, high = end;
+        while (high - low > 1) {
+            final int mid = low + (high - low) / 2;
+            if (count.applyAsInt(low, mid) == mid - low) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long count(int start, int end) {
+        return collection.count(new BsonDocument("_id", new BsonDocument("$gte", new BsonInt32(start)).append("$lt", new BsonInt32(end))));
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    /**
+     * @return the first _id of every range of the instance but the first
+     */
+    static List<Integer> getBoundaries(List<LoadThread.Range> ranges, int port) {
+        final List<Integer> boundaries = new ArrayList<>();
+        for (final LoadThread.Range range : ranges) {
+            if (range.getPort() == port && range.getStart() > 0) {
+                boundaries.add(range.getStart());
+            }
+        }
+        return boundaries;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Drives a run phase distributed over several agent processes. The coordinator waits for the configured number of
+ * agents, splits the instances between them and starts the measurement window of all agents at the same time, which
+ * requires the clocks of the hosts to be synchronized, e.g. by NTP. The results of the agents are merged into a
+ * single {@link RunResult}, so the reported percentiles are exact.
+ * <p>
+ * The agents are not authenticated, so the coordinator only listens on the loopback interface unless a host is
+ * given with the port.
+ */
+public class Coordinator implements RunController {
+
+    private static final Logger log = LoggerFactory.getLogger(Coordinator.class);
+
+    /**
+     * The time between sending the start of the measurement window and the start itself, which leaves enough time
+     * for the message to reach all agents
+     */
+    static final long MEASURE_DELAY_MS = 200;
+
+    private final BenchConfig config;
+    private final List<Connection> agents = new ArrayList<>();
+
+    public Coordinator(BenchConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the port of an address given as [host:]port
+     */
+    static int parsePort(String address) {
+        return Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+    }
+
+    /**
+     * @return the host of an address given as [host:]port, the loopback address if no host is given
+     */
+    static InetAddress parseHost(String address) throws IOException {
+        final int colonIdx = address.lastIndexOf(':');
+        return colonIdx <= 0 ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address.substring(0, colonIdx));
+    }
+
+    /**
+     * Split the instances into contiguous slices of nearly equal size, one per agent. Every instance is driven by
+     * exactly one agent
+     */
+    static List<int[]> createSlices(int[] ports, int numAgents) {
+        if (numAgents > ports.length) {
+            throw new IllegalArgumentException("Unable to split " + ports.length + " instances between " + numAgents + " agents");
+        }
+        final List<int[]> slices = new ArrayList<>(numAgents);
+        for (int i = 0; i < numAgents; i++) {
+            final int from = (int) ((long) ports.length * i / numAgents);
+            final int to = (int) ((long) ports.length * (i + 1) / numAgents);
+            slices.add(Arrays.copyOfRange(ports, from, to));
+        }
+        return slices;
+    }
+
+    @Override
+    public void start() {
+        final int numAgents = config.getNumAgents();
+        final int port = parsePort(config.getCoordinator());
+        final List<int[]> slices = createSlices(config.getInstances(), numAgents);
+        try (final ServerSocket serverSocket = new ServerSocket(port, numAgents, parseHost(config.getCoordinator()))) {
+            log.info("Waiting for {} agents on {}", numAgents, serverSocket.getLocalSocketAddress());
+            while (agents.size() < numAgents) {
+                final Connection agent = new Connection(serverSocket.accept());
+                agent.expect(AgentMessage.Type.HELLO);
+                agents.add(agent);
+                log.info("Agent {} of {} connected from {}", agents.size(), numAgents, agent.socket.getRemoteSocketAddress());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to accept agents", e);
+        }
+
+        for (int i = 0; i < numAgents; i++) {
+            final int[] ports = slices.get(i);
+            log.info("Agent {} drives {} instances", i + 1, ports.length);
+            final BenchConfig task = config.copy();
+            task.setInstances(ports);
+            task.setTargetRate(config.getTargetRate() * ports.length / (float) config.getInstances().length);
+            task.setNumAgents(0);
+            if (config.getLatencyFilePrefix() != null) {
+                task.setLatencyFilePrefix(config.getLatencyFilePrefix() + "_agent" + i);
+            }
+            if (config.getIntervalOutput() != null) {
+                final String file = config.getIntervalOutput();
+                final int dotIdx = file.lastIndexOf('.');
+                task.setIntervalOutput(dotIdx > file.lastIndexOf(File.separatorChar)
+                        ? file.substring(0, dotIdx) + "_agent" + i + file.substring(dotIdx)
+                        : file + "_agent" + i);
+            }
+            if (config.getMetricsPort() > 0) {
+                task.setMetricsPort(config.getMetricsPort() + 1 + i);
+            }
+            agents.get(i).send(new AgentMessage(AgentMessage.Type.TASK, task));
+        }
+        for (final Connection agent : agents) {
+            agent.expect(AgentMessage.Type.READY);
+        }
+        log.info("All {} agents are running", numAgents);
+    }
+
+    /**
+     * Send all agents the same start of the measurement window shortly in the future, so that the windows do not drift
+     * apart by the time it takes to send the message to one agent after the other, and wait for it
+     */
+    @Override
+    public void startMeasurement() {
+        final long startAt = System.currentTimeMillis() + MEASURE_DELAY_MS;
+        for (final Connection agent : agents) {
+            agent.send(new AgentMessage(AgentMessage.Type.MEASURE, startAt));
+        }
+        Agent.awaitStart(startAt);
+    }
+
+    @Override
+    public RunResult collect() {
+        return request(AgentMessage.Type.REPORT);
+    }
+
+    @Override
+    public RunResult stop() {
+        final RunResult result = request(AgentMessage.Type.STOP);
+        for (final Connection agent : agents) {
+            agent.close();
+        }
+        return result;
+    }
+
+    private RunResult request(AgentMessage.Type type) {
+        for (final Connection agent : agents) {
+            agent.send(new AgentMessage(type));
+        }
+        RunResult merged = null;
+        for (final Connection agent : agents) {
+            final RunResult result = (RunResult) agent.expect(AgentMessage.Type.RESULT).getPayload();
+            if (merged == null) {
+                merged = result;
+            } else {
+                merged.add(result);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The connection to a single agent
+     */
+    private static final class Connection implements Closeable {
+        private final Socket socket;
+        private final ObjectOutputStream out;
+        private final MessageInputStream in;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.out.flush();
+            this.in = new MessageInputStream(new BufferedInputStream(socket.getInputStream()));
+        }
+
+        private void send(AgentMessage message) {
+            try {
+                out.writeObject(message);
+                out.reset();
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to send " + message.getType() + " to agent " + socket.getRemoteSocketAddress(), e);
+            }
+        }
+
+        private AgentMessage expect(AgentMessage.Type type) {
+            final AgentMessage message;
+            try {
+                message = (AgentMessage) in.readObject();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Lost connection to agent " + socket.getRemoteSocketAddress(), e);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Unknown message from agent " + socket.getRemoteSocketAddress(), e);
+            }
+            if (message.getType() != type) {
+                throw new IllegalStateException("Expected " + type + " from agent " + socket.getRemoteSocketAddress() + " but got " + message.getType());
+            }
+            return message;
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.error("Unable to close connection to agent", e);
+            }
+        }
+    }
+}
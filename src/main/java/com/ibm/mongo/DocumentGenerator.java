@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.bson.*;
+import org.bson.codecs.BsonValueCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.json.JsonParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates documents from a schema template instead of the fixed pre-encoded payload.
+ * <p>
+ * The template is a JSON document. String values starting with <code>$</code> are generators, all other values are
+ * copied as they are and sub-documents are templates themselves:
+ * <ul>
+ * <li><code>$int[:dist]</code>, <code>$long[:dist]</code>, <code>$double[:dist]</code>: numbers, by default
+ * uniform over 0..1000000 (0..1 for doubles)</li>
+ * <li><code>$bool</code>: a random boolean</li>
+ * <li><code>$date[:dist]</code>: a date the given number of days before the start, by default 0..365</li>
+ * <li><code>$string[:dist]</code>, <code>$binary[:dist]</code>: text and binary data with the given length, by
+ * default 16</li>
+ * <li><code>{"$array": template, "$size": dist}</code>: an array with the given number of elements</li>
+ * </ul>
+ * A distribution <code>dist</code> is either a fixed number <code>n</code>, a uniform range <code>min..max</code> or a
+ * normal distribution <code>mean~stddev</code> with a non-negative deviation. Every document is generated by its own
+ * {@link SplittableRandom} seeded by the _id, so the generation is reproducible, independent of the thread generating
+ * a document and does not contend on a shared random number generator.
+ * <p>
+ * The compressibility is the approximate ratio of the compressed to the original size of strings and binaries. Every
+ * block of {@value #BLOCK_SIZE} bytes starts with the random part and is filled up with a constant.
+ */
+public class DocumentGenerator {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * The ratio of the entropy of a random character from the alphabet to its size
+     */
+    private static final double CHAR_ENTROPY = 6d / 8d;
+
+    private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    private static final BsonValueCodec valueCodec = new BsonValueCodec();
+    private static final EncoderContext encoderContext = EncoderContext.builder().build();
+
+    private final IndexedFields fields;
+    private final long seed;
+    private final long startTime = System.currentTimeMillis();
+    private final int randomChars;
+    private final int randomBytes;
+    private final ObjectGenerator template;
+    private volatile int expectedSize = 1024;
+
+    /**
+     * @param schema          the JSON template of the documents
+     * @param compressibility the approximate compression ratio of strings and binaries between 0 and 1
+     * @param seed            the seed all documents are generated from
+     * @param fields          the secondary fields which every document gets besides the template fields
+     * @throws IllegalArgumentException if the template is invalid
+     */
+    public DocumentGenerator(String schema, double compressibility, long seed, IndexedFields fields) {
+        this.fields = fields;
+        this.seed = seed;
+        this.randomChars = Math.max(1, (int) Math.round(BLOCK_SIZE * Math.min(1d, compressibility / CHAR_ENTROPY)));
+        this.randomBytes = Math.max(1, (int) Math.round(BLOCK_SIZE * compressibility));
+        final BsonDocument parsed;
+        try {
+            parsed = BsonDocument.parse(schema);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Unable to parse schema: " + e.getMessage(), e);
+        }
+        for (final String reserved : new String[]{"_id", IndexedFields.GROUP, IndexedFields.VALUE, IndexedFields.CREATED}) {
+            if (parsed.containsKey(reserved)) {
+                throw new IllegalArgumentException("The field " + reserved + " is generated by the benchmark and must not be part of the schema");
+            }
+        }
+        this.template = new ObjectGenerator(parsed);
+    }
+
+    /**
+     * @return the document with the given _id, its configured secondary fields and the template fields
+     */
+    public RawBsonDocument createDocument(int id) {
+        final SplittableRandom random = new SplittableRandom(seed + id * SEED_INCREMENT);
+        final BasicOutputBuffer buffer = new BasicOutputBuffer(expectedSize);
+        try (final BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+            writer.writeInt32("_id", id);
+            if (fields.hasGroup()) {
+                writer.writeInt32(IndexedFields.GROUP, fields.getGroup(id));
+            }
+            if (fields.hasValue()) {
+                writer.writeInt32(IndexedFields.VALUE, fields.getValue(id));
+            }
+            if (fields.hasCreated()) {
+                writer.writeDateTime(IndexedFields.CREATED, System.currentTimeMillis());
+            }
+            template.writeFields(writer, random);
+            writer.writeEndDocument();
+        }
+        return toDocument(buffer);
+    }
+
+    /**
+     * @return the documents with the ids offset to offset + count - 1
+     */
+    public List<RawBsonDocument> createDocuments(int count, int offset) {
+        final List<RawBsonDocument> docs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            docs.add(createDocument(offset + i));
+        }
+        return docs;
+    }
+
+    /**
+     * @param updateSeed the seed of the new values, e.g. from a thread local random number generator
+     * @return the update <code>{$set: {...}}</code> replacing all template fields with newly generated values
+     */
+    public RawBsonDocument createUpdate(long updateSeed) {
+        final BasicOutputBuffer buffer = new BasicOutputBuffer(expectedSize);
+        try (final BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+            writer.writeStartDocument();
+            writer.writeName("$set");
+            template.write(writer, new SplittableRandom(updateSeed));
+            writer.writeEndDocument();
+        }
+        return toDocument(buffer);
+    }
+
+    private RawBsonDocument toDocument(BasicOutputBuffer buffer) {
+        // size the buffers of the following documents after this one, so they rarely have to grow
+        expectedSize = buffer.getPosition() + 64;
+        return new RawBsonDocument(buffer.toByteArray());
+    }
+
+    private ValueGenerator compile(BsonValue value) {
+        if (value.isDocument()) {
+            final BsonDocument doc = value.asDocument();
+            if (doc.containsKey("$array")) {
+                return new ArrayGenerator(compile(doc.get("$array")), Distribution.parse(doc.containsKey("$size") ? toSpec(doc.get("$size")) : "1"));
+            }
+            return new ObjectGenerator(doc);
+        } else if (value.isArray()) {
+            final List<ValueGenerator> elements = new ArrayList<>();
+            for (final BsonValue element : value.asArray()) {
+                elements.add(compile(element));
+            }
+            return (writer, random) -> {
+                writer.writeStartArray();
+                for (final ValueGenerator element : elements) {
+                    element.write(writer, random);
+                }
+                writer.writeEndArray();
+            };
+        } else if (value.isString() && value.asString().getValue().startsWith("$")) {
+            final String spec = value.asString().getValue().substring(1);
+            final int colonIdx = spec.indexOf(':');
+            final String kind = colonIdx == -1 ? spec : spec.substring(0, colonIdx);
+            final String arg = colonIdx == -1 ? null : spec.substring(colonIdx + 1);
+            switch (kind.toLowerCase()) {
+                case "int":
+                    final Distribution ints = Distribution.parse(arg == null ? "0..1000000" : arg);
+                    return (writer, random) -> writer.writeInt32((int) ints.nextLong(random));
+                case "long":
+                    final Distribution longs = Distribution.parse(arg == null ? "0..1000000" : arg);
+                    return (writer, random) -> writer.writeInt64(longs.nextLong(random));
+                case "double":
+                    final Distribution doubles = Distribution.parse(arg == null ? "0..1" : arg);
+                    return (writer, random) -> writer.writeDouble(doubles.nextDouble(random));
+                case "bool":
+                    return (writer, random) -> writer.writeBoolean(random.nextBoolean());
+                case "date":
+                    final Distribution days = Distribution.parse(arg == null ? "0..365" : arg);
+                    return (writer, random) -> writer.writeDateTime(startTime - (long) (days.nextDouble(random) * TimeUnit.DAYS.toMillis(1)));
+                case "string":
+                    final Distribution chars = Distribution.parse(arg == null ? "16" : arg);
+                    return (writer, random) -> writer.writeString(randomString((int) Math.max(0L, chars.nextLong(random)), random));
+                case "binary":
+                    final Distribution bytes = Distribution.parse(arg == null ? "16" : arg);
+                    return (writer, random) -> writer.writeBinaryData(new BsonBinary(randomBytes((int) Math.max(0L, bytes.nextLong(random)), random)));
+                default:
+                    throw new IllegalArgumentException("Unknown generator $" + kind);
+            }
+        }
+        return (writer, random) -> valueCodec.encode(writer, value, encoderContext);
+    }
+
+    private static String toSpec(BsonValue value) {
+        if (value.isString()) {
+            return value.asString().getValue();
+        } else if (value.isNumber()) {
+            return Long.toString(value.asNumber().longValue());
+        }
+        throw new IllegalArgumentException("Invalid array size " + value);
+    }
+
+    private String randomString(int length, SplittableRandom random) {
+        final char[] chars = new char[length];
+        long bits = 0;
+        int numBits = 0;
+        for (int i = 0; i < length; i++) {
+            if (i % BLOCK_SIZE < randomChars) {
+                if (numBits < 6) {
+                    bits = random.nextLong();
+                    numBits = 64;
+                }
+                chars[i] = ALPHABET[(int) (bits & 63)];
+                bits >>>= 6;
+                numBits -= 6;
+            } else {
+                chars[i] = 'a';
+            }
+        }
+        return new String(chars);
+    }
+
+    private byte[] randomBytes(int length, SplittableRandom random) {
+        final byte[] bytes = new byte[length];
+        for (int block = 0; block < length; block += BLOCK_SIZE) {
+            final int end = Math.min(length, block + randomBytes);
+            for (int i = block; i < end; i += 8) {
+                long bits = random.nextLong();
+                for (int j = i; j < Math.min(end, i + 8); j++) {
+                    bytes[j] = (byte) bits;
+                    bits >>>= 8;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private interface ValueGenerator {
+        void write(BsonWriter writer, SplittableRandom random);
+    }
+
+    private final class ObjectGenerator implements ValueGenerator {
+        private final String[] names;
+        private final ValueGenerator[] values;
+
+        private ObjectGenerator(BsonDocument template) {
+            this.names = template.keySet().toArray(new String[0]);
+            this.values = new ValueGenerator[names.length];
+            for (int i = 0; i < names.length; i++) {
+                values[i] = compile(template.get(names[i]));
+            }
+        }
+
+        private void writeFields(BsonWriter writer, SplittableRandom random) {
+            for (int i = 0; i < names.length; i++) {
+                writer.writeName(names[i]);
+                values[i].write(writer, random);
+            }
+        }
+
+        @Override
+        public void write(BsonWriter writer, SplittableRandom random) {
+            writer.writeStartDocument();
+            writeFields(writer, random);
+            writer.writeEndDocument();
+        }
+    }
+
+    private static final class ArrayGenerator implements ValueGenerator {
+        private final ValueGenerator element;
+        private final Distribution size;
+
+        private ArrayGenerator(ValueGenerator element, Distribution size) {
+            this.element = element;
+            this.size = size;
+        }
+
+        @Override
+        public void write(BsonWriter writer, SplittableRandom random) {
+            final int length = (int) Math.max(0L, size.nextLong(random));
+            writer.writeStartArray();
+            for (int i = 0; i < length; i++) {
+                element.write(writer, random);
+            }
+            writer.writeEndArray();
+        }
+    }
+
+    /**
+     * A fixed value <code>n</code>, a uniform distribution <code>min..max</code> or a normal distribution
+     * <code>mean~stddev</code>
+     */
+    private static final class Distribution {
+        private final double min;
+        private final double max;
+        private final double mean;
+        private final double stddev;
+
+        private Distribution(double min, double max, double mean, double stddev) {
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.stddev = stddev;
+        }
+
+        private static Distribution parse(String spec) {
+            try {
+                final int rangeIdx = spec.indexOf("..");
+                final int normalIdx = spec.indexOf('~');
+                if (rangeIdx != -1) {
+                    final double min = Double.parseDouble(spec.substring(0, rangeIdx));
+                    final double max = Double.parseDouble(spec.substring(rangeIdx + 2));
+                    if (max < min) {
+                        throw new IllegalArgumentException("Invalid range " + spec);
+                    }
+                    return new Distribution(min, max, 0d, 0d);
+                } else if (normalIdx != -1) {
+                    final double mean = Double.parseDouble(spec.substring(0, normalIdx));
+                    final double stddev = Double.parseDouble(spec.substring(normalIdx + 1));
+                    if (!(stddev >= 0d)) {
+                        throw new IllegalArgumentException("Invalid standard deviation " + spec);
+                    }
+                    // without a deviation every value is the mean
+                    return stddev > 0d ? new Distribution(0d, 0d, mean, stddev) : new Distribution(mean, mean, 0d, 0d);
+                }
+                final double value = Double.parseDouble(spec);
+                return new Distribution(value, value, 0d, 0d);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid distribution " + spec);
+            }
+        }
+
+        private double nextDouble(SplittableRandom random) {
+            if (stddev > 0d) {
+                return mean + stddev * nextGaussian(random);
+            } else if (max > min) {
+                return min + random.nextDouble() * (max - min);
+            }
+            return min;
+        }
+
+        /**
+         * @return a value of the distribution with uniform ranges including the maximum
+         */
+        private long nextLong(SplittableRandom random) {
+            if (stddev <= 0d && max > min) {
+                return (long) min + random.nextLong((long) max - (long) min + 1);
+            }
+            return Math.round(nextDouble(random));
+        }
+
+        /**
+         * Marsaglia's polar method, as {@link SplittableRandom} does not provide normally distributed values
+         */
+        private static double nextGaussian(SplittableRandom random) {
+            double x;
+            double y;
+            double s;
+            do {
+                x = 2d * random.nextDouble() - 1d;
+                y = 2d * random.nextDouble() - 1d;
+                s = x * x + y * y;
+            } while (s >= 1d || s == 0d);
+            return x * Math.sqrt(-2d * Math.log(s) / s);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.Closeable;
+import java.io.Serializable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the stalls of the benchmark process itself, which would otherwise show up as latency of the servers.
+ * <p>
+ * A thread repeatedly sleeps for a fixed resolution and records by how much it woke up late, like jHiccup. A stall of
+ * this thread, e.g. by a safepoint, a GC pause or a descheduled process, stalls the workers the same way. In addition
+ * the pauses reported by the garbage collectors are recorded. The pauses of concurrent collection cycles, which do not
+ * stop the workers, are ignored.
+ * <p>
+ * The stalls are aggregated in time windows, and windows with a stall longer than a threshold are kept, so the report
+ * can point at the parts of the run in which the measured latencies are not to be trusted.
+ */
+public class HiccupMeter implements Runnable, NotificationListener, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HiccupMeter.class);
+
+    private static final long RESOLUTION = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final long windowMs;
+    private final long thresholdNs;
+    private final LatencyStats stalls = new LatencyStats();
+    private final LatencyStats gcPauses = new LatencyStats();
+    private final LongAdder windowGcPause = new LongAdder();
+    private final LongAdder windowGcCount = new LongAdder();
+    private final AtomicLong windowMaxGcPause = new AtomicLong();
+    private final List<StallWindow> stalledWindows = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final Thread thread;
+    private volatile boolean stopped = false;
+    private volatile boolean measuring = false;
+    private long start;
+
+    /**
+     * @param windowMs    the length of a time window in milliseconds
+     * @param thresholdMs the stall in milliseconds above which a window is flagged
+     */
+    public HiccupMeter(long windowMs, double thresholdMs) {
+        this.windowMs = windowMs;
+        this.thresholdNs = (long) (thresholdMs * 1000000d);
+        this.thread = new Thread(this, "hiccup-meter");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+                emitters.add((NotificationEmitter) gc);
+            }
+        }
+        start = System.currentTimeMillis();
+        thread.start();
+    }
+
+    /**
+     * Discard the stalls recorded so far and mark the following windows as part of the measurement window
+     */
+    public void startMeasurement() {
+        stalls.reset();
+        gcPauses.reset();
+        synchronized (stalledWindows) {
+            stalledWindows.clear();
+        }
+        measuring = true;
+    }
+
+    @Override
+    public void run() {
+        long windowStart = System.currentTimeMillis();
+        long windowMax = 0L;
+        try {
+            while (!stopped) {
+                final long before = System.nanoTime();
+                TimeUnit.NANOSECONDS.sleep(RESOLUTION);
+                final long stall = Math.max(System.nanoTime() - before - RESOLUTION, 0L);
+                stalls.record(stall);
+                windowMax = Math.max(windowMax, stall);
+                final long now = System.currentTimeMillis();
+                if (now - windowStart >= windowMs) {
+                    closeWindow(windowStart, windowMax);
+                    windowStart = now;
+                    windowMax = 0L;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while measuring client stalls", e);
+        }
+    }
+
+    private void closeWindow(long windowStart, long maxStall) {
+        final long gcPause = windowGcPause.sumThenReset();
+        final long gcCount = windowGcCount.sumThenReset();
+        final long maxGcPause = windowMaxGcPause.getAndSet(0L);
+        final long worst = Math.max(maxStall, maxGcPause);
+        if (measuring && worst > thresholdNs) {
+            synchronized (stalledWindows) {
+                stalledWindows.add(new StallWindow(windowStart, windowStart - start, worst, gcPause, gcCount));
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        final GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        if (isConcurrent(info.getGcName())) {
+            return;
+        }
+        final long pause = TimeUnit.MILLISECONDS.toNanos(info.getGcInfo().getDuration());
+        gcPauses.record(pause);
+        windowGcPause.add(pause);
+        windowGcCount.increment();
+        windowMaxGcPause.accumulateAndGet(pause, Math::max);
+    }
+
+    /**
+     * @return true for the collectors which report whole concurrent cycles instead of pauses
+     */
+    private static boolean isConcurrent(String gcName) {
+        return gcName.endsWith("Cycles") || gcName.equals("ConcurrentMarkSweep");
+    }
+
+    /**
+     * @return the stalls of the measurement window
+     */
+    public Histogram collectStalls() {
+        return stalls.collect().copy();
+    }
+
+    /**
+     * @return the garbage collection pauses of the measurement window
+     */
+    public Histogram collectGcPauses() {
+        return gcPauses.collect().copy();
+    }
+
+    /**
+     * Add the stalls recorded since the last call to the given histogram
+     */
+    public void collectStallInterval(Histogram target) {
+        stalls.collectInterval(target);
+    }
+
+    /**
+     * Add the garbage collection pauses recorded since the last call to the given histogram
+     */
+    public void collectGcInterval(Histogram target) {
+        gcPauses.collectInterval(target);
+    }
+
+    /**
+     * @return the windows of the measurement window with a stall or garbage collection pause above the threshold
+     */
+    public List<StallWindow> getStalledWindows() {
+        synchronized (stalledWindows) {
+            return new ArrayList<>(stalledWindows);
+        }
+    }
+
+    @Override
+    public void close() {
+        stopped = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for hiccup meter", e);
+        }
+        for (final NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                log.debug("Garbage collection listener already removed", e);
+            }
+        }
+    }
+
+    /**
+     * A time window in which the benchmark process stalled for longer than the threshold
+     */
+    public static final class StallWindow implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long timestamp;
+        private final long elapsed;
+        private final long maxStall;
+        private final long gcPause;
+        private final long gcCount;
+
+        private StallWindow(long timestamp, long elapsed, long maxStall, long gcPause, long gcCount) {
+            this.timestamp = timestamp;
+            this.elapsed = elapsed;
+            this.maxStall = maxStall;
+            this.gcPause = gcPause;
+            this.gcCount = gcCount;
+        }
+
+        /**
+         * @return the start of the window in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the start of the window in milliseconds since the start of the run
+         */
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        /**
+         * @return the longest stall or garbage collection pause in the window in nanoseconds
+         */
+        public long getMaxStall() {
+            return maxStall;
+        }
+
+        /**
+         * @return the sum of the garbage collection pauses in the window in nanoseconds
+         */
+        public long getGcPause() {
+            return gcPause;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+    }
+}
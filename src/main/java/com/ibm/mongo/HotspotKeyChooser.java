@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.util.Random;
+
+/**
+ * Sends a fixed fraction of the operations to a hot set at the start of the key range and spreads the remaining
+ * operations uniformly over the other keys
+ */
+public class HotspotKeyChooser implements KeyChooser {
+
+    private final double hotDataFraction;
+    private final double hotOpFraction;
+
+    /**
+     * @param hotDataFraction the fraction of the keys in the hot set
+     * @param hotOpFraction   the fraction of the operations sent to the hot set
+     */
+    public HotspotKeyChooser(double hotDataFraction, double hotOpFraction) {
+        if (hotDataFraction <= 0d || hotDataFraction > 1d || hotOpFraction < 0d || hotOpFraction > 1d) {
+            throw new IllegalArgumentException("Hot spot fractions must be between 0 and 1");
+        }
+        this.hotDataFraction = hotDataFraction;
+        this.hotOpFraction = hotOpFraction;
+    }
+
+    @Override
+    public int nextKey(KeySpace keys, Random random) {
+        final int size = Math.max(keys.size(), 1);
+        final int hotSetSize = Math.max((int) (size * hotDataFraction), 1);
+        if (hotSetSize >= size || random.nextDouble() < hotOpFraction) {
+            return random.nextInt(hotSetSize);
+        }
+        return hotSetSize + random.nextInt(size - hotSetSize);
+    }
+}
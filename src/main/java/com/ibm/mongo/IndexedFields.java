@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The secondary fields of the benchmark documents, the indexes on them and the queries using them.
+ * <p>
+ * Besides _id and data a document may have the int32 field group with a configurable number of distinct values, the
+ * int32 field value spread uniformly over [0, {@link #VALUE_RANGE}) and the date field created with the time of the
+ * insert. Group and value are derived from the _id by a hash, so they are known for every document without reading it
+ * and are independent of the _id order. The fields are only part of the documents if an index or an operation of the
+ * workload references them, see {@link #create(BenchConfig)}, so they do not inflate the documents otherwise.
+ */
+public class IndexedFields {
+
+    public static final String GROUP = "group";
+    public static final String VALUE = "value";
+    public static final String CREATED = "created";
+
+    public static final int DEFAULT_GROUP_CARDINALITY = 1000;
+
+    /**
+     * The exclusive upper bound of the value field
+     */
+    public static final int VALUE_RANGE = 1000000;
+
+    /**
+     * The expiry of TTL indexes without explicit seconds
+     */
+    public static final long DEFAULT_TTL_SECONDS = TimeUnit.DAYS.toSeconds(1);
+
+    private static final List<String> INDEXABLE_FIELDS = Arrays.asList(GROUP, VALUE, CREATED, "data");
+
+    private static final BsonDocument PROJECTION = new BsonDocument(GROUP, new BsonInt32(1)).append(VALUE, new BsonInt32(1));
+    private static final BsonDocument SORT = new BsonDocument(VALUE, new BsonInt32(-1));
+
+    private final int groupCardinality;
+    private final boolean group;
+    private final boolean value;
+    private final boolean created;
+
+    /**
+     * Secondary fields which are all part of the documents
+     */
+    public IndexedFields(int groupCardinality) {
+        this(groupCardinality, true, true, true);
+    }
+
+    public IndexedFields(int groupCardinality, boolean group, boolean value, boolean created) {
+        this.groupCardinality = groupCardinality;
+        this.group = group;
+        this.value = value;
+        this.created = created;
+    }
+
+    /**
+     * @return the secondary fields referenced by the configured indexes or by the operations of the configured
+     * workload
+     * @throws IllegalArgumentException if the indexes or the workload are invalid
+     */
+    public static IndexedFields create(BenchConfig config) {
+        final Set<String> referenced = new HashSet<>();
+        if (config.getIndexes() != null) {
+            for (final IndexModel index : parseIndexes(config.getIndexes())) {
+                referenced.addAll(((BsonDocument) index.getKeys()).keySet());
+            }
+        }
+        final OperationMix mix = OperationMix.parse(config.getOperationMix());
+        for (final OpType type : OpType.values()) {
+            if (mix.getWeight(type) > 0d) {
+                referenced.addAll(getReferencedFields(type));
+            }
+        }
+        return new IndexedFields(config.getGroupCardinality(), referenced.contains(GROUP), referenced.contains(VALUE), referenced.contains(CREATED));
+    }
+
+    /**
+     * @return the secondary fields the filters, projections, sort orders and pipelines of an operation type refer to
+     */
+    static List<String> getReferencedFields(OpType type) {
+        switch (type) {
+            case QUERY:
+            case COUNT:
+                return Collections.singletonList(GROUP);
+            case RANGE_QUERY:
+                return Collections.singletonList(VALUE);
+            case PROJECTION:
+            case SORT:
+            case AGGREGATE:
+                return Arrays.asList(GROUP, VALUE);
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return whether the documents have the group field
+     */
+    public boolean hasGroup() {
+        return group;
+    }
+
+    /**
+     * @return whether the documents have the value field
+     */
+    public boolean hasValue() {
+        return value;
+    }
+
+    /**
+     * @return whether the documents have the created field
+     */
+    public boolean hasCreated() {
+        return created;
+    }
+
+    /**
+     * @return the number of distinct values of the group field
+     */
+    public int getGroupCardinality() {
+        return groupCardinality;
+    }
+
+    public int getGroup(int id) {
+        return Math.floorMod(hash(id), groupCardinality);
+    }
+
+    public int getValue(int id) {
+        return Math.floorMod(hash(id ^ 0x5bd1e995), VALUE_RANGE);
+    }
+
+    /**
+     * The finalizer of MurmurHash3
+     */
+    private static int hash(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        x ^= x >>> 16;
+        return x;
+    }
+
+    /**
+     * @return the filter document <code>{group: group(id)}</code>
+     */
+    public BsonDocument getGroupFilter(int id) {
+        return new BsonDocument(GROUP, new BsonInt32(getGroup(id)));
+    }
+
+    /**
+     * @param id           the document whose value starts the range
+     * @param numDocuments the number of documents in the collection
+     * @param limit        the expected number of matching documents
+     * @return the filter document <code>{value: {$gte: value(id), $lt: value(id) + width}}</code> with the width
+     * chosen so that about limit documents match
+     */
+    public BsonDocument getValueRangeFilter(int id, int numDocuments, int limit) {
+        final int value = getValue(id);
+        final int width = (int) Math.max(1L, (long) VALUE_RANGE * limit / Math.max(numDocuments, 1));
+        return new BsonDocument(VALUE, new BsonDocument("$gte", new BsonInt32(value)).append("$lt", new BsonInt32(value + width)));
+    }
+
+    /**
+     * @return the projection <code>{group: 1, value: 1}</code> leaving out the data field
+     */
+    public BsonDocument getProjection() {
+        return PROJECTION;
+    }
+
+    /**
+     * @return the sort order <code>{value: -1}</code>
+     */
+    public BsonDocument getSort() {
+        return SORT;
+    }
+
+    /**
+     * @return the pipeline <code>[{$match: {group: group(id)}}, {$group: {_id: "$group", count: {$sum: 1}, total: {$sum: "$value"}}}]</code>
+     */
+    public List<BsonDocument> getAggregatePipeline(int id) {
+        final List<BsonDocument> pipeline = new ArrayList<>(2);
+        pipeline.add(new BsonDocument("$match", getGroupFilter(id)));
+        pipeline.add(new BsonDocument("$group", new BsonDocument("_id", new BsonString("$" + GROUP))
+                .append("count", new BsonDocument("$sum", new BsonInt32(1)))
+                .append("total", new BsonDocument("$sum", new BsonString("$" + VALUE)))));
+        return pipeline;
+    }
+
+    /**
+     * Parse the indexes to create during the load phase. The comma separated entries are either fields joined by
+     * <code>+</code> for a single field or compound index, each optionally prefixed by <code>-</code> for descending
+     * order, or <code>ttl[:seconds]</code> for a TTL index on the created field
+     *
+     * @throws IllegalArgumentException if an entry is invalid
+     */
+    public static List<IndexModel> parseIndexes(String spec) {
+        final List<IndexModel> indexes = new ArrayList<>();
+        for (final String entry : spec.split(",")) {
+            final String index = entry.trim();
+            if (index.isEmpty()) {
+                continue;
+            }
+            if (index.equalsIgnoreCase("ttl") || index.toLowerCase().startsWith("ttl:")) {
+                final long seconds = index.length() > 4 ? Long.parseLong(index.substring(4)) : DEFAULT_TTL_SECONDS;
+                if (seconds < 0) {
+                    throw new IllegalArgumentException("The expiry of a TTL index must not be negative");
+                }
+                indexes.add(new IndexModel(new BsonDocument(CREATED, new BsonInt32(1)), new IndexOptions().expireAfter(seconds, TimeUnit.SECONDS)));
+                continue;
+            }
+            final BsonDocument keys = new BsonDocument();
+            for (final String key : index.split("\\+")) {
+                final boolean descending = key.startsWith("-");
+                final String field = descending ? key.substring(1) : key;
+                if (!INDEXABLE_FIELDS.contains(field)) {
+                    throw new IllegalArgumentException("Unknown field " + field + " in index " + index);
+                }
+                keys.append(field, new BsonInt32(descending ? -1 : 1));
+            }
+            indexes.add(new IndexModel(keys));
+        }
+        if (indexes.isEmpty()) {
+            throw new IllegalArgumentException("No indexes given");
+        }
+        return indexes;
+    }
+}
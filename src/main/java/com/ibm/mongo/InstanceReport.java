@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.DecimalFormat;
+import java.util.*;
+
+/**
+ * Compares the instances of a run to find noisy neighbours: ranks the instances by their p99 latency, computes fairness
+ * metrics across all instances and flags outliers.
+ * <p>
+ * Outliers are detected with the modified z-score of Iglewicz and Hoaglin, which is based on the median and the median
+ * absolute deviation and therefore not skewed by the outliers themselves.
+ */
+public class InstanceReport {
+
+    private static final Logger log = LoggerFactory.getLogger(InstanceReport.class);
+
+    private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000");
+
+    /**
+     * The modified z-score above which an instance is flagged as outlier
+     */
+    private static final double OUTLIER_SCORE = 3.5d;
+
+    /**
+     * The relative deviation from the median above which an instance is flagged if all instances but a few are equal
+     */
+    private static final double OUTLIER_DEVIATION = 0.5d;
+
+    /**
+     * The share of its target rate below which an instance is flagged
+     */
+    private static final double TARGET_TOLERANCE = 0.95d;
+
+    private final List<Instance> instances = new ArrayList<>();
+    private final double medianP99;
+
+    /**
+     * @param results  the results of all instances
+     * @param duration the length of the measurement window in milliseconds
+     */
+    public InstanceReport(Collection<RunResult.InstanceResult> results, long duration) {
+        for (final RunResult.InstanceResult result : results) {
+            instances.add(new Instance(result, duration));
+        }
+        instances.sort((a, b) -> Long.compare(b.p99, a.p99));
+        final List<Instance> active = getActive();
+        final double[] p99s = new double[active.size()];
+        final double[] rates = new double[active.size()];
+        for (int i = 0; i < active.size(); i++) {
+            p99s[i] = active.get(i).p99;
+            rates[i] = active.get(i).rate;
+        }
+        medianP99 = median(p99s);
+        final double madP99 = mad(p99s, medianP99);
+        final double medianRate = median(rates);
+        final double madRate = mad(rates, medianRate);
+        for (final Instance instance : active) {
+            instance.slow = isOutlier(instance.p99, medianP99, madP99) && instance.p99 > medianP99;
+            instance.starved = isOutlier(instance.rate, medianRate, madRate) && instance.rate < medianRate;
+        }
+    }
+
+    private List<Instance> getActive() {
+        final List<Instance> active = new ArrayList<>();
+        for (final Instance instance : instances) {
+            if (instance.count > 0) {
+                active.add(instance);
+            }
+        }
+        return active;
+    }
+
+    private static boolean isOutlier(double value, double median, double mad) {
+        if (mad == 0d) {
+            return Math.abs(value - median) > OUTLIER_DEVIATION * median;
+        }
+        return 0.6745d * Math.abs(value - median) / mad > OUTLIER_SCORE;
+    }
+
+    private static double median(double[] values) {
+        if (values.length == 0) {
+            return 0d;
+        }
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        final int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2d;
+    }
+
+    private static double mad(double[] values, double median) {
+        final double[] deviations = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            deviations[i] = Math.abs(values[i] - median);
+        }
+        return median(deviations);
+    }
+
+    /**
+     * Jain's fairness index of the throughput of all instances which have been sent any requests. It is 1 if all
+     * instances achieved the same throughput and 1/n if a single instance got all of it
+     */
+    public double getJainsIndex() {
+        double sum = 0d, sumOfSquares = 0d;
+        final List<Instance> active = getActive();
+        for (final Instance instance : active) {
+            sum += instance.rate;
+            sumOfSquares += instance.rate * instance.rate;
+        }
+        return sumOfSquares == 0d ? 1d : (sum * sum) / (active.size() * sumOfSquares);
+    }
+
+    /**
+     * Log the ranking of the instances by p99 latency, the fairness metrics and the outliers
+     */
+    public void report() {
+        final List<Instance> active = getActive();
+        if (active.isEmpty()) {
+            log.info("No requests have been sent to any instance");
+            return;
+        }
+        log.info("Instances ranked by p99 latency, slowest first:");
+        int rank = 1;
+        int numOutliers = 0;
+        for (final Instance instance : instances) {
+            final StringBuilder flags = new StringBuilder();
+            if (instance.count == 0) {
+                flags.append(" [no requests]");
+            }
+            if (instance.errors > 0 || instance.timeouts > 0) {
+                flags.append(" [").append(instance.errors).append(" errors, ").append(instance.timeouts).append(" timeouts]");
+            }
+            if (instance.slow) {
+                flags.append(" [outlier: slow]");
+            }
+            if (instance.starved) {
+                flags.append(" [outlier: low throughput]");
+            }
+            if (instance.isBelowTarget()) {
+                flags.append(" [below target]");
+            }
+            if (instance.slow || instance.starved) {
+                numOutliers++;
+            }
+            final String target = instance.targetRate > 0d ? " of " + decimalFormat.format(instance.targetRate) + " ("
+                    + decimalFormat.format(100d * instance.rate / instance.targetRate) + "%)" : "";
+            log.info("{}. {} {}{} requests/sec, latency p50/p99/p99.9/Max [ms]: {}/{}/{}/{}{}", rank++, instance.name,
+                    decimalFormat.format(instance.rate), target, formatLatency(instance.p50), formatLatency(instance.p99),
+                    formatLatency(instance.p999), formatLatency(instance.max), flags);
+            for (final RunResult.MemberResult member : instance.members) {
+                final Histogram latencies = member.getLatencies();
+                log.info("    member {} {} commands, {} failed, round trip p50/p99/Max [ms]: {}/{}/{}", member.getAddress(),
+                        member.getCommands(), member.getFailures(), formatLatency(latencies.getValueAtPercentile(50d)),
+                        formatLatency(latencies.getValueAtPercentile(99d)), formatLatency(latencies.getMaxValue()));
+            }
+        }
+        final Instance slowest = active.get(0);
+        final Instance fastest = active.get(active.size() - 1);
+        log.info("p99 latency across {} instances Min/Median/Max [ms]: {}/{}/{}, spread Max/Min: {}", active.size(),
+                formatLatency(fastest.p99), formatLatency((long) medianP99), formatLatency(slowest.p99),
+                decimalFormat.format((double) slowest.p99 / (double) Math.max(fastest.p99, 1)));
+        log.info("Jain's fairness index of the throughput: {}", decimalFormat.format(getJainsIndex()));
+        int numBelowTarget = 0;
+        for (final Instance instance : instances) {
+            if (instance.isBelowTarget()) {
+                numBelowTarget++;
+            }
+        }
+        if (numBelowTarget > 0) {
+            log.warn("{} of {} instances did not reach {}% of their target rate", numBelowTarget, instances.size(),
+                    Math.round(TARGET_TOLERANCE * 100d));
+        }
+        if (numOutliers > 0) {
+            log.warn("{} of {} instances are outliers", numOutliers, instances.size());
+        }
+    }
+
+    private static String formatLatency(long nanos) {
+        return decimalFormat.format(nanos / 1000000f);
+    }
+
+    private static final class Instance {
+        private final String name;
+        private final long count;
+        private final double rate;
+        private final double targetRate;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+        private final long errors;
+        private final long timeouts;
+        private final Collection<RunResult.MemberResult> members;
+        private boolean slow;
+        private boolean starved;
+
+        private Instance(RunResult.InstanceResult result, long duration) {
+            final Histogram latencies = result.getLatencies();
+            this.name = result.getName();
+            this.errors = result.getErrors();
+            this.timeouts = result.getTimeouts();
+            this.members = result.getMembers();
+            this.count = latencies.getTotalCount();
+            this.rate = count * 1000d / Math.max(duration, 1);
+            this.targetRate = result.getTargetRate();
+            this.p50 = latencies.getValueAtPercentile(50d);
+            this.p99 = latencies.getValueAtPercentile(99d);
+            this.p999 = latencies.getValueAtPercentile(99.9d);
+            this.max = latencies.getMaxValue();
+        }
+
+        private boolean isBelowTarget() {
+            return targetRate > 0d && rate < TARGET_TOLERANCE * targetRate;
+        }
+    }
+}
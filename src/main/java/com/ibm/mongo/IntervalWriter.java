@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes a time series of non-cumulative snapshots of the run phase. For every time window a record is written per
+ * instance and operation type, per instance over all operation types and per operation type over all instances. The
+ * records contain the throughput and latency percentiles of the window and, for the per instance records, the errors
+ * and timeouts of the window.
+ * <p>
+ * If a {@link ServerStatusSampler} is given, the per instance records also contain the server side values sampled in
+ * the window: the increase of the server counters since the last sample of the previous window and the last value of
+ * the gauges. The server values are empty for windows without a new sample.
+ * <p>
+ * If a {@link HiccupMeter} is given, the stalls and garbage collection pauses of the benchmark process are written as
+ * the operations <code>stall</code> and <code>gc</code> of the instance <code>client</code>.
+ * <p>
+ * Latencies are written in milliseconds and rates in operations per second. The file is written as CSV or, if the file name ends with <code>.json</code> or <code>.jsonl</code>, as JSON Lines.
+ * The series starts with the first window after all workers are connected and includes the warmup.
+ */
+public class IntervalWriter implements Runnable, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(IntervalWriter.class);
+
+    public static final String ALL = "all";
+
+    public static final String CLIENT = "client";
+
+    private static final String CSV_HEADER = "timestamp,elapsed,measuring,instance,op,count,rate,min,p50,p90,p99,p99.9,max,errors,timeouts";
+
+    private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000", DecimalFormatSymbols.getInstance(Locale.ROOT));
+
+    private final MetricsRegistry metrics;
+    private final long periodMs;
+    private final boolean json;
+    private final Writer out;
+    private final ServerStatusSampler sampler;
+    private final HiccupMeter hiccups;
+    private final Map<String, long[]> lastErrors = new HashMap<>();
+    private final Map<Integer, ServerStatusSampler.Sample> lastSamples = new HashMap<>();
+    private final Histogram[] opWindows = new Histogram[OpType.values().length];
+    private final Histogram instanceWindow = LatencyStats.createHistogram();
+    private final Histogram opInstanceWindow = LatencyStats.createHistogram();
+    private final Histogram allWindow = LatencyStats.createHistogram();
+    private final Thread thread;
+    private volatile boolean stopped = false;
+    private volatile boolean measuring = false;
+    private long start;
+    private long lastWindow;
+
+    public IntervalWriter(MetricsRegistry metrics, String file, long periodMs) throws IOException {
+        this(metrics, file, periodMs, null, null);
+    }
+
+    /**
+     * @param metrics  the statistics of the instances
+     * @param file     the file to write to
+     * @param periodMs the length of a time window in milliseconds
+     * @param sampler  the serverStatus samples of the instances, may be null
+     * @param hiccups  the stalls of the process, may be null
+     */
+    public IntervalWriter(MetricsRegistry metrics, String file, long periodMs, ServerStatusSampler sampler, HiccupMeter hiccups) throws IOException {
+        this.metrics = metrics;
+        this.sampler = sampler;
+        this.hiccups = hiccups;
+        this.periodMs = periodMs;
+        this.json = file.endsWith(".json") || file.endsWith(".jsonl");
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 64 * 1024);
+        for (int i = 0; i < opWindows.length; i++) {
+            opWindows[i] = LatencyStats.createHistogram();
+        }
+        if (!json) {
+            out.write(CSV_HEADER);
+            if (sampler != null) {
+                for (final ServerStatusSampler.Metric metric : ServerStatusSampler.Metric.values()) {
+                    out.write(',');
+                    out.write(metric.getName());
+                }
+            }
+            out.write('\n');
+        }
+        this.thread = new Thread(this, "interval-writer");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        start = System.currentTimeMillis();
+        lastWindow = start;
+        thread.start();
+    }
+
+    /**
+     * Mark the following windows as part of the measurement window
+     */
+    public void startMeasurement() {
+        measuring = true;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                final long next = lastWindow + periodMs;
+                long now;
+                while (!stopped && (now = System.currentTimeMillis()) < next) {
+                    Thread.sleep(Math.min(next - now, 100));
+                }
+                if (!stopped) {
+                    writeWindow();
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while writing intervals", e);
+        } catch (IOException e) {
+            log.error("Unable to write intervals", e);
+        }
+    }
+
+    private void writeWindow() throws IOException {
+        final long now = System.currentTimeMillis();
+        final float seconds = Math.max(now - lastWindow, 1) / 1000f;
+        lastWindow = now;
+        allWindow.reset();
+        for (final Histogram opWindow : opWindows) {
+            opWindow.reset();
+        }
+        for (final PortStats stats : metrics.getAll()) {
+            instanceWindow.reset();
+            for (final OpType type : OpType.values()) {
+                opInstanceWindow.reset();
+                if (stats.collectInterval(type, opInstanceWindow)) {
+                    opWindows[type.ordinal()].add(opInstanceWindow);
+                    instanceWindow.add(opInstanceWindow);
+                    if (opInstanceWindow.getTotalCount() > 0) {
+                        write(now, seconds, stats.getInstance(), type.getName(), opInstanceWindow, -1, -1, null);
+                    }
+                }
+            }
+            allWindow.add(instanceWindow);
+            long[] last = lastErrors.get(stats.getInstance());
+            if (last == null) {
+                last = new long[2];
+                lastErrors.put(stats.getInstance(), last);
+            }
+            final long errors = stats.getErrors(), timeouts = stats.getTimeouts();
+            write(now, seconds, stats.getInstance(), ALL, instanceWindow, errors - last[0], timeouts - last[1], getServerValues(stats.getInstanceId()));
+            last[0] = errors;
+            last[1] = timeouts;
+        }
+        for (final OpType type : OpType.values()) {
+            if (opWindows[type.ordinal()].getTotalCount() > 0) {
+                write(now, seconds, ALL, type.getName(), opWindows[type.ordinal()], -1, -1, null);
+            }
+        }
+        write(now, seconds, ALL, ALL, allWindow, -1, -1, null);
+        if (hiccups != null) {
+            opInstanceWindow.reset();
+            hiccups.collectStallInterval(opInstanceWindow);
+            write(now, seconds, CLIENT, "stall", opInstanceWindow, -1, -1, null);
+            opInstanceWindow.reset();
+            hiccups.collectGcInterval(opInstanceWindow);
+            if (opInstanceWindow.getTotalCount() > 0) {
+                write(now, seconds, CLIENT, "gc", opInstanceWindow, -1, -1, null);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the server values of the instance in the window, null if there is no new sample
+     */
+    private long[] getServerValues(int port) {
+        if (sampler == null) {
+            return null;
+        }
+        final ServerStatusSampler.Sample sample = sampler.getSample(port);
+        final ServerStatusSampler.Sample previous = lastSamples.get(port);
+        if (sample == null || sample == previous) {
+            return null;
+        }
+        lastSamples.put(port, sample);
+        final ServerStatusSampler.Metric[] serverMetrics = ServerStatusSampler.Metric.values();
+        final long[] values = new long[serverMetrics.length];
+        for (int i = 0; i < serverMetrics.length; i++) {
+            values[i] = sample.getDelta(serverMetrics[i], previous);
+        }
+        return values;
+    }
+
+    /**
+     * @param errors   the errors of the window, -1 if not attributed to this record
+     * @param timeouts the timeouts of the window, -1 if not attributed to this record
+     * @param server   the server values of the window, null if not attributed to this record or not sampled
+     */
+    private void write(long timestamp, float seconds, String instance, String op, Histogram latencies, long errors, long timeouts, long[] server) throws IOException {
+        final long count = latencies.getTotalCount();
+        final String elapsed = decimalFormat.format((timestamp - start) / 1000f);
+        final String rate = decimalFormat.format(count / seconds);
+        final StringBuilder sb = new StringBuilder(256);
+        if (json) {
+            sb.append("{\"timestamp\":").append(timestamp)
+                    .append(",\"elapsed\":").append(elapsed)
+                    .append(",\"measuring\":").append(measuring)
+                    .append(",\"instance\":");
+            appendJsonString(sb, instance);
+            sb.append(",\"op\":\"").append(op)
+                    .append("\",\"count\":").append(count)
+                    .append(",\"rate\":").append(rate);
+            if (count > 0) {
+                sb.append(",\"min\":").append(formatLatency(latencies.getMinValue()))
+                        .append(",\"p50\":").append(formatLatency(latencies.getValueAtPercentile(50d)))
+                        .append(",\"p90\":").append(formatLatency(latencies.getValueAtPercentile(90d)))
+                        .append(",\"p99\":").append(formatLatency(latencies.getValueAtPercentile(99d)))
+                        .append(",\"p99.9\":").append(formatLatency(latencies.getValueAtPercentile(99.9d)))
+                        .append(",\"max\":").append(formatLatency(latencies.getMaxValue()));
+            }
+            if (errors >= 0) {
+                sb.append(",\"errors\":").append(errors).append(",\"timeouts\":").append(timeouts);
+            }
+            if (server != null) {
+                sb.append(",\"server\":{");
+                boolean first = true;
+                for (final ServerStatusSampler.Metric metric : ServerStatusSampler.Metric.values()) {
+                    if (server[metric.ordinal()] >= 0) {
+                        sb.append(first ? "\"" : ",\"").append(metric.getName()).append("\":").append(server[metric.ordinal()]);
+                        first = false;
+                    }
+                }
+                sb.append('}');
+            }
+            sb.append("}\n");
+        } else {
+            sb.append(timestamp).append(',').append(elapsed).append(',').append(measuring).append(',')
+                    .append(escapeCsv(instance)).append(',').append(op).append(',').append(count).append(',').append(rate);
+            if (count > 0) {
+                sb.append(',').append(formatLatency(latencies.getMinValue()))
+                        .append(',').append(formatLatency(latencies.getValueAtPercentile(50d)))
+                        .append(',').append(formatLatency(latencies.getValueAtPercentile(90d)))
+                        .append(',').append(formatLatency(latencies.getValueAtPercentile(99d)))
+                        .append(',').append(formatLatency(latencies.getValueAtPercentile(99.9d)))
+                        .append(',').append(formatLatency(latencies.getMaxValue()));
+            } else {
+                sb.append(",,,,,,");
+            }
+            sb.append(',').append(errors >= 0 ? Long.toString(errors) : "")
+                    .append(',').append(timeouts >= 0 ? Long.toString(timeouts) : "");
+            if (sampler != null) {
+                for (int i = 0; i < ServerStatusSampler.Metric.values().length; i++) {
+                    sb.append(',').append(server != null && server[i] >= 0 ? Long.toString(server[i]) : "");
+                }
+            }
+            sb.append('\n');
+        }
+        out.write(sb.toString());
+    }
+
+    /**
+     * @return the value as a CSV field, quoted if it contains a separator, a quote or a line break
+     */
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    private static String formatLatency(long nanos) {
+        return decimalFormat.format(nanos / 1000000f);
+    }
+
+    /**
+     * Write the last, possibly partial, window and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        stopped = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for interval writer", e);
+        }
+        try {
+            writeWindow();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.util.Random;
+
+/**
+ * Chooses the _id of the document an operation is applied to. Implementations are shared by all threads and must be
+ * thread safe
+ */
+public interface KeyChooser {
+
+    /**
+     * @param keys   the key space of the instance the operation is sent to
+     * @param random the random number generator of the calling thread
+     * @return an id in the range [0, keys.size())
+     */
+    int nextKey(KeySpace keys, Random random);
+
+    /**
+     * Create a key chooser from its command line specification
+     *
+     * @param spec    one of <code>uniform</code>, <code>zipfian[:constant]</code>, <code>latest[:constant]</code> or
+     *                <code>hotspot[:hotDataFraction:hotOpFraction]</code>
+     * @param numKeys the number of documents loaded into every instance
+     * @throws IllegalArgumentException if the distribution is unknown or has the wrong number of parameters
+     */
+    static KeyChooser create(String spec, int numKeys) {
+        final String[] parts = spec.split(":");
+        switch (parts[0].toLowerCase()) {
+            case "uniform":
+                checkParameters(parts, 1);
+                return new UniformKeyChooser();
+            case "zipfian":
+                checkParameters(parts, 1, 2);
+                return new ZipfianKeyChooser(numKeys, parts.length > 1 ? Double.parseDouble(parts[1]) : ZipfianKeyChooser.DEFAULT_CONSTANT, true);
+            case "latest":
+                checkParameters(parts, 1, 2);
+                return new LatestKeyChooser(numKeys, parts.length > 1 ? Double.parseDouble(parts[1]) : ZipfianKeyChooser.DEFAULT_CONSTANT);
+            case "hotspot":
+                checkParameters(parts, 1, 3);
+                if (parts.length == 3) {
+                    return new HotspotKeyChooser(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                }
+                return new HotspotKeyChooser(0.2d, 0.8d);
+            default:
+                throw new IllegalArgumentException("Unknown key distribution " + spec);
+        }
+    }
+
+    /**
+     * @param numParts the allowed numbers of parts of the specification, i.e. the name and its parameters
+     */
+    static void checkParameters(String[] parts, int... numParts) {
+        for (final int n : numParts) {
+            if (parts.length == n) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Wrong number of parameters for " + parts[0]);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The range of _id values of the documents in a single instance. The documents loaded during the load phase have the
+ * ids 0 to n-1, documents inserted during the run phase get the following ids.
+ */
+public class KeySpace {
+
+    private final AtomicInteger next;
+
+    public KeySpace(int numKeys) {
+        this.next = new AtomicInteger(numKeys);
+    }
+
+    /**
+     * @return the number of ids handed out so far, i.e. the upper bound of the id range
+     */
+    public int size() {
+        return next.get();
+    }
+
+    /**
+     * @return the id of the most recently inserted document
+     */
+    public int latest() {
+        return next.get() - 1;
+    }
+
+    /**
+     * @return a new id for an insert
+     */
+    public int nextInsertKey() {
+        return next.getAndIncrement();
+    }
+
+    /**
+     * @return the first of count consecutive new ids for a batch of inserts
+     */
+    public int nextInsertKeys(int count) {
+        return next.getAndAdd(count);
+    }
+
+    /**
+     * Make sure that new ids are larger than the given id, e.g. because documents have been inserted by a previous run
+     */
+    public void ensureAbove(int id) {
+        int current;
+        while ((current = next.get()) <= id) {
+            if (next.compareAndSet(current, id + 1)) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+/**
+ * Computes the latency distributions of the latency files of a prefix. Both the binary files written by
+ * {@link LatencySink} and the text files written by {@link LatencyFileConverter} are supported; if binary files exist
+ * the text files are ignored, since they contain the same latencies.
+ * <p>
+ * The files are split into chunks which are memory-mapped and parsed in parallel into one histogram per chunk and
+ * operation type. The memory needed is independent of the size of the files.
+ */
+public class LatencyFileAnalyzer {
+
+    private static final Logger log = LoggerFactory.getLogger(LatencyFileAnalyzer.class);
+
+    /**
+     * The maximum number of bytes mapped and parsed by a single task
+     */
+    private static final long CHUNK_SIZE = 256L * 1024 * 1024;
+
+    /**
+     * The maximum length of a line in a text file
+     */
+    private static final int MAX_LINE_LENGTH = 64;
+
+    /**
+     * The base of the logarithmic buckets written to the histogram file
+     */
+    private static final double BUCKET_BASE = 1.1d;
+
+    private static final double[] REPORTED_PERCENTILES = {50d, 90d, 99d, 99.9d, 99.99d};
+
+    private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000", DecimalFormatSymbols.getInstance(Locale.ROOT));
+
+    private final int numThreads;
+
+    /**
+     * @param numThreads the number of files or chunks parsed in parallel
+     */
+    public LatencyFileAnalyzer(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Find all text latency files <code>&lt;prefix&gt;_&lt;op&gt;_&lt;id&gt;</code> and the operation type of each
+     */
+    public static Map<File, OpType> findTextFiles(String prefix) {
+        final File prefixFile = new File(prefix);
+        final File dir = prefixFile.getAbsoluteFile().getParentFile();
+        final Map<File, OpType> result = new LinkedHashMap<>();
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (final OpType type : OpType.values()) {
+            final Pattern pattern = Pattern.compile(Pattern.quote(prefixFile.getName() + "_" + type.getName() + "_") + "\\d+");
+            for (final File f : files) {
+                if (f.isFile() && pattern.matcher(f.getName()).matches()) {
+                    result.put(f, type);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Analyze all latency files of the given prefix, log the percentiles and write for every operation type the
+     * percentile distribution to <code>&lt;prefix&gt;_&lt;op&gt;.hgrm</code> and the histogram to
+     * <code>&lt;prefix&gt;_&lt;op&gt;_histogram.csv</code>
+     */
+    public void analyzeAll(String prefix) throws IOException {
+        final Map<OpType, Histogram> histograms = analyze(prefix);
+        if (histograms.isEmpty()) {
+            log.warn("No latency files found for prefix {}", prefix);
+            return;
+        }
+        for (final Map.Entry<OpType, Histogram> entry : histograms.entrySet()) {
+            final String name = entry.getKey().getName();
+            final Histogram histogram = entry.getValue();
+            report(name, histogram);
+            try (final PrintStream out = new PrintStream(new FileOutputStream(prefix + "_" + name + ".hgrm"), false, "US-ASCII")) {
+                histogram.outputPercentileDistribution(out, 5, 1000000d);
+            }
+            writeHistogram(new File(prefix + "_" + name + "_histogram.csv"), histogram);
+        }
+    }
+
+    /**
+     * @return the latency distribution of every operation type found in the latency files of the given prefix
+     */
+    public Map<OpType, Histogram> analyze(String prefix) throws IOException {
+        final List<Callable<Map<OpType, Histogram>>> tasks = new ArrayList<>();
+        final List<File> binaryFiles = LatencyFileConverter.findFiles(prefix);
+        long numBytes = 0;
+        if (!binaryFiles.isEmpty()) {
+            for (final File f : binaryFiles) {
+                numBytes += f.length();
+                final long numRecords = (f.length() - LatencySink.HEADER_SIZE) / LatencySink.RECORD_SIZE;
+                final long recordsPerChunk = CHUNK_SIZE / LatencySink.RECORD_SIZE;
+                for (long first = 0; first < numRecords; first += recordsPerChunk) {
+                    final long start = LatencySink.HEADER_SIZE + first * LatencySink.RECORD_SIZE;
+                    final long count = Math.min(recordsPerChunk, numRecords - first);
+                    tasks.add(() -> parseBinary(f, start, count));
+                }
+                checkHeader(f);
+            }
+        } else {
+            for (final Map.Entry<File, OpType> entry : findTextFiles(prefix).entrySet()) {
+                final File f = entry.getKey();
+                numBytes += f.length();
+                for (long start = 0; start < f.length(); start += CHUNK_SIZE) {
+                    final long chunkStart = start;
+                    tasks.add(() -> parseText(f, entry.getValue(), chunkStart, Math.min(chunkStart + CHUNK_SIZE, f.length())));
+                }
+            }
+        }
+        log.info("Analyzing {} MB of latency files in {} chunks with {} threads", numBytes / (1024 * 1024), tasks.size(), numThreads);
+
+        final long startMillis = System.currentTimeMillis();
+        final Map<OpType, Histogram> result = new EnumMap<>(OpType.class);
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (final Future<Map<OpType, Histogram>> future : executor.invokeAll(tasks)) {
+                for (final Map.Entry<OpType, Histogram> entry : future.get().entrySet()) {
+                    final Histogram merged = result.get(entry.getKey());
+                    if (merged == null) {
+                        result.put(entry.getKey(), entry.getValue());
+                    } else {
+                        merged.add(entry.getValue());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while analyzing latency files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Unable to analyze latency files", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Analyzed latency files in {} secs", decimalFormat.format((System.currentTimeMillis() - startMillis) / 1000f));
+        return result;
+    }
+
+    private static void checkHeader(File f) throws IOException {
+        try (final DataInputStream in = new DataInputStream(new FileInputStream(f))) {
+            if (in.readInt() != LatencySink.MAGIC) {
+                throw new IOException("Not a latency file: " + f);
+            }
+            final int version = in.readInt();
+            if (version != LatencySink.VERSION) {
+                throw new IOException("Unsupported latency file version " + version + " in " + f);
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(File f, long start, long length) throws IOException {
+        try (final RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+    }
+
+    private static Map<OpType, Histogram> parseBinary(File f, long start, long count) throws IOException {
+        final Map<OpType, Histogram> histograms = new EnumMap<>(OpType.class);
+        final MappedByteBuffer buffer = map(f, start, count * LatencySink.RECORD_SIZE);
+        for (long i = 0; i < count; i++) {
+            buffer.getLong();
+            final OpType type = OpType.fromCode(buffer.get());
+            buffer.getInt();
+            record(histograms, type, buffer.getLong());
+        }
+        return histograms;
+    }
+
+    /**
+     * Parse the lines starting in the range [start, end) of a text file. A line crossing the end of the range is
+     * parsed completely, a line crossing the start belongs to the previous range
+     */
+    private static Map<OpType, Histogram> parseText(File f, OpType type, long start, long end) throws IOException {
+        final Map<OpType, Histogram> histograms = new EnumMap<>(OpType.class);
+        final long mapStart = start == 0 ? 0 : start - 1;
+        final MappedByteBuffer buffer = map(f, mapStart, Math.min(end + MAX_LINE_LENGTH, f.length()) - mapStart);
+        final int limit = (int) (end - mapStart);
+        int pos = 0;
+        if (start > 0) {
+            // skip the rest of the line started in the previous range
+            while (pos < buffer.limit() && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+            if (pos >= limit) {
+                // no line starts in this range
+                return histograms;
+            }
+        }
+        long value = 0;
+        boolean inNumber = false;
+        while (pos < buffer.limit()) {
+            final byte b = buffer.get(pos);
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                inNumber = true;
+            } else {
+                if (inNumber) {
+                    record(histograms, type, value);
+                    value = 0;
+                    inNumber = false;
+                }
+                if (b == '\n' && pos + 1 >= limit) {
+                    // the next line starts in the following range
+                    return histograms;
+                }
+            }
+            pos++;
+        }
+        if (inNumber) {
+            record(histograms, type, value);
+        }
+        return histograms;
+    }
+
+    private static void record(Map<OpType, Histogram> histograms, OpType type, long latency) {
+        Histogram histogram = histograms.get(type);
+        if (histogram == null) {
+            histogram = LatencyStats.createHistogram();
+            histograms.put(type, histogram);
+        }
+        histogram.recordValue(Math.min(Math.max(latency, 0), LatencyStats.HIGHEST_LATENCY));
+    }
+
+    private static void report(String name, Histogram latencies) {
+        final StringBuilder values = new StringBuilder();
+        values.append(formatLatency(latencies.getMinValue()));
+        for (final double percentile : REPORTED_PERCENTILES) {
+            values.append('/').append(formatLatency(latencies.getValueAtPercentile(percentile)));
+        }
+        values.append('/').append(formatLatency(latencies.getMaxValue()));
+        log.info("{} {} latencies Min/p50/p90/p99/p99.9/p99.99/Max [ms]: {}", latencies.getTotalCount(), name, values);
+    }
+
+    /**
+     * Write the histogram with logarithmic buckets as CSV: the upper bound of the bucket in ms, the number of
+     * latencies in the bucket and the percentage of latencies up to the upper bound
+     */
+    private static void writeHistogram(File file, Histogram histogram) throws IOException {
+        try (final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII))) {
+            out.write("latency_ms,count,percentile\n");
+            for (final HistogramIterationValue v : histogram.logarithmicBucketValues(LatencyStats.LOWEST_LATENCY, BUCKET_BASE)) {
+                out.write(formatLatency(v.getValueIteratedTo()));
+                out.write(',');
+                out.write(Long.toString(v.getCountAddedInThisIterationStep()));
+                out.write(',');
+                out.write(decimalFormat.format(v.getPercentile()));
+                out.write('\n');
+            }
+        }
+    }
+
+    private static String formatLatency(long nanos) {
+        return decimalFormat.format(nanos / 1000000f);
+    }
+}
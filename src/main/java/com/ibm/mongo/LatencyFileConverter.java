@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts binary latency files written by {@link LatencySink} into the text format with one latency in nanoseconds
+ * per line and one file per operation type
+ */
+public class LatencyFileConverter {
+
+    private static final Logger log = LoggerFactory.getLogger(LatencyFileConverter.class);
+
+    private static final int READ_BUFFER_SIZE = LatencySink.RECORD_SIZE * 1024 * 64;
+
+    private final String lineSeparator = System.getProperty("line.separator");
+
+    /**
+     * Find all binary latency files written for the given prefix
+     *
+     * @param prefix the file prefix passed via --record-latencies
+     * @return the binary latency files
+     */
+    public static List<File> findFiles(String prefix) {
+        final File prefixFile = new File(prefix);
+        final File dir = prefixFile.getAbsoluteFile().getParentFile();
+        final String namePrefix = prefixFile.getName() + "_";
+        final List<File> result = new ArrayList<>();
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File f : files) {
+                final String name = f.getName();
+                if (f.isFile() && name.startsWith(namePrefix) && name.endsWith(LatencySink.FILE_SUFFIX)
+                        && name.substring(namePrefix.length(), name.length() - LatencySink.FILE_SUFFIX.length()).matches("\\d+")) {
+                    result.add(f);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void convertAll(String prefix) throws IOException {
+        final List<File> files = findFiles(prefix);
+        if (files.isEmpty()) {
+            log.warn("No latency files found for prefix {}", prefix);
+        }
+        for (final File f : files) {
+            convert(f);
+        }
+    }
+
+    /**
+     * Convert a single binary file <code>&lt;prefix&gt;_&lt;id&gt;.bin</code> into the text files
+     * <code>&lt;prefix&gt;_&lt;op&gt;_&lt;id&gt;</code>
+     */
+    public void convert(File binaryFile) throws IOException {
+        final String name = binaryFile.getName();
+        final String base = name.substring(0, name.length() - LatencySink.FILE_SUFFIX.length());
+        final int idx = base.lastIndexOf('_');
+        final String prefix = base.substring(0, idx);
+        final String id = base.substring(idx + 1);
+        final Map<OpType, Writer> writers = new EnumMap<>(OpType.class);
+        long numRecords = 0;
+        try (final FileInputStream in = new FileInputStream(binaryFile)) {
+            final FileChannel channel = in.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+            readFully(channel, buffer, LatencySink.HEADER_SIZE);
+            if (buffer.getInt() != LatencySink.MAGIC) {
+                throw new IOException("Not a latency file: " + binaryFile);
+            }
+            int version = buffer.getInt();
+            if (version != LatencySink.VERSION) {
+                throw new IOException("Unsupported latency file version " + version + " in " + binaryFile);
+            }
+            buffer.clear();
+            while (channel.read(buffer) != -1 || buffer.position() > 0) {
+                buffer.flip();
+                if (buffer.remaining() < LatencySink.RECORD_SIZE) {
+                    log.warn("Ignoring {} trailing bytes in {}", buffer.remaining(), binaryFile);
+                    break;
+                }
+                while (buffer.remaining() >= LatencySink.RECORD_SIZE) {
+                    buffer.getLong();
+                    final OpType type = OpType.fromCode(buffer.get());
+                    buffer.getInt();
+                    final long latency = buffer.getLong();
+                    Writer writer = writers.get(type);
+                    if (writer == null) {
+                        final File out = new File(binaryFile.getParentFile(), prefix + "_" + type.getName() + "_" + id);
+                        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "US-ASCII"), 1024 * 1024);
+                        writers.put(type, writer);
+                    }
+                    writer.write(Long.toString(latency));
+                    writer.write(lineSeparator);
+                    numRecords++;
+                }
+                buffer.compact();
+            }
+        } finally {
+            for (final Writer w : writers.values()) {
+                w.close();
+            }
+        }
+        log.info("Converted {} latencies from {}", numRecords, binaryFile);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, int len) throws IOException {
+        buffer.limit(len);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new EOFException("Unexpected end of latency file");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records the latencies of all threads of a run into a single latency file <code>&lt;prefix&gt;_&lt;id&gt;.bin</code>,
+ * see {@link LatencySink}.
+ * <p>
+ * The completion callbacks of the asynchronous driver run on threads shared by all workers, so instead of sharing a
+ * sink under a lock every recording thread fills chunks of its own, which are handed to a dedicated writer thread
+ * once full. Recording a latency thus never waits for another thread nor for file I/O, unless the writer falls behind
+ * by more than {@link #QUEUE_CAPACITY} chunks. The chunks are recycled, so recording does not allocate.
+ */
+public class LatencyRecorder implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(LatencyRecorder.class);
+
+    private static final int CHUNK_SIZE = 256 * LatencySink.RECORD_SIZE;
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final String fileName;
+    private final LatencySink sink;
+    private final long epochOffsetNanos;
+    private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ThreadLocal<Chunk> chunks = new ThreadLocal<>();
+    private final List<Chunk> allChunks = new ArrayList<>();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    /**
+     * @param prefix the file prefix passed via --record-latencies
+     * @param id     the id of the file, unique for the prefix
+     */
+    public LatencyRecorder(String prefix, long id) throws IOException {
+        this.fileName = prefix + "_" + id + LatencySink.FILE_SUFFIX;
+        this.sink = new LatencySink(fileName);
+        this.epochOffsetNanos = sink.getEpochOffsetNanos();
+        this.writer = new Thread(this::write, "latency-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Record a single latency. Safe to call concurrently from any number of threads
+     *
+     * @see LatencySink#record(long, OpType, int, long)
+     */
+    public void record(long startNanos, OpType type, int port, long latency) {
+        if (closed) {
+            return;
+        }
+        Chunk chunk = chunks.get();
+        if (chunk == null) {
+            chunk = new Chunk();
+            synchronized (allChunks) {
+                allChunks.add(chunk);
+            }
+            chunks.set(chunk);
+        }
+        if (!chunk.buffer.hasRemaining()) {
+            handOff(chunk.buffer);
+            final ByteBuffer recycled = free.poll();
+            chunk.buffer = recycled != null ? recycled : ByteBuffer.allocate(CHUNK_SIZE);
+        }
+        LatencySink.put(chunk.buffer, startNanos + epochOffsetNanos, type, port, latency);
+    }
+
+    private void handOff(ByteBuffer buffer) {
+        try {
+            full.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        boolean failed = false;
+        try {
+            ByteBuffer buffer;
+            while ((buffer = full.take()) != END) {
+                buffer.flip();
+                if (!failed) {
+                    try {
+                        sink.write(buffer);
+                    } catch (IOException e) {
+                        // keep taking the chunks, so the recording threads never block
+                        log.error("Unable to write latency file {}, dropping the remaining latencies", fileName, e);
+                        failed = true;
+                    }
+                }
+                buffer.clear();
+                free.offer(buffer);
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while writing latency file {}", fileName, e);
+        }
+    }
+
+    /**
+     * Write the partially filled chunks of all threads and close the file. Must only be called once no more latencies
+     * are recorded
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (allChunks) {
+            for (final Chunk chunk : allChunks) {
+                if (chunk.buffer.position() > 0) {
+                    handOff(chunk.buffer);
+                }
+            }
+            allChunks.clear();
+        }
+        handOff(END);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for the latency file {}", fileName, e);
+        }
+        try {
+            sink.close();
+        } catch (IOException e) {
+            log.error("Unable to close latency file {}", fileName, e);
+        }
+    }
+
+    /**
+     * The chunk currently filled by a thread
+     */
+    private static final class Chunk {
+        private ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes latencies as fixed size binary records into a file.
+ * <p>
+ * Records are collected in a preallocated direct buffer which is only written to the file when it is full or when the
+ * sink is closed, so recording a latency does neither allocate nor issue a system call in the common case.
+ * <p>
+ * The file starts with a header of {@link #MAGIC} and {@link #VERSION} followed by records of {@link #RECORD_SIZE}
+ * bytes in big endian order: the start timestamp as nanoseconds since the epoch (long), the {@link OpType} code
+ * (byte), the id of the instance (int), see {@link BenchConfig#getInstances()}, and the latency in nanoseconds (long).
+ */
+public class LatencySink implements Closeable {
+
+    public static final int MAGIC = 0x4D424C54;
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 8;
+
+    public static final int RECORD_SIZE = 8 + 1 + 4 + 8;
+
+    public static final String FILE_SUFFIX = ".bin";
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * RECORD_SIZE * 64;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long epochOffsetNanos;
+
+    public LatencySink(String fileName) throws IOException {
+        this(fileName, DEFAULT_BUFFER_SIZE);
+    }
+
+    public LatencySink(String fileName, int bufferSize) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+        file.setLength(0);
+        this.channel = file.getChannel();
+        this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize - bufferSize % RECORD_SIZE, RECORD_SIZE));
+        this.epochOffsetNanos = System.currentTimeMillis() * 1000000L - System.nanoTime();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Record a single latency
+     *
+     * @param startNanos the start of the operation as returned by {@link System#nanoTime()}
+     * @param type       the type of the operation
+     * @param port       the id of the instance the operation has been sent to
+     * @param latency    the latency in nanoseconds
+     * @throws IOException if the buffer is full and could not be written to the file
+     */
+    public void record(long startNanos, OpType type, int port, long latency) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        put(buffer, startNanos + epochOffsetNanos, type, port, latency);
+    }
+
+    /**
+     * Encode a single record into the given buffer
+     *
+     * @param epochNanos the start of the operation as nanoseconds since the epoch
+     */
+    static void put(ByteBuffer buffer, long epochNanos, OpType type, int port, long latency) {
+        buffer.putLong(epochNanos)
+                .put(type.getCode())
+                .putInt(port)
+                .putLong(latency);
+    }
+
+    /**
+     * Write records encoded by {@link #put(ByteBuffer, long, OpType, int, long)}
+     */
+    public void write(ByteBuffer records) throws IOException {
+        if (buffer.remaining() < records.remaining()) {
+            flush();
+        }
+        if (buffer.remaining() < records.remaining()) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+        } else {
+            buffer.put(records);
+        }
+    }
+
+    /**
+     * @return the offset to add to {@link System#nanoTime()} to get the nanoseconds since the epoch
+     */
+    public long getEpochOffsetNanos() {
+        return epochOffsetNanos;
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed size latency histogram for a single operation type.
+ * <p>
+ * Worker threads record into a {@link Recorder} which is wait-free and does not allocate, while the reporting thread
+ * periodically drains the recorded values into a cumulative {@link Histogram}. The memory footprint is independent
+ * of the number of recorded operations.
+ * <p>
+ * The drained values are also kept for the current time window until they are fetched with
+ * {@link #collectInterval(Histogram)}, so interval snapshots can be taken independently of the cumulative reports.
+ */
+public class LatencyStats {
+
+    /**
+     * The lowest discernible latency value in nanoseconds
+     */
+    public static final long LOWEST_LATENCY = TimeUnit.MICROSECONDS.toNanos(1);
+
+    /**
+     * The highest trackable latency value in nanoseconds. Larger latencies are clamped to this value
+     */
+    public static final long HIGHEST_LATENCY = TimeUnit.HOURS.toNanos(1);
+
+    public static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(LOWEST_LATENCY, HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+    private final Histogram total = createHistogram();
+    private final Histogram window = createHistogram();
+    private Histogram interval;
+
+    public static Histogram createHistogram() {
+        return new Histogram(LOWEST_LATENCY, HIGHEST_LATENCY, SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Record a single latency. Safe to call concurrently from multiple threads
+     *
+     * @param latency the latency in nanoseconds
+     */
+    public void record(long latency) {
+        recorder.recordValue(latency < HIGHEST_LATENCY ? latency : HIGHEST_LATENCY);
+    }
+
+    /**
+     * Move all latencies recorded since the last call into the cumulative histogram
+     *
+     * @return the cumulative histogram. Must not be modified by the caller
+     */
+    public synchronized Histogram collect() {
+        drain();
+        return total;
+    }
+
+    private void drain() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        window.add(interval);
+    }
+
+    /**
+     * Add all latencies recorded since the last call to the given histogram and start a new time window. The
+     * cumulative histogram is not affected
+     */
+    public synchronized void collectInterval(Histogram target) {
+        drain();
+        target.add(window);
+        window.reset();
+    }
+
+    /**
+     * Discard all latencies recorded so far from the cumulative histogram. The current time window is kept
+     */
+    public synchronized void reset() {
+        drain();
+        total.reset();
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.util.Random;
+
+/**
+ * Prefers the most recently inserted documents. The distance from the latest id follows a Zipfian distribution
+ */
+public class LatestKeyChooser implements KeyChooser {
+
+    private final ZipfianKeyChooser ranks;
+
+    public LatestKeyChooser(int numKeys, double theta) {
+        this.ranks = new ZipfianKeyChooser(numKeys, theta, false);
+    }
+
+    @Override
+    public int nextKey(KeySpace keys, Random random) {
+        return Math.max(keys.latest() - ranks.nextRank(random), 0);
+    }
+}
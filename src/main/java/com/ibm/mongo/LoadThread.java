@@ -17,112 +17,308 @@
 
 package com.ibm.mongo;
 
-import com.mongodb.MongoClient;
-import com.mongodb.MongoClientOptions;
-import com.mongodb.ServerAddress;
-import com.mongodb.client.MongoCollection;
-import org.apache.commons.lang.RandomStringUtils;
-import org.bson.Document;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoException;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Loads the documents of several _id ranges concurrently. The _id space of every instance is split into contiguous
+ * ranges, which are spread over the load threads, so several threads may load a single instance in parallel.
+ * <p>
+ * The thread generates the batches for all its ranges round robin and sends them as unordered bulk inserts using
+ * the asynchronous driver. Up to the configured pipeline depth of batches are in flight per range, so the
+ * generation of the next batches overlaps with the inserts of the previous ones.
+ * <p>
+ * When resuming a load, every range starts at its first missing document. Documents after it which already exist
+ * are rejected by the server as duplicate keys and counted as existing.
+ */
 public class LoadThread implements Runnable {
 
     private static final Logger log = LoggerFactory.getLogger(LoadThread.class);
 
-    private final String host;
-    private final List<Integer> ports;
-    private final int numDocuments;
+    private static final int DUPLICATE_KEY = 11000;
+
+    /**
+     * The number of times a batch is sent again after it failed as a whole
+     */
+    private static final int MAX_RETRIES = 3;
+
+    private final BenchConfig config;
+    private final List<Range> ranges;
     private final int docSize;
-    private final int maxBatchSize = 1000;
+    private final int maxBatchSize;
+    private final int pipelineDepth;
     private final int timeoutMs;
-    private final Map<String, Integer> failed = new HashMap<>();
-    private final boolean sslEnabled;
+    private final IndexedFields fields;
+    private final PayloadCache payloads;
+    private final InsertManyOptions insertOptions = new InsertManyOptions().ordered(false);
+    private final Semaphore completions = new Semaphore(0);
+    private final Map<Integer, MongoClient> clients = new LinkedHashMap<>();
+    private final List<RangeLoad> loads = new ArrayList<>();
 
     private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000");
 
-    public LoadThread(String host, List<Integer> ports, int numDocuments, int docSize, int timeout, boolean sslEnabled) {
-        this.host = host;
-        this.ports = ports;
-        this.numDocuments = numDocuments;
-        this.docSize = docSize;
-        this.timeoutMs = timeout * 1000;
-        this.sslEnabled = sslEnabled;
+    /**
+     * @param ranges the ranges to load, the collections of their instances must have been prepared already, see
+     *               {@link CollectionSetup#prepare(List)}
+     */
+    public LoadThread(BenchConfig config, List<Range> ranges) {
+        this.config = config;
+        this.ranges = ranges;
+        this.docSize = config.getDocumentSize();
+        this.maxBatchSize = config.getBatchSize();
+        this.pipelineDepth = config.getPipelineDepth();
+        this.timeoutMs = config.getTimeout() * 1000;
+        this.fields = IndexedFields.create(config);
+        this.payloads = new PayloadCache(docSize, 0, fields, Workload.createGenerator(config, fields));
+    }
+
+    /**
+     * Split the _id space of every instance into the configured number of ranges, or into as many ranges as needed
+     * to keep all load threads busy. The ranges are ordered so that consecutive ranges belong to different instances
+     */
+    public static List<Range> createRanges(BenchConfig config) {
+        final int[] ports = config.getInstances();
+        final int numDocuments = config.getNumDocuments();
+        int numRanges = config.getLoadRanges();
+        if (numRanges < 1) {
+            numRanges = (config.getNumThreads() + ports.length - 1) / ports.length;
+        }
+        numRanges = Math.max(Math.min(numRanges, numDocuments), 1);
+        final List<Range> ranges = new ArrayList<>(numRanges * ports.length);
+        for (int i = 0; i < numRanges; i++) {
+            for (final int port : ports) {
+                ranges.add(new Range(port, (int) ((long) numDocuments * i / numRanges), (int) ((long) numDocuments * (i + 1) / numRanges)));
+            }
+        }
+        return ranges;
     }
 
     @Override
     public void run() {
-        log.info("Loading data into {} instances on {}", ports.size(), host);
-        for (int i = 0; i < ports.size(); i++) {
-            int count = 0, currentBatchSize;
-            final MongoClientOptions ops = MongoClientOptions.builder()
-                    .maxWaitTime(timeoutMs)
-                    .connectTimeout(timeoutMs)
-                    .socketTimeout(timeoutMs)
-                    .heartbeatConnectTimeout(timeoutMs)
-                    .serverSelectionTimeout(timeoutMs)
-                    .sslEnabled(sslEnabled)
-                    .build();
-            MongoClient client = new MongoClient(new ServerAddress(host, ports.get(i)), ops);
-            for (final String name : client.listDatabaseNames()) {
-                if (name.equalsIgnoreCase(MongoBench.DB_NAME)) {
-                    log.warn("Database {} exists and will be purged before inserting", MongoBench.DB_NAME);
-                    client.dropDatabase(name);
-                    break;
+        final Map<Integer, Integer> rangesPerPort = new HashMap<>();
+        for (final Range range : ranges) {
+            rangesPerPort.merge(range.port, 1, Integer::sum);
+        }
+        for (final Map.Entry<Integer, Integer> entry : rangesPerPort.entrySet()) {
+            clients.put(entry.getKey(), ClientFactory.createAsyncClient(config, entry.getKey(), pipelineDepth * entry.getValue()));
+        }
+        for (final Range range : ranges) {
+            final RangeLoad load = new RangeLoad(range, clients.get(range.port));
+            if (config.getLoadMode() == BenchConfig.LoadMode.RESUME) {
+                try {
+                    resume(load);
+                } catch (MongoException e) {
+                    log.error("Unable to find the missing documents of {}", load.name, e);
+                    continue;
                 }
             }
-            long startLoad = System.currentTimeMillis();
-            while (count < numDocuments) {
-                currentBatchSize = numDocuments - count > maxBatchSize ? maxBatchSize : numDocuments - count;
-                final Document[] docs = createDocuments(currentBatchSize, count);
-                final MongoCollection<Document> collection = client.getDatabase(MongoBench.DB_NAME).getCollection(MongoBench.COLLECTION_NAME);
-                try {
-                    collection.insertMany(Arrays.asList(docs));
-                } catch (Exception e) {
-                    log.error("Error while inserting {} documents at {}:{}", currentBatchSize, host, ports.get(i));
-                    log.warn("Checking connection to {}:{}", host, ports.get(i));
-                    boolean connected = false;
-                    try {
-                        while (!connected) {
-                            client.listDatabases();
-                            connected = true;
-                            break;
-                        }
-                    } catch (Exception ie) {
-                        log.error("No connection to {}:{}. Reconnecting...");
-                        client.close();
-                        client = new MongoClient(new ServerAddress(host, ports.get(i)), ops);
+            loads.add(load);
+        }
+
+        final long startLoad = System.currentTimeMillis();
+        final List<RangeLoad> pending = new LinkedList<>(loads);
+        try {
+            while (!pending.isEmpty()) {
+                boolean progress = false;
+                for (final Iterator<RangeLoad> it = pending.iterator(); it.hasNext(); ) {
+                    final RangeLoad load = it.next();
+                    if (load.next >= load.range.end) {
+                        it.remove();
+                    } else if (load.pipeline.tryAcquire()) {
+                        insertNextBatch(load);
+                        progress = true;
                     }
                 }
-                count += currentBatchSize;
+                if (!progress && !pending.isEmpty()) {
+                    // all pipelines are full, so wait for the next batch to finish
+                    completions.acquire();
+                    completions.drainPermits();
+                }
+            }
+            for (final RangeLoad load : loads) {
+                if (!load.pipeline.tryAcquire(pipelineDepth, timeoutMs, TimeUnit.MILLISECONDS)) {
+                    log.error("Inserts at {} did not finish in time", load.name);
+                }
             }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while loading data", e);
+        }
+
+        for (final MongoClient client : clients.values()) {
             client.close();
-            long duration = System.currentTimeMillis() - startLoad;
-            float rate = 1000f * 1000f / (float) duration;
-            if (failed.size() > 0) {
-                int numFailed = 0;
-                log.error("Errors occured during the loading of the data");
-                for (final Map.Entry<String, Integer> error : failed.entrySet()) {
-                    log.error("Unable to insert {} documents at {}:{}", error.getValue(), error.getKey());
-                    numFailed += error.getValue();
+        }
+        for (final RangeLoad load : loads) {
+            final long duration = Math.max(load.finished - startLoad, 1);
+            final float rate = load.inserted.get() * 1000f / (float) duration;
+            if (load.failed.get() > 0) {
+                log.error("Unable to insert {} documents at {}", load.failed.get(), load.name);
+            }
+            log.info("Finished loading {} documents in {} in {} secs [{} inserts/sec]", load.inserted.get(), load.name,
+                    decimalFormat.format(duration / 1000f), decimalFormat.format(rate));
+        }
+    }
+
+    /**
+     * Continue the load of the range at its first missing document
+     */
+    private void resume(RangeLoad load) {
+        final Range range = load.range;
+        try (final CollectionSetup setup = new CollectionSetup(config, range.port)) {
+            load.next = setup.findFirstMissing(range.start, range.end);
+        }
+        load.existing.addAndGet(load.next - range.start);
+        if (load.next >= range.end) {
+            log.info("All documents of {} exist already", load.name);
+        } else if (load.next > range.start) {
+            log.info("Resuming {} at _id {}", load.name, load.next);
+        }
+    }
+
+    private void insertNextBatch(final RangeLoad load) {
+        final int offset = load.next;
+        final int batchSize = Math.min(maxBatchSize, load.range.end - offset);
+        load.next += batchSize;
+        insert(load, payloads.createDocuments(batchSize, offset), 0);
+    }
+
+    /**
+     * Insert a batch, retrying it up to {@link #MAX_RETRIES} times if it fails as a whole, e.g. because the connection
+     * was lost. Documents of a failed attempt which have been inserted nevertheless are rejected as duplicate keys by
+     * the retry and counted as existing
+     */
+    private void insert(final RangeLoad load, final List<RawBsonDocument> docs, final int attempt) {
+        final int batchSize = docs.size();
+        load.collection.insertMany(docs, insertOptions, (result, t) -> {
+            if (t == null) {
+                load.inserted.addAndGet(batchSize);
+            } else if (t instanceof MongoBulkWriteException) {
+                final List<BulkWriteError> errors = ((MongoBulkWriteException) t).getWriteErrors();
+                int numExisting = 0;
+                for (final BulkWriteError error : errors) {
+                    if (error.getCode() == DUPLICATE_KEY) {
+                        numExisting++;
+                    }
                 }
-                log.error("Overall {} inserts failed", numFailed);
+                final int numFailed = errors.size() - numExisting;
+                load.inserted.addAndGet(batchSize - errors.size());
+                load.existing.addAndGet(numExisting);
+                load.failed.addAndGet(numFailed);
+                if (numFailed > 0) {
+                    log.error("{} of {} documents could not be inserted at {}", numFailed, batchSize, load.name);
+                }
+            } else if (attempt < MAX_RETRIES) {
+                log.warn("Error while inserting {} documents at {}, retrying", batchSize, load.name, t);
+                insert(load, docs, attempt + 1);
+                return;
+            } else {
+                load.failed.addAndGet(batchSize);
+                log.error("Error while inserting {} documents at {} after {} retries", batchSize, load.name, MAX_RETRIES, t);
             }
-            log.info("Finished loading {} documents in {}:{} [{} inserts/sec]", count, host, ports.get(i), rate);
+            load.finished = System.currentTimeMillis();
+            load.pipeline.release();
+            completions.release();
+        });
+    }
+
+    /**
+     * @return the number of documents inserted into each instance of this thread
+     */
+    public Map<Integer, Long> getInserted() {
+        final Map<Integer, Long> inserted = new LinkedHashMap<>();
+        for (final RangeLoad load : loads) {
+            inserted.merge(load.range.port, load.inserted.get(), Long::sum);
         }
+        return inserted;
     }
 
-    private Document[] createDocuments(int count, int offset) {
-        final String data = RandomStringUtils.randomAlphabetic(docSize);
-        final Document[] docs = new Document[count];
-        for (int i = 0; i < count; i++) {
-            docs[i] = new Document()
-                    .append("_id", i + offset)
-                    .append("data", data);
+    /**
+     * @return the time in milliseconds since the epoch at which the last insert into each instance of this thread
+     * finished
+     */
+    public Map<Integer, Long> getFinished() {
+        final Map<Integer, Long> finished = new LinkedHashMap<>();
+        for (final RangeLoad load : loads) {
+            finished.merge(load.range.port, load.finished, Math::max);
+        }
+        return finished;
+    }
+
+    public long getFailed() {
+        long failed = 0;
+        for (final RangeLoad load : loads) {
+            failed += load.failed.get();
+        }
+        return failed;
+    }
+
+    /**
+     * @return the number of documents which already existed when resuming a load
+     */
+    public long getExisting() {
+        long existing = 0;
+        for (final RangeLoad load : loads) {
+            existing += load.existing.get();
+        }
+        return existing;
+    }
+
+    /**
+     * The documents with the _ids from start to end, excluding end, of a single instance
+     */
+    public static final class Range {
+        private final int port;
+        private final int start;
+        private final int end;
+
+        Range(int port, int start, int end) {
+            this.port = port;
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+
+    private final class RangeLoad {
+        private final Range range;
+        private final String name;
+        private final MongoCollection<RawBsonDocument> collection;
+        private final Semaphore pipeline = new Semaphore(pipelineDepth);
+        private final AtomicLong inserted = new AtomicLong();
+        private final AtomicLong existing = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private int next;
+        private volatile long finished;
+
+        private RangeLoad(Range range, MongoClient client) {
+            this.range = range;
+            this.name = ClientFactory.getInstanceName(config, range.port) + " [" + range.start + ", " + range.end + ")";
+            this.next = range.start;
+            this.collection = client.getDatabase(ClientFactory.getDatabaseName(config, range.port))
+                    .getCollection(MongoBench.COLLECTION_NAME, RawBsonDocument.class);
         }
-        return docs;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the {@link AgentMessage}s of a distributed run. Only the classes of the messages and their payloads are
+ * deserialized, any other class sent by a peer is rejected before it is loaded, so a peer cannot instantiate arbitrary
+ * serializable classes of the class path.
+ */
+public class MessageInputStream extends ObjectInputStream {
+
+    private static final String[] ALLOWED_PACKAGES = {"com.ibm.mongo.", "org.HdrHistogram."};
+
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+            "java.lang.Boolean", "java.lang.Double", "java.lang.Enum", "java.lang.Float", "java.lang.Integer",
+            "java.lang.Long", "java.lang.Number", "java.lang.String", "java.util.ArrayList", "java.util.HashMap",
+            "java.util.LinkedHashMap"));
+
+    public MessageInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        if (!isAllowed(desc.getName())) {
+            throw new InvalidClassException(desc.getName(), "Class is not part of the agent protocol");
+        }
+        return super.resolveClass(desc);
+    }
+
+    static boolean isAllowed(String name) {
+        String component = name;
+        while (component.startsWith("[")) {
+            component = component.substring(1);
+        }
+        if (component.length() == 1) {
+            // an array of a primitive type
+            return component.length() != name.length();
+        }
+        if (component.startsWith("L") && component.endsWith(";")) {
+            component = component.substring(1, component.length() - 1);
+        }
+        if (ALLOWED_CLASSES.contains(component)) {
+            return true;
+        }
+        for (final String prefix : ALLOWED_PACKAGES) {
+            if (component.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+        throw new InvalidClassException("Proxy classes are not part of the agent protocol");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The live statistics of all instances of a run. The statistics are created up front, so lookups by the workers do not
+ * need any synchronization
+ */
+public class MetricsRegistry {
+
+    private final Map<Integer, PortStats> ports;
+
+    public MetricsRegistry(BenchConfig config) {
+        final Map<Integer, PortStats> stats = new LinkedHashMap<>();
+        for (final int port : config.getInstances()) {
+            stats.put(port, new PortStats(ClientFactory.getInstanceName(config, port), port));
+        }
+        this.ports = Collections.unmodifiableMap(stats);
+    }
+
+    public PortStats getPortStats(int port) {
+        return ports.get(port);
+    }
+
+    public Collection<PortStats> getAll() {
+        return ports.values();
+    }
+
+    /**
+     * Start the measurement window of all instances, see {@link PortStats#resetLatencies()}
+     */
+    public void resetLatencies() {
+        for (final PortStats stats : ports.values()) {
+            stats.resetLatencies();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the live statistics of a run in the Prometheus text exposition format at <code>/metrics</code>
+ */
+public class MetricsServer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsServer.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        final Thread t = new Thread(r, "metrics-server");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param bindAddress the address to listen on, null for the loopback interface
+     */
+    public MetricsServer(MetricsRegistry registry, String bindAddress, int port) throws IOException {
+        this.registry = registry;
+        final InetAddress address = bindAddress != null ? InetAddress.getByName(bindAddress) : InetAddress.getLoopbackAddress();
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        this.server.createContext("/metrics", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Serving metrics at http://{}:{}/metrics", server.getAddress().getHostString(), server.getAddress().getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            final byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (final OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    String render() {
+        final StringBuilder sb = new StringBuilder();
+        header(sb, "mongobench_operations_total", "counter", "The number of finished operations");
+        for (final PortStats stats : registry.getAll()) {
+            for (final OpType type : OpType.values()) {
+                if (stats.getCount(type) > 0) {
+                    sample(sb, "mongobench_operations_total", stats, type, null, stats.getCount(type));
+                }
+            }
+        }
+        header(sb, "mongobench_misses_total", "counter", "The number of operations which did not find their document");
+        for (final PortStats stats : registry.getAll()) {
+            sample(sb, "mongobench_misses_total", stats, null, null, stats.getMisses());
+        }
+        header(sb, "mongobench_errors_total", "counter", "The number of failed operations other than timeouts");
+        for (final PortStats stats : registry.getAll()) {
+            sample(sb, "mongobench_errors_total", stats, null, null, stats.getErrors());
+        }
+        header(sb, "mongobench_timeouts_total", "counter", "The number of operations which timed out or lost their connection");
+        for (final PortStats stats : registry.getAll()) {
+            sample(sb, "mongobench_timeouts_total", stats, null, null, stats.getTimeouts());
+        }
+        header(sb, "mongobench_reconnects_total", "counter", "The number of reconnects after timeouts");
+        for (final PortStats stats : registry.getAll()) {
+            sample(sb, "mongobench_reconnects_total", stats, null, null, stats.getReconnects());
+        }
+        header(sb, "mongobench_member_commands_total", "counter", "The number of commands executed by a member of an instance given by a connection string");
+        for (final PortStats stats : registry.getAll()) {
+            for (final PortStats.MemberStats member : stats.getMembers().values()) {
+                memberSample(sb, "mongobench_member_commands_total", stats, member, member.getCommands());
+            }
+        }
+        header(sb, "mongobench_member_failures_total", "counter", "The number of failed commands of a member of an instance given by a connection string");
+        for (final PortStats stats : registry.getAll()) {
+            for (final PortStats.MemberStats member : stats.getMembers().values()) {
+                memberSample(sb, "mongobench_member_failures_total", stats, member, member.getFailures());
+            }
+        }
+        header(sb, "mongobench_latency_seconds", "histogram", "The latency of finished operations");
+        for (final PortStats stats : registry.getAll()) {
+            for (final OpType type : OpType.values()) {
+                if (stats.getCount(type) == 0) {
+                    continue;
+                }
+                final long[] buckets = stats.getBucketCounts(type);
+                long cumulative = 0;
+                for (int i = 0; i < buckets.length; i++) {
+                    cumulative += buckets[i];
+                    final String le = i < PortStats.BUCKET_BOUNDS.length ? formatSeconds(PortStats.BUCKET_BOUNDS[i]) : "+Inf";
+                    sample(sb, "mongobench_latency_seconds_bucket", stats, type, le, cumulative);
+                }
+                sb.append("mongobench_latency_seconds_sum");
+                labels(sb, stats, type, null);
+                sb.append(' ').append(formatSeconds(stats.getLatencySum(type))).append('\n');
+                sample(sb, "mongobench_latency_seconds_count", stats, type, null, cumulative);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, PortStats stats, OpType type, String le, long value) {
+        sb.append(name);
+        labels(sb, stats, type, le);
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static void memberSample(StringBuilder sb, String name, PortStats stats, PortStats.MemberStats member, long value) {
+        sb.append(name).append("{instance=\"");
+        appendLabelValue(sb, stats.getInstance());
+        sb.append("\",member=\"");
+        appendLabelValue(sb, member.getAddress());
+        sb.append("\"} ").append(value).append('\n');
+    }
+
+    private static void labels(StringBuilder sb, PortStats stats, OpType type, String le) {
+        sb.append("{instance=\"");
+        appendLabelValue(sb, stats.getInstance());
+        sb.append('"');
+        if (type != null) {
+            sb.append(",op=\"").append(type.getName()).append('"');
+        }
+        if (le != null) {
+            sb.append(",le=\"").append(le).append('"');
+        }
+        sb.append('}');
+    }
+
+    /**
+     * Append a label value with backslashes, double quotes and line feeds escaped as required by the text format, as
+     * instance names taken from connection strings may contain any of them
+     */
+    private static void appendLabelValue(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '"') {
+                sb.append("\\\"");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private static String formatSeconds(long nanos) {
+        return BigDecimal.valueOf(nanos).movePointLeft(9).stripTrailingZeros().toPlainString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
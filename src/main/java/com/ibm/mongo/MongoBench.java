@@ -17,16 +17,30 @@
  
 package com.ibm.mongo;
 
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoException;
+import org.HdrHistogram.Histogram;
 import org.apache.commons.cli.*;
+import org.bson.BsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 public class MongoBench {
 
@@ -38,41 +52,82 @@ public class MongoBench {
 
     private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000");
 
+    private final static double[] REPORTED_PERCENTILES = {50d, 90d, 99d, 99.9d, 99.99d};
+
+    /**
+     * The maximum number of stalled windows listed in the report
+     */
+    private final static int MAX_REPORTED_STALLS = 20;
+
     private enum Phase {
-        RUN, LOAD
+        RUN, LOAD, CONVERT, ANALYZE, CALIBRATE, SEARCH, AGENT, REPLAY, IMPORT
     }
 
     public static void main(String[] args) {
         final Options ops = new Options();
         ops.addOption("p", "port", true, "The ports to connect to");
         ops.addOption("t", "target ", true, "The target host to connect to");
-        ops.addOption("l", "phase", true, "The phase to execute [run|load]");
+        ops.addOption(null, "uri", true, "The MongoDB connection string of an instance, e.g. a replica set or a sharded cluster. Repeat for several instances. Replaces \"--port/-p\" and \"--target/-t\"");
+        ops.addOption(null, "uri-file", true, "Read the connection strings of the instances from the given file, one per line");
+        ops.addOption("l", "phase", true, "The phase to execute [run|load|convert|analyze|calibrate|search|agent|replay|import]");
         ops.addOption("d", "duration", true, "Run the bench for this many seconds");
         ops.addOption("n", "num-thread", true, "The number of threads to run");
         ops.addOption("r", "reporting-interval", true, "The interval in seconds for reporting progress");
-        ops.addOption("c", "num-documents", true, "The number of documents to create during the load phase");
+        ops.addOption("c", "num-documents", true, "The number of documents to create during the load phase and to access in the run phase");
         ops.addOption("s", "document-size", true, "The size of the created documents");
         ops.addOption("w", "warmup-time", true, "The number of seconds to wait before actually collecting result data");
         ops.addOption("j", "target-rate", true, "Send request at the given rate. Accepts decimal numbers");
-        ops.addOption("a", "record-latencies", true, "Set the file prefix to which to write latencies to");
+        ops.addOption("a", "record-latencies", true, "Set the file prefix to which to write binary latencies to. The convert phase turns these files into text files, the analyze phase computes their latency distributions");
         ops.addOption("o", "timeout", true, "Set the timeouts in seconds for networking operations");
         ops.addOption("u", "ssl", false, "Use SSL for MongoDB connections");
+        ops.addOption(null, "open-loop", true, "Issue requests on a fixed schedule at the target rate and measure latencies from the intended start [constant|poisson]");
+        ops.addOption(null, "execution-mode", true, "How the run phase threads issue requests [platform|async|virtual]. Defaults to platform");
+        ops.addOption(null, "in-flight", true, "The number of outstanding requests per thread in async execution mode. Defaults to 16");
+        ops.addOption(null, "connections-per-port", true, "The number of threads per instance in virtual execution mode. Defaults to 1");
+        ops.addOption(null, "port-concurrency", true, "The maximum number of requests in flight per instance in the run phase. Defaults to the concurrency of all threads divided by the number of instances");
+        ops.addOption(null, "batch-size", true, "The number of documents per bulk insert in the load phase. Defaults to 1000");
+        ops.addOption(null, "pipeline-depth", true, "The number of bulk inserts in flight per instance in the load phase. Defaults to 4");
+        ops.addOption(null, "load-mode", true, "How the load phase treats existing documents [replace|resume]. replace drops the database first, resume only inserts the missing documents. Defaults to replace");
+        ops.addOption(null, "load-ranges", true, "The number of _id ranges per instance loaded in parallel by the load threads. Defaults to the number of threads per instance");
+        ops.addOption(null, "collection-options", true, "Create the collection before loading with the options of the create command given as JSON, e.g. {\"storageEngine\": {\"wiredTiger\": {\"configString\": \"block_compressor=zstd\"}}}");
+        ops.addOption(null, "drop-uri-database", false, "Allow the replace load mode to drop the database named by a connection string. Without it only the database " + DB_NAME + " is dropped");
+        ops.addOption(null, "pre-split", false, "Shard the collection of a sharded cluster by _id and split it at the boundaries of the load ranges before loading");
+        ops.addOption(null, "defer-indexes", false, "Build the secondary indexes after loading instead of maintaining them during the load");
+        ops.addOption(null, "workload", true, "The operation mix of the run phase as weights of [read|insert|update|upsert|read-modify-write|delete|scan|query|range-query|projection|sort|count|aggregate]. Defaults to " + OperationMix.DEFAULT_MIX);
+        ops.addOption(null, "key-distribution", true, "How the run phase chooses documents [uniform|zipfian[:constant]|latest[:constant]|hotspot[:hotDataFraction:hotOpFraction]]. Defaults to uniform");
+        ops.addOption(null, "scan-length", true, "The maximum number of documents read by a range scan or query. Defaults to 100");
+        ops.addOption(null, "indexes", true, "The comma separated secondary indexes to create in the load phase. Each index is either fields of [group|value|created|data] joined by + and optionally prefixed by - for descending order, or ttl[:seconds] for a TTL index on created. The indexed fields are only added to the documents if an index or an operation of the workload references them, so pass the same indexes to the run phase");
+        ops.addOption(null, "group-cardinality", true, "The number of distinct values of the indexed group field. Defaults to " + IndexedFields.DEFAULT_GROUP_CARDINALITY);
+        ops.addOption(null, "schema", true, "Generate the documents of the load and run phases from the JSON template in the given file instead of a single data field");
+        ops.addOption(null, "compressibility", true, "The approximate compression ratio of generated strings and binaries between 0 and 1. Defaults to 1");
+        ops.addOption(null, "seed", true, "The seed of generated documents. Defaults to 0");
+        ops.addOption(null, "insert-batch", true, "The number of documents inserted by a single insert of the run phase. Defaults to 1");
+        ops.addOption(null, "unordered-inserts", false, "Send batched inserts of the run phase as unordered bulk inserts");
+        ops.addOption(null, "write-concern", true, "The write concern of the run phase as comma separated w=<n|majority|tag>, j=<true|false> and wtimeout=<ms>");
+        ops.addOption(null, "read-preference", true, "The read preference of the run phase [primary|primaryPreferred|secondary|secondaryPreferred|nearest]");
+        ops.addOption(null, "read-concern", true, "The read concern of the run phase [local|majority]");
+        ops.addOption(null, "metrics-port", true, "Serve live per instance metrics in Prometheus format at http://<host>:<port>/metrics during the run phase");
+        ops.addOption(null, "metrics-bind", true, "The address the live metrics are served on, e.g. 0.0.0.0 for all interfaces. Defaults to the loopback interface");
+        ops.addOption(null, "interval-output", true, "Write non-cumulative snapshots per time window, instance and operation type to the given file. Written as JSON Lines if the file ends with .json or .jsonl, as CSV otherwise");
+        ops.addOption(null, "interval-period", true, "The length of the time windows of the interval output in seconds. Defaults to 1");
+        ops.addOption(null, "server-status", true, "Sample serverStatus of every instance every given number of seconds on separate connections and add the server side deltas to the interval output");
+        ops.addOption(null, "stall-threshold", true, "Flag the time windows in which the benchmark process itself stalled, e.g. by garbage collection, for longer than the given number of milliseconds. Defaults to 10");
+        ops.addOption(null, "calibration-threads", true, "The comma separated thread counts the calibrate phase measures. Defaults to 1,2,4,8");
+        ops.addOption(null, "slo", true, "The latency objective of the search phase as <percentile>:<milliseconds>, e.g. p99:10");
+        ops.addOption(null, "search-steps", true, "The maximum number of target rates the search phase measures. Defaults to 20");
+        ops.addOption(null, "search-precision", true, "Stop the search once the lowest failing rate is within this fraction of the highest passing rate. Defaults to 0.05");
+        ops.addOption(null, "search-output", true, "Write the throughput/latency curve of the search phase to the given CSV file");
+        ops.addOption(null, "record-trace", true, "Write every request of the run phase to the given trace file, which the replay phase sends again");
+        ops.addOption(null, "trace", true, "The trace file the replay phase sends and the import phase writes");
+        ops.addOption(null, "speed", true, "Replay the trace this many times faster than recorded. Accepts decimal numbers. Defaults to 1");
+        ops.addOption(null, "profile-export", true, "The comma separated JSON exports of the system.profile collections, one per instance, which the import phase converts into a trace");
+        ops.addOption(null, "agents", true, "Coordinate a distributed run phase with the given number of agent processes, which are started with \"-l agent\"");
+        ops.addOption(null, "coordinator", true, "The [host:]port the coordinator of a distributed run listens on and the agents connect to. Without a host the coordinator only listens on the loopback interface");
         ops.addOption("h", "help", false, "Show this help dialog");
 
         final CommandLineParser parser = new DefaultParser();
         final Phase phase;
-        final int[] ports;
-        final String host;
-        int duration;
-        int numThreads;
-        int reportingInterval;
-        int documentSize;
-        int numDocuments;
-        int warmup;
-        float rateLimit;
-        String latencyFilePrefix;
-        int timeouts;
-        boolean sslEnabled;
+        final BenchConfig config = new BenchConfig();
 
         try {
             final CommandLine cli = parser.parse(ops, args);
@@ -85,6 +140,20 @@ public class MongoBench {
                     phase = Phase.LOAD;
                 } else if (cli.getOptionValue('l').equalsIgnoreCase("run")) {
                     phase = Phase.RUN;
+                } else if (cli.getOptionValue('l').equalsIgnoreCase("convert")) {
+                    phase = Phase.CONVERT;
+                } else if (cli.getOptionValue('l').equalsIgnoreCase("analyze")) {
+                    phase = Phase.ANALYZE;
+                } else if (cli.getOptionValue('l').equalsIgnoreCase("calibrate")) {
+                    phase = Phase.CALIBRATE;
+                } else if (cli.getOptionValue('l').equalsIgnoreCase("search")) {
+                    phase = Phase.SEARCH;
+                } else if (cli.getOptionValue('l').equalsIgnoreCase("agent")) {
+                    phase = Phase.AGENT;
+                } else if (cli.getOptionValue('l').equalsIgnoreCase("replay")) {
+                    phase = Phase.REPLAY;
+                } else if (cli.getOptionValue('l').equalsIgnoreCase("import")) {
+                    phase = Phase.IMPORT;
                 } else {
                     throw new ParseException("Invalid phase " + cli.getOptionValue('l'));
                 }
@@ -109,117 +178,432 @@ public class MongoBench {
                         }
                     }
                 }
-                ports = new int[tmpPorts.size()];
+                final int[] ports = new int[tmpPorts.size()];
                 for (int i = 0; i < tmpPorts.size(); i++) {
                     ports[i] = tmpPorts.get(i);
                 }
-            } else {
-                ports = new int[]{27017};
+                config.setInstances(ports);
             }
             if (cli.hasOption('t')) {
-                host = cli.getOptionValue('t');
-            } else {
-                host = "localhost";
+                config.setHost(cli.getOptionValue('t'));
+            }
+            if (cli.hasOption("uri") || cli.hasOption("uri-file")) {
+                if (cli.hasOption('p') || cli.hasOption('t')) {
+                    throw new ParseException("Connection strings can not be combined with \"--port/-p\" or \"--target/-t\"");
+                }
+                final List<String> uris = new ArrayList<>();
+                if (cli.hasOption("uri")) {
+                    uris.addAll(Arrays.asList(cli.getOptionValues("uri")));
+                }
+                if (cli.hasOption("uri-file")) {
+                    try {
+                        for (final String line : Files.readAllLines(Paths.get(cli.getOptionValue("uri-file")), StandardCharsets.UTF_8)) {
+                            if (!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                                uris.add(line.trim());
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new ParseException("Unable to read connection strings " + cli.getOptionValue("uri-file") + ": " + e.getMessage());
+                    }
+                }
+                if (uris.isEmpty()) {
+                    throw new ParseException("No connection strings given");
+                }
+                for (final String uri : uris) {
+                    try {
+                        new ConnectionString(uri);
+                    } catch (IllegalArgumentException e) {
+                        throw new ParseException("Invalid connection string " + uri + ": " + e.getMessage());
+                    }
+                }
+                final int[] instances = new int[uris.size()];
+                for (int i = 0; i < instances.length; i++) {
+                    instances[i] = BenchConfig.FIRST_URI_INSTANCE + i;
+                }
+                config.setUris(uris.toArray(new String[uris.size()]));
+                config.setInstances(instances);
             }
             if (cli.hasOption('d')) {
-                duration = Integer.parseInt(cli.getOptionValue('d'));
-            } else {
-                duration = 60;
+                config.setDuration(Integer.parseInt(cli.getOptionValue('d')));
             }
             if (cli.hasOption('n')) {
-                numThreads = Integer.parseInt(cli.getOptionValue('n'));
-            } else {
-                numThreads = 1;
+                config.setNumThreads(Integer.parseInt(cli.getOptionValue('n')));
             }
             if (cli.hasOption('r')) {
-                reportingInterval = Integer.parseInt(cli.getOptionValue('r'));
-            } else {
-                reportingInterval = 60;
+                config.setReportingInterval(Integer.parseInt(cli.getOptionValue('r')));
             }
             if (cli.hasOption('c')) {
-                numDocuments = Integer.parseInt(cli.getOptionValue('c'));
-            } else {
-                numDocuments = 1000;
+                config.setNumDocuments(Integer.parseInt(cli.getOptionValue('c')));
             }
             if (cli.hasOption('s')) {
-                documentSize = Integer.parseInt(cli.getOptionValue('s'));
-            } else {
-                documentSize = 1024;
+                config.setDocumentSize(Integer.parseInt(cli.getOptionValue('s')));
             }
             if (cli.hasOption('w')) {
-                warmup = Integer.parseInt(cli.getOptionValue('w'));
-            } else {
-                warmup = 0;
+                config.setWarmup(Integer.parseInt(cli.getOptionValue('w')));
             }
             if (cli.hasOption('j')) {
-                rateLimit = Float.parseFloat(cli.getOptionValue('j'));
-            } else {
-                rateLimit = 0f;
+                config.setTargetRate(Float.parseFloat(cli.getOptionValue('j')));
             }
             if (cli.hasOption('a')) {
-                latencyFilePrefix = cli.getOptionValue('a');
-            } else {
-                latencyFilePrefix = null;
+                config.setLatencyFilePrefix(cli.getOptionValue('a'));
             }
             if (cli.hasOption('o')) {
-                timeouts = Integer.parseInt(cli.getOptionValue('o'));
-            } else {
-                timeouts = 30;
+                config.setTimeout(Integer.parseInt(cli.getOptionValue('o')));
             }
             if (cli.hasOption('u')) {
-                sslEnabled = true;
-            } else {
-                sslEnabled = false;
+                config.setSslEnabled(true);
+            }
+            if (cli.hasOption("open-loop")) {
+                try {
+                    config.setArrival(OpenLoopSchedule.Arrival.valueOf(cli.getOptionValue("open-loop").toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid arrival distribution " + cli.getOptionValue("open-loop"));
+                }
+                if (config.getTargetRate() <= 0f) {
+                    throw new ParseException("The open loop mode needs a target rate passed via \"--target-rate/-j\"");
+                }
+            }
+            if (cli.hasOption("execution-mode")) {
+                try {
+                    config.setExecutionMode(BenchConfig.ExecutionMode.valueOf(cli.getOptionValue("execution-mode").toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid execution mode " + cli.getOptionValue("execution-mode"));
+                }
+                if (config.getExecutionMode() == BenchConfig.ExecutionMode.VIRTUAL && !VirtualThreads.isSupported()) {
+                    throw new ParseException("The virtual execution mode needs Java 21 or later, but this is Java " + System.getProperty("java.version"));
+                }
+            }
+            if (cli.hasOption("in-flight")) {
+                config.setInFlight(Integer.parseInt(cli.getOptionValue("in-flight")));
+                if (config.getInFlight() < 1) {
+                    throw new ParseException("The number of requests in flight must be at least 1");
+                }
+            }
+            if (cli.hasOption("connections-per-port")) {
+                config.setConnectionsPerPort(Integer.parseInt(cli.getOptionValue("connections-per-port")));
+                if (config.getConnectionsPerPort() < 1) {
+                    throw new ParseException("The number of connections per port must be at least 1");
+                }
+            }
+            if (cli.hasOption("port-concurrency")) {
+                config.setPortConcurrency(Integer.parseInt(cli.getOptionValue("port-concurrency")));
+                if (config.getPortConcurrency() < 1) {
+                    throw new ParseException("The concurrency per port must be at least 1");
+                }
+            }
+            if (cli.hasOption("batch-size")) {
+                config.setBatchSize(Integer.parseInt(cli.getOptionValue("batch-size")));
+                if (config.getBatchSize() < 1) {
+                    throw new ParseException("The batch size must be at least 1");
+                }
+            }
+            if (cli.hasOption("load-mode")) {
+                try {
+                    config.setLoadMode(BenchConfig.LoadMode.valueOf(cli.getOptionValue("load-mode").toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid load mode " + cli.getOptionValue("load-mode"));
+                }
+            }
+            if (cli.hasOption("load-ranges")) {
+                config.setLoadRanges(Integer.parseInt(cli.getOptionValue("load-ranges")));
+                if (config.getLoadRanges() < 1) {
+                    throw new ParseException("The number of load ranges must be at least 1");
+                }
+            }
+            if (cli.hasOption("collection-options")) {
+                try {
+                    BsonDocument.parse(cli.getOptionValue("collection-options"));
+                } catch (RuntimeException e) {
+                    throw new ParseException("Invalid collection options " + cli.getOptionValue("collection-options") + ": " + e.getMessage());
+                }
+                config.setCollectionOptions(cli.getOptionValue("collection-options"));
+            }
+            if (cli.hasOption("drop-uri-database")) {
+                config.setDropUriDatabase(true);
+            }
+            if (cli.hasOption("pre-split")) {
+                config.setPreSplit(true);
+            }
+            if (cli.hasOption("defer-indexes")) {
+                config.setDeferIndexes(true);
+            }
+            if (cli.hasOption("pipeline-depth")) {
+                config.setPipelineDepth(Integer.parseInt(cli.getOptionValue("pipeline-depth")));
+                if (config.getPipelineDepth() < 1) {
+                    throw new ParseException("The pipeline depth must be at least 1");
+                }
+            }
+            if (cli.hasOption("workload")) {
+                config.setOperationMix(cli.getOptionValue("workload"));
+                try {
+                    OperationMix.parse(config.getOperationMix());
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid workload " + config.getOperationMix() + ": " + e.getMessage());
+                }
+            }
+            if (cli.hasOption("key-distribution")) {
+                config.setKeyDistribution(cli.getOptionValue("key-distribution"));
+                try {
+                    KeyChooser.create(config.getKeyDistribution(), 1);
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid key distribution " + config.getKeyDistribution() + ": " + e.getMessage());
+                }
+            }
+            if (cli.hasOption("scan-length")) {
+                config.setScanLength(Integer.parseInt(cli.getOptionValue("scan-length")));
+                if (config.getScanLength() < 1) {
+                    throw new ParseException("The scan length must be at least 1");
+                }
+            }
+            if (cli.hasOption("indexes")) {
+                config.setIndexes(cli.getOptionValue("indexes"));
+                try {
+                    IndexedFields.parseIndexes(config.getIndexes());
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid indexes " + config.getIndexes() + ": " + e.getMessage());
+                }
+            }
+            if (cli.hasOption("group-cardinality")) {
+                config.setGroupCardinality(Integer.parseInt(cli.getOptionValue("group-cardinality")));
+                if (config.getGroupCardinality() < 1) {
+                    throw new ParseException("The group cardinality must be at least 1");
+                }
+            }
+            if (cli.hasOption("compressibility")) {
+                config.setCompressibility(Double.parseDouble(cli.getOptionValue("compressibility")));
+                if (config.getCompressibility() <= 0d || config.getCompressibility() > 1d) {
+                    throw new ParseException("The compressibility must be larger than 0 and at most 1");
+                }
+            }
+            if (cli.hasOption("seed")) {
+                config.setSeed(Long.parseLong(cli.getOptionValue("seed")));
+            }
+            if (cli.hasOption("schema")) {
+                try {
+                    config.setSchema(new String(Files.readAllBytes(Paths.get(cli.getOptionValue("schema"))), StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new ParseException("Unable to read schema " + cli.getOptionValue("schema") + ": " + e.getMessage());
+                }
+                try {
+                    Workload.createGenerator(config, IndexedFields.create(config));
+                } catch (IllegalArgumentException e) {
+                    throw new ParseException("Invalid schema " + cli.getOptionValue("schema") + ": " + e.getMessage());
+                }
+            }
+            if (cli.hasOption("insert-batch")) {
+                config.setInsertBatch(Integer.parseInt(cli.getOptionValue("insert-batch")));
+                if (config.getInsertBatch() < 1) {
+                    throw new ParseException("The insert batch must be at least 1");
+                }
+            }
+            if (cli.hasOption("unordered-inserts")) {
+                config.setOrderedInserts(false);
+            }
+            if (cli.hasOption("write-concern")) {
+                config.setWriteConcern(cli.getOptionValue("write-concern"));
+            }
+            if (cli.hasOption("read-preference")) {
+                config.setReadPreference(cli.getOptionValue("read-preference"));
+            }
+            if (cli.hasOption("read-concern")) {
+                config.setReadConcern(cli.getOptionValue("read-concern"));
+            }
+            try {
+                RequestOptions.create(config);
+            } catch (IllegalArgumentException e) {
+                throw new ParseException("Invalid request options: " + e.getMessage());
+            }
+            if (cli.hasOption("metrics-port")) {
+                config.setMetricsPort(Integer.parseInt(cli.getOptionValue("metrics-port")));
+                if (config.getMetricsPort() < 1 || config.getMetricsPort() > 65535) {
+                    throw new ParseException("Invalid metrics port " + config.getMetricsPort());
+                }
+            }
+            if (cli.hasOption("metrics-bind")) {
+                config.setMetricsBind(cli.getOptionValue("metrics-bind"));
+            }
+            if (cli.hasOption("interval-output")) {
+                config.setIntervalOutput(cli.getOptionValue("interval-output"));
+            }
+            if (cli.hasOption("interval-period")) {
+                config.setIntervalPeriod(Integer.parseInt(cli.getOptionValue("interval-period")));
+                if (config.getIntervalPeriod() < 1) {
+                    throw new ParseException("The interval period must be at least 1 second");
+                }
+            }
+            if (cli.hasOption("calibration-threads")) {
+                final String[] counts = cli.getOptionValue("calibration-threads").split(",");
+                final int[] threadCounts = new int[counts.length];
+                for (int i = 0; i < counts.length; i++) {
+                    threadCounts[i] = Integer.parseInt(counts[i].trim());
+                    if (threadCounts[i] < 1) {
+                        throw new ParseException("The calibration thread counts must be at least 1");
+                    }
+                }
+                config.setCalibrationThreads(threadCounts);
+            }
+            if (cli.hasOption("stall-threshold")) {
+                config.setStallThreshold(Double.parseDouble(cli.getOptionValue("stall-threshold")));
+                if (config.getStallThreshold() <= 0d) {
+                    throw new ParseException("The stall threshold must be larger than 0");
+                }
+            }
+            if (cli.hasOption("server-status")) {
+                config.setServerStatusPeriod(Integer.parseInt(cli.getOptionValue("server-status")));
+                if (config.getServerStatusPeriod() < 1) {
+                    throw new ParseException("The serverStatus period must be at least 1 second");
+                }
+                if (config.getIntervalOutput() == null) {
+                    throw new ParseException("The serverStatus samples are written to the interval output passed via \"--interval-output\"");
+                }
+            }
+            if (cli.hasOption("slo")) {
+                final String slo = cli.getOptionValue("slo");
+                final int colonIdx = slo.indexOf(':');
+                if (colonIdx == -1) {
+                    throw new ParseException("Invalid latency objective " + slo + ". Expected <percentile>:<milliseconds>");
+                }
+                try {
+                    config.setSloPercentile(Double.parseDouble(slo.substring(slo.charAt(0) == 'p' ? 1 : 0, colonIdx)));
+                    config.setSloLatency(Double.parseDouble(slo.substring(colonIdx + 1)));
+                } catch (NumberFormatException e) {
+                    throw new ParseException("Invalid latency objective " + slo + ". Expected <percentile>:<milliseconds>");
+                }
+                if (config.getSloPercentile() <= 0d || config.getSloPercentile() > 100d || config.getSloLatency() <= 0d) {
+                    throw new ParseException("Invalid latency objective " + slo);
+                }
+            }
+            if (cli.hasOption("search-steps")) {
+                config.setSearchSteps(Integer.parseInt(cli.getOptionValue("search-steps")));
+                if (config.getSearchSteps() < 1) {
+                    throw new ParseException("The number of search steps must be at least 1");
+                }
+            }
+            if (cli.hasOption("search-precision")) {
+                config.setSearchPrecision(Double.parseDouble(cli.getOptionValue("search-precision")));
+                if (config.getSearchPrecision() <= 0d) {
+                    throw new ParseException("The search precision must be larger than 0");
+                }
+            }
+            if (cli.hasOption("search-output")) {
+                config.setSearchOutput(cli.getOptionValue("search-output"));
+            }
+            if (cli.hasOption("coordinator")) {
+                config.setCoordinator(cli.getOptionValue("coordinator"));
+            }
+            if (cli.hasOption("agents")) {
+                config.setNumAgents(Integer.parseInt(cli.getOptionValue("agents")));
+                if (config.getNumAgents() < 1) {
+                    throw new ParseException("The number of agents must be at least 1");
+                }
+                if (config.getCoordinator() == null) {
+                    throw new ParseException("A distributed run needs the coordinator port passed via \"--coordinator\"");
+                }
+                if (config.getNumAgents() > config.getInstances().length) {
+                    throw new ParseException("A distributed run needs at least as many instances as agents");
+                }
+            }
+            if (phase == Phase.SEARCH && config.getSloLatency() <= 0d) {
+                throw new ParseException("The search phase needs the latency objective passed via \"--slo\"");
+            }
+            if (phase == Phase.AGENT && config.getCoordinator() == null) {
+                throw new ParseException("The agent phase needs the coordinator address passed via \"--coordinator\"");
+            }
+            if (cli.hasOption("record-trace")) {
+                if (config.getNumAgents() > 0) {
+                    throw new ParseException("Traces can only be recorded by runs in a single process");
+                }
+                config.setRecordTrace(cli.getOptionValue("record-trace"));
+            }
+            if (cli.hasOption("trace")) {
+                if (phase != Phase.REPLAY && phase != Phase.IMPORT) {
+                    throw new ParseException("Only the replay and import phases take a trace via \"--trace\"");
+                }
+                config.setTraceFile(cli.getOptionValue("trace"));
+            }
+            if (cli.hasOption("speed")) {
+                config.setReplaySpeed(Float.parseFloat(cli.getOptionValue("speed")));
+                if (config.getReplaySpeed() <= 0f) {
+                    throw new ParseException("The replay speed must be larger than 0");
+                }
+            }
+            if (cli.hasOption("profile-export")) {
+                config.setProfileExports(cli.getOptionValue("profile-export").split(","));
+            }
+            if ((phase == Phase.REPLAY || phase == Phase.IMPORT) && config.getTraceFile() == null) {
+                throw new ParseException("The " + phase.name().toLowerCase() + " phase needs the trace file passed via \"--trace\"");
+            }
+            if (phase == Phase.IMPORT && config.getProfileExports() == null) {
+                throw new ParseException("The import phase needs the profiler exports passed via \"--profile-export\"");
+            }
+            if (phase == Phase.REPLAY) {
+                if (config.getNumAgents() > 0) {
+                    throw new ParseException("A trace can only be replayed in a single process");
+                }
+                if (config.getTargetRate() > 0f || config.getArrival() != null) {
+                    throw new ParseException("The replay phase sends the requests at the times of the trace, use \"--speed\" instead of a target rate");
+                }
             }
-
 
             log.info("Running phase {}", phase.name());
 
             final MongoBench bench = new MongoBench();
             if (phase == Phase.LOAD) {
-                bench.doLoadPhase(host, ports, numThreads, numDocuments, documentSize, timeouts, sslEnabled);
+                bench.doLoadPhase(config);
+            } else if (phase == Phase.CONVERT) {
+                if (config.getLatencyFilePrefix() == null) {
+                    throw new ParseException("The convert phase needs the latency file prefix passed via \"--record-latencies/-a\"");
+                }
+                bench.doConvertPhase(config.getLatencyFilePrefix());
+            } else if (phase == Phase.ANALYZE) {
+                if (config.getLatencyFilePrefix() == null) {
+                    throw new ParseException("The analyze phase needs the latency file prefix passed via \"--record-latencies/-a\"");
+                }
+                bench.doAnalyzePhase(config.getLatencyFilePrefix());
+            } else if (phase == Phase.CALIBRATE) {
+                bench.doCalibratePhase(config);
+            } else if (phase == Phase.SEARCH) {
+                new SaturationSearch(config).run();
+            } else if (phase == Phase.AGENT) {
+                new Agent(config.getCoordinator(), config.getTimeout() * 1000).run();
+            } else if (phase == Phase.IMPORT) {
+                new ProfileImporter(config).importAll(config.getProfileExports(), config.getTraceFile());
+            } else if (phase == Phase.REPLAY) {
+                if (!cli.hasOption('d')) {
+                    // run until the last request of the trace has been sent
+                    try (final TraceReader trace = new TraceReader(config.getTraceFile())) {
+                        config.setDuration((int) Math.ceil(trace.getLength() / 1e9d / config.getReplaySpeed()) + 1);
+                    }
+                }
+                bench.doRunPhase(config, new RunEngine(config));
+            } else if (config.getNumAgents() > 0) {
+                bench.doRunPhase(config, new Coordinator(config));
             } else {
-                bench.doRunPhase(host, ports, warmup, duration, numThreads, reportingInterval, rateLimit, latencyFilePrefix, timeouts, sslEnabled);
+                bench.doRunPhase(config, new RunEngine(config));
             }
         } catch (ParseException e) {
             log.error("Unable to parse", e);
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Unable to run phase", e);
         }
     }
 
-    private void doRunPhase(String host, int[] ports, int warmup, int duration, int numThreads, int reportingInterval, float targetRate, String latencyFilePrefix, int timeouts, boolean sslEnabled) {
-        log.info("Starting {} threads for {} instances", numThreads, ports.length);
-        final Map<RunThread, Thread> threads = new HashMap<RunThread, Thread>(numThreads);
-        final List<List<Integer>> slices = createSlices(ports, numThreads);
-
-        for (int i = 0; i < numThreads; i++) {
-            RunThread t = new RunThread(host, slices.get(i), targetRate / (float) numThreads, latencyFilePrefix, timeouts, sslEnabled);
-            threads.put(t, new Thread(t));
-        }
-        for (final Thread t : threads.values()) {
-            t.start();
-        }
-
-        for (final RunThread r : threads.keySet()) {
-            while (!r.isInitialized()) {
-                Thread.yield();
-            }
-        }
-        log.info("Client threads have been initialized");
+    private RunResult doRunPhase(BenchConfig config, RunController controller) {
+        final int duration = config.getDuration();
+        final int reportingInterval = config.getReportingInterval();
+        controller.start();
 
         // run the warmup phase id a warmup greater than 0 has been passed by the user
-        warmup(warmup);
+        warmup(config.getWarmup());
 
-        for (RunThread r : threads.keySet()) {
-            r.resetData();
-        }
+        controller.startMeasurement();
 
         long start = System.currentTimeMillis();
         long lastInterval = start;
         long currentMillis = System.currentTimeMillis();
-        long interval;
-        while ((interval = currentMillis - start) < 1000 * duration) {
+        while (currentMillis - start < 1000 * duration) {
             if (currentMillis - lastInterval > reportingInterval * 1000) {
-                collectAndReportLatencies(threads.keySet(), interval);
+                reportLatencies(controller.collect());
                 lastInterval = currentMillis;
             }
             try {
@@ -229,33 +613,39 @@ public class MongoBench {
             }
             currentMillis = System.currentTimeMillis();
         }
-        for (RunThread r : threads.keySet()) {
-            r.stop();
-        }
-        long elapsed = System.currentTimeMillis() - start;
-        for (Thread t : threads.values()) {
-            try {
-                t.join();
-            } catch (InterruptedException e) {
-                log.error("Unable to join thread", e);
-            }
-        }
+        final RunResult result = controller.stop();
+        final long elapsed = result.getDuration();
 
-        float avgRatePerThread = 0f;
-        long numReads = 0;
-        long numInserts = 0;
-        for (final RunThread r : threads.keySet()) {
-            avgRatePerThread += r.getRate();
-            numInserts += r.getNumInserts();
-            numReads += r.getNumReads();
+        final long numOperations = result.getNumOperations();
+        final float rate = (float) numOperations * 1000f / (float) elapsed;
+        final float avgRatePerThread = result.getThreadRateSum() / (float) result.getNumThreads();
+        log.info("Executed {} operations in {} secs", numOperations, decimalFormat.format((float) elapsed / 1000f));
+        if (result.getMisses() > 0) {
+            log.info("{} operations did not find their document", result.getMisses());
         }
-        float rate = (float) (numReads + numInserts) * 1000f / (float) elapsed;
-        avgRatePerThread = avgRatePerThread / (float) numThreads;
-        log.info("Read {} and inserted {} documents in {} secs", numReads, numInserts, decimalFormat.format((float) elapsed / 1000f));
         log.info("Overall transaction rate: {} transactions/second", decimalFormat.format(rate));
         log.info("Average transaction rate pre thread: {} transactions/second", decimalFormat.format(avgRatePerThread));
-        log.info("Average transaction rate per instance: {} transactions/second", decimalFormat.format(rate / (float) ports.length));
-        collectAndReportLatencies(threads.keySet(), elapsed);
+        log.info("Average transaction rate per instance: {} transactions/second", decimalFormat.format(rate / (float) config.getInstances().length));
+        reportLatencies(result);
+        reportStalls(result, config);
+        new InstanceReport(result.getInstances(), elapsed).report();
+        return result;
+    }
+
+    private void doConvertPhase(String latencyFilePrefix) {
+        try {
+            new LatencyFileConverter().convertAll(latencyFilePrefix);
+        } catch (IOException e) {
+            log.error("Unable to convert latency files", e);
+        }
+    }
+
+    private void doAnalyzePhase(String latencyFilePrefix) {
+        try {
+            new LatencyFileAnalyzer(Runtime.getRuntime().availableProcessors()).analyzeAll(latencyFilePrefix);
+        } catch (IOException e) {
+            log.error("Unable to analyze latency files", e);
+        }
     }
 
     private void warmup(int warmupInSeconds) {
@@ -273,92 +663,242 @@ public class MongoBench {
         }
     }
 
-    private void collectAndReportLatencies(Set<RunThread> threads, long duration) {
-        int numInserts = 0, numReads = 0;
-        float minReadLatency = Float.MAX_VALUE, maxReadLatency = 0f, minWriteLatency = Float.MAX_VALUE, maxWriteLatency = 0f;
-        float avgReadLatency = 0f, avgWriteLatency = 0f;
-        float tps;
-        for (final RunThread r : threads) {
-            numReads += r.getNumReads();
-            numInserts += r.getNumInserts();
-            if (r.getMaxReadlatency() > maxReadLatency) {
-                maxReadLatency = r.getMaxReadlatency();
+    private void reportLatencies(RunResult result) {
+        final StringBuilder opCounts = new StringBuilder();
+        for (final OpType type : OpType.values()) {
+            if (result.getCount(type) > 0) {
+                opCounts.append(opCounts.length() == 0 ? "" : ", ").append(result.getCount(type)).append(' ').append(type.getName());
             }
-            if (r.getMaxWriteLatency() > maxWriteLatency) {
-                maxWriteLatency = r.getMaxWriteLatency();
+        }
+        final float tps = result.getNumOperations() * 1000f / (result.getDuration());
+        log.info("{} in {} s, {} requests/sec", opCounts.length() == 0 ? "No operations" : opCounts, decimalFormat.format(result.getDuration() / 1000f), decimalFormat.format(tps));
+        for (final OpType type : OpType.values()) {
+            if (result.getLatencies(type).getTotalCount() == 0) {
+                continue;
             }
-            if (r.getMinReadLatency() < minReadLatency) {
-                minReadLatency = r.getMinReadLatency();
+            if (result.isOpenLoop()) {
+                reportLatencies(type.getName() + " (corrected)", result.getLatencies(type));
+                reportLatencies(type.getName() + " (uncorrected)", result.getServiceTimes(type));
+            } else {
+                reportLatencies(type.getName(), result.getLatencies(type));
             }
-            if (r.getMinWriteLatency() < minWriteLatency) {
-                minWriteLatency = r.getMinWriteLatency();
+            if (result.getDocuments(type) != result.getCount(type)) {
+                reportAmortizedLatencies(type, result);
             }
-            avgReadLatency += r.getAccReadLatencies();
-            avgWriteLatency += r.getAccWriteLatencies();
         }
-        avgReadLatency = avgReadLatency / numReads;
-        avgWriteLatency = avgWriteLatency / numInserts;
-        tps = (numInserts + numReads) * 1000f / (duration);
-        log.info("{} inserts, {} reads in {} s, {} requests/sec", numInserts, numReads, decimalFormat.format(duration / 1000f), decimalFormat.format(tps));
-        log.info("Read latency Min/Max/Avg [ms]: {}/{}/{}", decimalFormat.format(minReadLatency / 1000000f),
-                decimalFormat.format(maxReadLatency / 1000000f), decimalFormat.format(avgReadLatency / 1000000f));
-        log.info("Write latency Min/Max/Avg [ms]: {}/{}/{}", decimalFormat.format(minWriteLatency / 1000000f),
-                decimalFormat.format(maxWriteLatency / 1000000f), decimalFormat.format(avgWriteLatency / 1000000f));
+        reportLatencies("client stall", result.getStalls());
+        if (result.getGcPauses().getTotalCount() > 0) {
+            reportLatencies("GC pause", result.getGcPauses());
+        }
     }
 
-    private List<List<Integer>> createSlices(int[] ports, int numThreads) {
-        final List<List<Integer>> slices = new ArrayList<List<Integer>>(numThreads);
-        if (ports.length >= numThreads) {
-        for (int i = 0; i < numThreads; i++) {
-            slices.add(new ArrayList<Integer>());
+    /**
+     * Report the time windows in which the benchmark process stalled, since the latencies measured in these windows
+     * include the stall
+     */
+    private void reportStalls(RunResult result, BenchConfig config) {
+        final List<HiccupMeter.StallWindow> windows = result.getStalledWindows();
+        if (windows.isEmpty()) {
+            log.info("No client stalls above {} ms", decimalFormat.format(config.getStallThreshold()));
+            return;
         }
-        for (int i = 0; i < ports.length; i++) {
-            int sliceIdx = i % numThreads;
-            slices.get(sliceIdx).add(ports[i]);
+        log.warn("{} windows of {} s with client stalls above {} ms. Latencies measured in these windows include the stalls",
+                windows.size(), config.getIntervalPeriod(), decimalFormat.format(config.getStallThreshold()));
+        for (int i = 0; i < windows.size() && i < MAX_REPORTED_STALLS; i++) {
+            final HiccupMeter.StallWindow window = windows.get(i);
+            log.warn("Client stall of {} ms at {} s, {} GC pauses of {} ms in total", formatLatency(window.getMaxStall()),
+                    decimalFormat.format(window.getElapsed() / 1000f), window.getGcCount(), formatLatency(window.getGcPause()));
         }
-        } else {
-            int portIndex = 0;
-            for (int i = 0; i < numThreads; i++) {
-                final List<Integer> portsTmp;
-                if (slices.size() <= i) {
-                    portsTmp = new ArrayList<>();
-                    slices.add(i, portsTmp);
-                } else {
-                    portsTmp = slices.get(i);
-                }
-                portsTmp.add(ports[portIndex++]);
-                if (portIndex == ports.length) {
-                    portIndex = 0;
-                }
-            }
+        if (windows.size() > MAX_REPORTED_STALLS) {
+            log.warn("{} more windows with client stalls", windows.size() - MAX_REPORTED_STALLS);
         }
-        int count = 1;
-        for (List<Integer> portTmp : slices) {
-            System.out.printf("Thread %d will use ports %s\n", count++, portTmp.toString());
+    }
+
+    /**
+     * Report the throughput and latencies per document of operations with several documents, e.g. batched inserts
+     */
+    private void reportAmortizedLatencies(OpType type, RunResult result) {
+        final double documentsPerOp = result.getDocuments(type) / (double) result.getCount(type);
+        final Histogram latencies = result.getLatencies(type);
+        final StringBuilder values = new StringBuilder();
+        values.append(formatLatency((long) (latencies.getMinValue() / documentsPerOp)));
+        for (final double percentile : REPORTED_PERCENTILES) {
+            values.append('/').append(formatLatency((long) (latencies.getValueAtPercentile(percentile) / documentsPerOp)));
         }
-        return slices;
+        values.append('/').append(formatLatency((long) (latencies.getMaxValue() / documentsPerOp)));
+        log.info("{} {} documents/sec, {} documents per operation, amortized latency per document Min/p50/p90/p99/p99.9/p99.99/Max [ms]: {}",
+                type.getName(), decimalFormat.format(result.getDocuments(type) * 1000f / result.getDuration()),
+                decimalFormat.format(documentsPerOp), values);
     }
 
+    private void reportLatencies(String name, Histogram latencies) {
+        if (latencies.getTotalCount() == 0) {
+            log.info("{} latency [ms]: no data", name);
+            return;
+        }
+        final StringBuilder values = new StringBuilder();
+        values.append(formatLatency(latencies.getMinValue()));
+        for (final double percentile : REPORTED_PERCENTILES) {
+            values.append('/').append(formatLatency(latencies.getValueAtPercentile(percentile)));
+        }
+        values.append('/').append(formatLatency(latencies.getMaxValue()));
+        log.info("{} latency Min/p50/p90/p99/p99.9/p99.99/Max [ms]: {}", name, values);
+    }
+
+    private static String formatLatency(long nanos) {
+        return decimalFormat.format(nanos / 1000000f);
+    }
 
-    private void doLoadPhase(String host, int[] ports, int numThreads, int numDocuments, int documentSize, int timeouts, boolean sslEnabled) {
+    private float doLoadPhase(BenchConfig config) {
+        final int numThreads = config.getNumThreads();
+        final List<LoadThread.Range> ranges = LoadThread.createRanges(config);
+        final Set<Integer> prepared = forEachInstance(config, "prepare the collection at", port -> {
+            try (final CollectionSetup setup = new CollectionSetup(config, port)) {
+                setup.prepare(CollectionSetup.getBoundaries(ranges, port));
+            }
+        });
         final Map<LoadThread, Thread> threads = new HashMap<LoadThread, Thread>(numThreads);
-        final List<List<Integer>> slices = createSlices(ports, numThreads);
+        final List<List<LoadThread.Range>> slices = new ArrayList<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            slices.add(new ArrayList<>());
+        }
+        int next = 0;
+        for (final LoadThread.Range range : ranges) {
+            if (prepared.contains(range.getPort())) {
+                slices.get(next++ % numThreads).add(range);
+            }
+        }
         for (int i = 0; i < numThreads; i++) {
-            LoadThread l = new LoadThread(host, slices.get(i), numDocuments, documentSize, timeouts, sslEnabled);
-            threads.put(l, new Thread(l));
+            if (!slices.get(i).isEmpty()) {
+                LoadThread l = new LoadThread(config, slices.get(i));
+                threads.put(l, new Thread(l));
+            }
         }
+        log.info("Loading {} ranges of {} instances with {} threads", next, prepared.size(), threads.size());
 
+        final long start = System.currentTimeMillis();
         for (Thread t : threads.values()) {
             t.start();
         }
         for (Thread t : threads.values()) {
-            if (t.isAlive()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                log.error("Error while waiting for thread", e);
+            }
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+
+        long numInserted = 0, numFailed = 0, numExisting = 0;
+        final Map<Integer, Long> insertedPerInstance = new HashMap<>();
+        final Map<Integer, Long> finishedPerInstance = new HashMap<>();
+        for (final LoadThread l : threads.keySet()) {
+            for (final Map.Entry<Integer, Long> inserted : l.getInserted().entrySet()) {
+                insertedPerInstance.merge(inserted.getKey(), inserted.getValue(), Long::sum);
+                numInserted += inserted.getValue();
+            }
+            for (final Map.Entry<Integer, Long> finished : l.getFinished().entrySet()) {
+                finishedPerInstance.merge(finished.getKey(), finished.getValue(), Math::max);
+            }
+            numFailed += l.getFailed();
+            numExisting += l.getExisting();
+        }
+        for (final int port : config.getInstances()) {
+            if (insertedPerInstance.containsKey(port)) {
+                final long inserted = insertedPerInstance.get(port);
+                final long duration = Math.max(finishedPerInstance.getOrDefault(port, start) - start, 1);
+                log.info("Inserted {} documents into {} in {} secs [{} inserts/sec]", inserted, ClientFactory.getInstanceName(config, port),
+                        decimalFormat.format(duration / 1000f), decimalFormat.format(inserted * 1000f / (float) duration));
+            }
+        }
+        if (numFailed > 0) {
+            log.error("Overall {} inserts failed", numFailed);
+        }
+        if (numExisting > 0) {
+            log.info("{} documents existed already", numExisting);
+        }
+        if (config.getIndexes() != null && config.isDeferIndexes()) {
+            final long startIndexes = System.currentTimeMillis();
+            forEachInstance(config, "build the deferred indexes at", port -> {
+                if (prepared.contains(port)) {
+                    try (final CollectionSetup setup = new CollectionSetup(config, port)) {
+                        setup.buildIndexes();
+                    }
+                }
+            });
+            log.info("Built the deferred indexes of {} instances in {} secs", prepared.size(),
+                    decimalFormat.format((System.currentTimeMillis() - startIndexes) / 1000f));
+        }
+        final float rate = numInserted * 1000f / (float) Math.max(elapsed, 1);
+        log.info("Inserted {} documents into {} instances in {} secs", numInserted, prepared.size(), decimalFormat.format(elapsed / 1000f));
+        log.info("Overall insert rate: {} inserts/second", decimalFormat.format(rate));
+        // instances whose collection could not be prepared have not been loaded
+        log.info("Average insert rate per instance: {} inserts/second", decimalFormat.format(rate / (float) Math.max(prepared.size(), 1)));
+        return rate;
+    }
+
+    /**
+     * Run the given task for every instance with up to the configured number of threads in parallel
+     *
+     * @param action the description of the task for the logs
+     * @return the ports of the instances for which the task succeeded
+     */
+    static Set<Integer> forEachInstance(BenchConfig config, String action, IntConsumer task) {
+        final Set<Integer> succeeded = ConcurrentHashMap.newKeySet();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(config.getNumThreads(), config.getInstances().length));
+        for (final int port : config.getInstances()) {
+            executor.execute(() -> {
                 try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    log.error("Error while waiting for thread", e);
+                    task.accept(port);
+                    succeeded.add(port);
+                } catch (MongoException | IllegalArgumentException e) {
+                    log.error("Unable to {} {}", action, ClientFactory.getInstanceName(config, port), e);
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for the instances", e);
+        }
+        return succeeded;
+    }
+
+    /**
+     * Run the load and run phases against an in-process {@link StandInServer} for every configured thread count to
+     * measure the maximum throughput and the latency floor of the benchmark itself
+     */
+    private void doCalibratePhase(BenchConfig config) throws IOException {
+        final int[] threadCounts = config.getCalibrationThreads();
+        final float[] loadRates = new float[threadCounts.length];
+        final RunResult[] results = new RunResult[threadCounts.length];
+        try (final StandInServer server = new StandInServer(config.getDocumentSize())) {
+            final BenchConfig calibration = config.copy();
+            calibration.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+            calibration.setUris(null);
+            calibration.setInstances(server.start(new int[config.getInstances().length]));
+            for (int i = 0; i < threadCounts.length; i++) {
+                log.info("Calibrating with {} threads", threadCounts[i]);
+                calibration.setNumThreads(threadCounts[i]);
+                if (calibration.getExecutionMode() == BenchConfig.ExecutionMode.VIRTUAL) {
+                    calibration.setConnectionsPerPort(threadCounts[i]);
                 }
+                loadRates[i] = doLoadPhase(calibration);
+                results[i] = doRunPhase(calibration, new RunEngine(calibration));
+            }
+        }
+        log.info("Calibration against the stand-in server with {} instances:", config.getInstances().length);
+        for (int i = 0; i < threadCounts.length; i++) {
+            final Histogram latencies = LatencyStats.createHistogram();
+            for (final OpType type : OpType.values()) {
+                latencies.add(results[i].getLatencies(type));
             }
+            log.info("{} threads: load {} inserts/sec, run {} requests/sec, latency Min/p50/p99 [ms]: {}/{}/{}", threadCounts[i],
+                    decimalFormat.format(loadRates[i]),
+                    decimalFormat.format(results[i].getNumOperations() * 1000f / (float) results[i].getDuration()),
+                    formatLatency(latencies.getMinValue()), formatLatency(latencies.getValueAtPercentile(50d)),
+                    formatLatency(latencies.getValueAtPercentile(99d)));
         }
     }
 
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+/**
+ * The operation types issued during the run phase. The code is persisted in binary latency files and must not change
+ */
+public enum OpType {
+    /**
+     * Point lookup of a single document by _id
+     */
+    READ((byte) 1),
+    /**
+     * Insert of a new document with the next free _id
+     */
+    INSERT((byte) 2),
+    /**
+     * Update of the data field of an existing document
+     */
+    UPDATE((byte) 3),
+    /**
+     * Update of the data field of a document which is inserted if it does not exist
+     */
+    UPSERT((byte) 4),
+    /**
+     * Point lookup followed by an update of the same document
+     */
+    READ_MODIFY_WRITE((byte) 5),
+    /**
+     * Removal of a single document by _id
+     */
+    DELETE((byte) 6),
+    /**
+     * Range scan over a number of documents in _id order
+     */
+    SCAN((byte) 7),
+    /**
+     * Equality query on the group field
+     */
+    QUERY((byte) 8),
+    /**
+     * Range query on the value field
+     */
+    RANGE_QUERY((byte) 9),
+    /**
+     * Equality query on the group field returning only the group and value fields
+     */
+    PROJECTION((byte) 10),
+    /**
+     * Equality query on the group field sorted by the value field
+     */
+    SORT((byte) 11),
+    /**
+     * Count of the documents with the same group
+     */
+    COUNT((byte) 12),
+    /**
+     * Aggregation pipeline summing the value field of the documents with the same group
+     */
+    AGGREGATE((byte) 13);
+
+    private final byte code;
+
+    OpType(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @return the name used on the command line and in reports
+     */
+    public String getName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    public static OpType fromName(String name) {
+        for (final OpType type : values()) {
+            if (type.getName().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation type " + name);
+    }
+
+    public static OpType fromCode(byte code) {
+        for (final OpType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation type " + code);
+    }
+}
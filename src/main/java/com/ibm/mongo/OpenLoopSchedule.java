@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed schedule of intended operation start times for open loop load generation.
+ * <p>
+ * The schedule does not adapt to the response times of the server. If an operation is delayed, the following
+ * operations are issued as soon as possible until the schedule has been caught up, and their latency is measured from
+ * their intended start time. This avoids coordinated omission, i.e. stalls of the server are not hidden from the
+ * recorded latencies.
+ */
+public class OpenLoopSchedule {
+
+    public enum Arrival {
+        /**
+         * Operations are evenly spaced
+         */
+        CONSTANT,
+        /**
+         * Operations arrive as a Poisson process, i.e. with exponentially distributed inter arrival times
+         */
+        POISSON
+    }
+
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Arrival arrival;
+    private final double meanIntervalNanos;
+    private final Random random = new Random();
+    private double next;
+
+    /**
+     * @param rate    the number of operations per second
+     * @param arrival the distribution of the inter arrival times
+     */
+    public OpenLoopSchedule(float rate, Arrival arrival) {
+        if (rate <= 0f) {
+            throw new IllegalArgumentException("An open loop schedule needs a positive rate");
+        }
+        this.arrival = arrival;
+        this.meanIntervalNanos = 1000000000d / rate;
+    }
+
+    /**
+     * Start the schedule at the current time
+     */
+    public void start() {
+        next = System.nanoTime();
+    }
+
+    /**
+     * @return the intended start time of the next operation without advancing the schedule
+     */
+    public long peek() {
+        return (long) next;
+    }
+
+    /**
+     * @return the intended start time of the next operation in terms of {@link System#nanoTime()}
+     */
+    public long next() {
+        final long intended = (long) next;
+        if (arrival == Arrival.POISSON) {
+            next += -Math.log(1d - random.nextDouble()) * meanIntervalNanos;
+        } else {
+            next += meanIntervalNanos;
+        }
+        return intended;
+    }
+
+    /**
+     * Block until the given point in time has been reached. Returns immediately if the point lies in the past
+     *
+     * @param deadline the point in time in terms of {@link System#nanoTime()}
+     */
+    public static void waitUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            }
+        }
+    }
+}
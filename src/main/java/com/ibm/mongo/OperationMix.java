@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The relative frequency of the operation types in the run phase
+ */
+public class OperationMix {
+
+    public static final String DEFAULT_MIX = "read=0.9,insert=0.1";
+
+    private final OpType[] types;
+    private final double[] cumulative;
+    private final Map<OpType, Double> weights;
+
+    public OperationMix(Map<OpType, Double> weights) {
+        double total = 0d;
+        for (final double weight : weights.values()) {
+            if (weight < 0d) {
+                throw new IllegalArgumentException("Operation weights must not be negative");
+            }
+            total += weight;
+        }
+        if (total <= 0d) {
+            throw new IllegalArgumentException("At least one operation needs a positive weight");
+        }
+        this.weights = new EnumMap<>(OpType.class);
+        this.types = new OpType[weights.size()];
+        this.cumulative = new double[weights.size()];
+        int i = 0;
+        double sum = 0d;
+        for (final Map.Entry<OpType, Double> weight : weights.entrySet()) {
+            sum += weight.getValue() / total;
+            this.weights.put(weight.getKey(), weight.getValue() / total);
+            types[i] = weight.getKey();
+            cumulative[i++] = sum;
+        }
+        cumulative[cumulative.length - 1] = 1d;
+    }
+
+    /**
+     * Parse a mix like <code>read=0.8,update=0.15,insert=0.05</code>. The weights are normalized
+     */
+    public static OperationMix parse(String spec) {
+        final Map<OpType, Double> weights = new EnumMap<>(OpType.class);
+        for (final String entry : spec.split(",")) {
+            final int eqIdx = entry.indexOf('=');
+            if (eqIdx == -1) {
+                throw new IllegalArgumentException("Invalid operation weight " + entry);
+            }
+            weights.put(OpType.fromName(entry.substring(0, eqIdx).trim()), Double.parseDouble(entry.substring(eqIdx + 1).trim()));
+        }
+        return new OperationMix(weights);
+    }
+
+    /**
+     * @return the normalized weight of the operation type, 0 if it is not part of the mix
+     */
+    public double getWeight(OpType type) {
+        final Double weight = weights.get(type);
+        return weight != null ? weight : 0d;
+    }
+
+    public OpType next(Random random) {
+        final double r = random.nextDouble();
+        for (int i = 0; i < cumulative.length - 1; i++) {
+            if (r < cumulative[i]) {
+                return types[i];
+            }
+        }
+        return types[types.length - 1];
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (final Map.Entry<OpType, Double> weight : weights.entrySet()) {
+            sb.append(sb.length() == 0 ? "" : ",").append(weight.getKey().getName()).append('=').append(weight.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.apache.commons.lang.RandomStringUtils;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
+import org.bson.ByteBuf;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pre-encoded BSON documents for the run and load phases.
+ * <p>
+ * The documents are encoded once and handed to the driver as {@link RawBsonDocument}s, which are written to the wire
+ * as they are, so the client does not allocate and encode the same payload for every single operation.
+ * <p>
+ * The synchronous driver is done with a document when the operation returns, so it gets the same filter and insert
+ * document for every operation, patched in place, see {@link #getReusedIdFilter(int)} and
+ * {@link #getReusedInsertDocument(int)}. The asynchronous driver may still encode a document after the next operation
+ * has been issued, so it gets a copy of the template for every insert and every _id filter beyond the cached ones.
+ * Generated documents are always built from scratch. Inserted documents only have the secondary fields group, value
+ * and created if {@link IndexedFields} includes them.
+ */
+public class PayloadCache {
+
+    private static final BsonDocumentCodec codec = new BsonDocumentCodec();
+
+    /**
+     * The characters of the random data of loaded documents, 64 so that every character takes 6 random bits
+     */
+    private static final byte[] DATA_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The offset of the int32 value of the _id filter
+     */
+    private static final int FILTER_ID_VALUE_OFFSET = findValue(toBytes(createIdFilterTemplate()), "_id", BsonType.INT32);
+
+    private final IndexedFields fields;
+    private final DocumentGenerator generator;
+    private final int documentSize;
+    private final byte[] insertTemplate;
+    private final byte[] reusedInsertBytes;
+    private final RawBsonDocument reusedInsertDocument;
+    private final RawBsonDocument updateDocument;
+    private final RawBsonDocument[] idFilters;
+    private final byte[] idFilterTemplate;
+    private final byte[] reusedIdFilterBytes;
+    private final RawBsonDocument reusedIdFilter;
+
+    /**
+     * The offsets of the values of the _id (int32), group (int32), value (int32) and created (date) fields of inserted
+     * documents, -1 for secondary fields the documents do not have. They are located in the encoded template, so they
+     * follow any change of its fields
+     */
+    private final int idValueOffset;
+    private final int groupValueOffset;
+    private final int valueValueOffset;
+    private final int createdValueOffset;
+
+    /**
+     * The offset of the characters of the data field, following the int32 length of the string
+     */
+    private final int dataCharsOffset;
+
+    /**
+     * @param documentSize the size of the data field of inserted documents
+     * @param numIdFilters the number of _id filter documents to cache, starting at _id 0
+     * @param fields       the secondary fields of inserted documents
+     * @param generator    the generator of inserted and updated documents, null for the fixed payload
+     */
+    public PayloadCache(int documentSize, int numIdFilters, IndexedFields fields, DocumentGenerator generator) {
+        final BsonString data = new BsonString(RandomStringUtils.randomAlphabetic(documentSize));
+        this.fields = fields;
+        this.generator = generator;
+        this.documentSize = documentSize;
+        this.insertTemplate = toBytes(createTemplate(data, fields));
+        this.idValueOffset = findValue(insertTemplate, "_id", BsonType.INT32);
+        this.groupValueOffset = fields.hasGroup() ? findValue(insertTemplate, IndexedFields.GROUP, BsonType.INT32) : -1;
+        this.valueValueOffset = fields.hasValue() ? findValue(insertTemplate, IndexedFields.VALUE, BsonType.INT32) : -1;
+        this.createdValueOffset = fields.hasCreated() ? findValue(insertTemplate, IndexedFields.CREATED, BsonType.DATE_TIME) : -1;
+        this.dataCharsOffset = findValue(insertTemplate, "data", BsonType.STRING) + 4;
+        this.updateDocument = encode(new BsonDocument("$set", new BsonDocument("data", data)));
+        this.reusedInsertBytes = insertTemplate.clone();
+        this.reusedInsertDocument = new RawBsonDocument(reusedInsertBytes);
+        this.idFilterTemplate = toBytes(createIdFilterTemplate());
+        this.reusedIdFilterBytes = idFilterTemplate.clone();
+        this.reusedIdFilter = new RawBsonDocument(reusedIdFilterBytes);
+        this.idFilters = new RawBsonDocument[numIdFilters];
+        for (int i = 0; i < numIdFilters; i++) {
+            idFilters[i] = createIdFilter(i);
+        }
+    }
+
+    public static RawBsonDocument encode(BsonDocument document) {
+        return new RawBsonDocument(document, codec);
+    }
+
+    private static RawBsonDocument createTemplate(BsonString data, IndexedFields fields) {
+        final BsonDocument template = new BsonDocument("_id", new BsonInt32(0));
+        if (fields.hasGroup()) {
+            template.append(IndexedFields.GROUP, new BsonInt32(0));
+        }
+        if (fields.hasValue()) {
+            template.append(IndexedFields.VALUE, new BsonInt32(0));
+        }
+        if (fields.hasCreated()) {
+            template.append(IndexedFields.CREATED, new BsonDateTime(0L));
+        }
+        return encode(template.append("data", data));
+    }
+
+    private static RawBsonDocument createIdFilterTemplate() {
+        return encode(new BsonDocument("_id", new BsonInt32(0)));
+    }
+
+    /**
+     * @return the offset of the value of a top level field in an encoded document
+     * @throws IllegalStateException if the document has no such field or its value has another type
+     */
+    private static int findValue(byte[] document, String name, BsonType type) {
+        try (final BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(document))) {
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                if (reader.readName().equals(name)) {
+                    if (reader.getCurrentBsonType() != type) {
+                        throw new IllegalStateException("Field " + name + " of the template is a " + reader.getCurrentBsonType() + ", not a " + type);
+                    }
+                    return reader.getBsonInput().getPosition();
+                }
+                reader.skipValue();
+            }
+        }
+        throw new IllegalStateException("Field " + name + " not found in the template");
+    }
+
+    private static byte[] toBytes(RawBsonDocument document) {
+        final ByteBuf buffer = document.getByteBuffer();
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @return the document <code>{_id: id, group: group, value: value, created: now, data: data}</code> with a data
+     * field of the configured size or the document of the generator. Every call returns a new copy, so the document
+     * may be handed to the asynchronous driver
+     */
+    public RawBsonDocument getInsertDocument(int id) {
+        if (generator != null) {
+            return generator.createDocument(id);
+        }
+        final byte[] bytes = insertTemplate.clone();
+        writeFields(bytes, 0, id, System.currentTimeMillis());
+        return new RawBsonDocument(bytes);
+    }
+
+    /**
+     * @return the same document as {@link #getInsertDocument(int)}, but patched into a buffer which is reused by the
+     * next call, so it must only be used by the synchronous driver of the thread owning this cache
+     */
+    public RawBsonDocument getReusedInsertDocument(int id) {
+        if (generator != null) {
+            return generator.createDocument(id);
+        }
+        writeFields(reusedInsertBytes, 0, id, System.currentTimeMillis());
+        return reusedInsertDocument;
+    }
+
+    /**
+     * @return the encoded size of an inserted document without its data field, i.e. the size of an inserted document
+     * minus the configured document size
+     */
+    public int getInsertOverhead() {
+        return insertTemplate.length - documentSize;
+    }
+
+    /**
+     * @return the update <code>{$set: {data: data}}</code> replacing the data field with one of the configured size,
+     * or an update with newly generated template fields of the generator
+     */
+    public RawBsonDocument getUpdateDocument() {
+        if (generator != null) {
+            return generator.createUpdate(ThreadLocalRandom.current().nextLong());
+        }
+        return updateDocument;
+    }
+
+    /**
+     * @return the filter document <code>{_id: id}</code>
+     */
+    public RawBsonDocument getIdFilter(int id) {
+        if (id >= 0 && id < idFilters.length) {
+            return idFilters[id];
+        }
+        return createIdFilter(id);
+    }
+
+    /**
+     * @return the filter document <code>{_id: id}</code> patched into a buffer which is reused by the next call, so it
+     * must only be used by the synchronous driver of the thread owning this cache
+     */
+    public RawBsonDocument getReusedIdFilter(int id) {
+        writeInt32(reusedIdFilterBytes, FILTER_ID_VALUE_OFFSET, id);
+        return reusedIdFilter;
+    }
+
+    /**
+     * @return the filter document <code>{_id: {$gte: id}}</code> for range scans
+     */
+    public BsonDocument getRangeFilter(int id) {
+        return new BsonDocument("_id", new BsonDocument("$gte", new BsonInt32(id)));
+    }
+
+    private RawBsonDocument createIdFilter(int id) {
+        final byte[] bytes = idFilterTemplate.clone();
+        writeInt32(bytes, FILTER_ID_VALUE_OFFSET, id);
+        return new RawBsonDocument(bytes);
+    }
+
+    /**
+     * Create the documents <code>{_id: offset + i, group: group, value: value, created: now, data: data}</code> for a
+     * batch, or the documents of the generator. The template is copied into a single buffer with the fixed size values
+     * patched and the data field filled with random characters for every document, so that the loaded data cannot be
+     * compressed by deduplicating identical payloads
+     *
+     * @param count  the number of documents
+     * @param offset the _id of the first document
+     */
+    public List<RawBsonDocument> createDocuments(int count, int offset) {
+        if (generator != null) {
+            return generator.createDocuments(count, offset);
+        }
+        final byte[] template = insertTemplate;
+        final byte[] buffer = new byte[template.length * count];
+        final List<RawBsonDocument> docs = new ArrayList<>(count);
+        final long now = System.currentTimeMillis();
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            final int docOffset = i * template.length;
+            System.arraycopy(template, 0, buffer, docOffset, template.length);
+            writeFields(buffer, docOffset, offset + i, now);
+            writeRandomData(buffer, docOffset + dataCharsOffset, documentSize, random);
+            docs.add(new RawBsonDocument(buffer, docOffset, template.length));
+        }
+        return docs;
+    }
+
+    private void writeFields(byte[] bytes, int docOffset, int id, long created) {
+        writeInt32(bytes, docOffset + idValueOffset, id);
+        if (groupValueOffset != -1) {
+            writeInt32(bytes, docOffset + groupValueOffset, fields.getGroup(id));
+        }
+        if (valueValueOffset != -1) {
+            writeInt32(bytes, docOffset + valueValueOffset, fields.getValue(id));
+        }
+        if (createdValueOffset != -1) {
+            writeInt32(bytes, docOffset + createdValueOffset, (int) created);
+            writeInt32(bytes, docOffset + createdValueOffset + 4, (int) (created >>> 32));
+        }
+    }
+
+    /**
+     * Fill the characters of a data field with random characters, 10 characters per random number
+     */
+    private static void writeRandomData(byte[] bytes, int pos, int length, ThreadLocalRandom random) {
+        final int end = pos + length;
+        while (pos < end) {
+            long bits = random.nextLong();
+            for (int i = 0; i < 10 && pos < end; i++) {
+                bytes[pos++] = DATA_ALPHABET[(int) bits & 63];
+                bits >>>= 6;
+            }
+        }
+    }
+
+    private static void writeInt32(byte[] bytes, int pos, int value) {
+        bytes[pos] = (byte) value;
+        bytes[pos + 1] = (byte) (value >>> 8);
+        bytes[pos + 2] = (byte) (value >>> 16);
+        bytes[pos + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Hands out the instances of a run to the workers. Instead of a fixed slice of instances per worker, every worker pulls
+ * the next ready instance from a shared lock-free queue, so a slow instance only occupies the workers currently
+ * waiting for it and the remaining workers keep serving the other instances, whatever the ratio of workers to
+ * instances.
+ * <p>
+ * An instance is ready if fewer than the configured number of its requests are in flight, which caps the share of the
+ * workers a single instance can take, and, if a target rate is given, once the next request is due. The target rate
+ * is split evenly across the instances, and every instance follows its own schedule. In open loop mode the intended
+ * start times of that schedule are handed to the workers, so latencies include the time an instance waited for a free
+ * worker.
+ * <p>
+ * Workers without a ready instance do not poll. They park until an instance is handed back or taken by another
+ * worker, which unparks one of them, and only the worker waiting for the earliest due request parks until it is due.
+ * <p>
+ * The clients of the instances are shared by all workers.
+ *
+ * @param <C> the type of the clients
+ */
+public class PortScheduler<C> implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PortScheduler.class);
+
+    /**
+     * The maximum time a waiting worker parks before checking whether it has been stopped
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int TAKEN = 0;
+    private static final int BUSY = 1;
+    private static final int NOT_DUE = 2;
+
+    private final ConcurrentLinkedQueue<Slot<C>> ready = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Lease<C>> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of times an instance has been made ready, so a worker notices an instance made ready while it was
+     * about to park
+     */
+    private final AtomicLong numOffers = new AtomicLong();
+    private boolean timerSet = false;
+    private long timerDeadline;
+    private final List<Slot<C>> slots = new ArrayList<>();
+    private final int concurrency;
+    private final boolean openLoop;
+    private final IntFunction<C> connector;
+    private final Consumer<C> closer;
+
+    /**
+     * @param concurrency the maximum number of requests in flight per instance
+     * @param connector   creates the client of an instance
+     * @param closer      closes a client
+     */
+    public PortScheduler(BenchConfig config, MetricsRegistry metrics, int concurrency, IntFunction<C> connector, Consumer<C> closer) {
+        this.concurrency = concurrency;
+        this.openLoop = config.getArrival() != null;
+        this.connector = connector;
+        this.closer = closer;
+        final int[] ports = config.getInstances();
+        final float portRate = config.getTargetRate() / ports.length;
+        for (int i = 0; i < ports.length; i++) {
+            OpenLoopSchedule schedule = null;
+            if (portRate > 0f) {
+                schedule = new OpenLoopSchedule(portRate, openLoop ? config.getArrival() : OpenLoopSchedule.Arrival.CONSTANT);
+            }
+            final PortStats stats = metrics.getPortStats(ports[i]);
+            stats.setTargetRate(portRate);
+            slots.add(new Slot<>(this, i, ports[i], stats, schedule));
+        }
+        log.info("Scheduling {} instances with up to {} requests in flight per instance", ports.length, concurrency);
+    }
+
+    /**
+     * Start the schedules of the instances and hand out the instances to the workers
+     */
+    public void start() {
+        for (final Slot<C> slot : slots) {
+            if (slot.schedule != null) {
+                slot.schedule.start();
+            }
+            offer(slot);
+        }
+    }
+
+    /**
+     * Wait for the next ready instance. The instance must be handed back with {@link #release(Slot)} once the request
+     * has finished
+     *
+     * @param lease   receives the instance and the intended start time of the request
+     * @param stopped stops waiting once it returns true
+     * @return false if the worker has been stopped while waiting
+     */
+    public boolean acquire(Lease<C> lease, BooleanSupplier stopped) {
+        lease.thread = Thread.currentThread();
+        int numNotDue = 0;
+        long earliestDue = Long.MAX_VALUE;
+        long offers = numOffers.get();
+        while (!stopped.getAsBoolean()) {
+            final Slot<C> slot = ready.poll();
+            if (slot == null) {
+                // all instances are busy, so wait until one of them is handed back
+                await(lease, offers, MAX_PARK_NANOS);
+                numNotDue = 0;
+                earliestDue = Long.MAX_VALUE;
+                offers = numOffers.get();
+                continue;
+            }
+            slot.queued.set(false);
+            final long now = System.nanoTime();
+            final int state = slot.tryTake(now, lease);
+            if (state == TAKEN) {
+                // other workers may send requests to the same instance until its cap is reached
+                offer(slot);
+                return true;
+            } else if (state == NOT_DUE) {
+                requeue(slot);
+                earliestDue = Math.min(earliestDue, slot.getDue() - now);
+                if (++numNotDue >= slots.size()) {
+                    final long deadline = now + Math.max(earliestDue, 0L);
+                    if (claimTimer(deadline)) {
+                        await(lease, offers, Math.min(Math.max(earliestDue, 0L), MAX_PARK_NANOS));
+                        releaseTimer(deadline);
+                    } else {
+                        // another worker waits for an earlier request
+                        await(lease, offers, MAX_PARK_NANOS);
+                    }
+                    numNotDue = 0;
+                    earliestDue = Long.MAX_VALUE;
+                    offers = numOffers.get();
+                }
+            }
+            // a busy instance is offered again by the release of one of its requests
+        }
+        return false;
+    }
+
+    /**
+     * Park until an instance is made ready or the given time has passed. Returns immediately if an instance has been
+     * made ready since the worker last looked at the ready queue
+     *
+     * @param offers the number of offers when the worker last looked at the ready queue
+     */
+    private void await(Lease<C> lease, long offers, long parkNanos) {
+        lease.waiting = true;
+        if (lease.queued.compareAndSet(false, true)) {
+            waiting.offer(lease);
+        }
+        if (numOffers.get() == offers) {
+            LockSupport.parkNanos(this, parkNanos);
+        }
+        lease.waiting = false;
+    }
+
+    /**
+     * Become the worker waiting for the earliest due request, unless another worker waits for an earlier one
+     */
+    private synchronized boolean claimTimer(long deadline) {
+        if (timerSet && deadline - timerDeadline >= 0) {
+            return false;
+        }
+        timerSet = true;
+        timerDeadline = deadline;
+        return true;
+    }
+
+    private synchronized void releaseTimer(long deadline) {
+        if (timerSet && timerDeadline == deadline) {
+            timerSet = false;
+        }
+    }
+
+    /**
+     * Hand back an instance after its request has finished. Safe to call from any thread, e.g. a completion callback
+     */
+    public void release(Slot<C> slot) {
+        slot.release();
+        offer(slot);
+    }
+
+    /**
+     * Make an instance ready and unpark a waiting worker to take it
+     */
+    private void offer(Slot<C> slot) {
+        if (slot.queued.compareAndSet(false, true)) {
+            ready.offer(slot);
+            numOffers.incrementAndGet();
+            Lease<C> lease;
+            while ((lease = waiting.poll()) != null) {
+                lease.queued.set(false);
+                if (lease.waiting) {
+                    LockSupport.unpark(lease.thread);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Put an instance whose next request is not due yet back into the ready queue without waking a worker, the due
+     * request is taken by the worker waiting for it
+     */
+    private void requeue(Slot<C> slot) {
+        if (slot.queued.compareAndSet(false, true)) {
+            ready.offer(slot);
+        }
+    }
+
+    public List<Slot<C>> getSlots() {
+        return Collections.unmodifiableList(slots);
+    }
+
+    /**
+     * @return true if the latencies are measured from the intended start times of the schedules
+     */
+    public boolean isOpenLoop() {
+        return openLoop;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public void close() {
+        for (final Slot<C> slot : slots) {
+            slot.close();
+        }
+    }
+
+    /**
+     * A single instance with its client, statistics and schedule
+     */
+    public static final class Slot<C> {
+        private final PortScheduler<C> scheduler;
+        private final int index;
+        private final int port;
+        private final PortStats stats;
+        private final OpenLoopSchedule schedule;
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private volatile C client;
+        private int inFlight = 0;
+        private int numBlocked = 0;
+
+        private Slot(PortScheduler<C> scheduler, int index, int port, PortStats stats, OpenLoopSchedule schedule) {
+            this.scheduler = scheduler;
+            this.index = index;
+            this.port = port;
+            this.stats = stats;
+            this.schedule = schedule;
+            this.client = scheduler.connector.apply(port);
+        }
+
+        private synchronized int tryTake(long now, Lease<C> lease) {
+            if (inFlight >= scheduler.concurrency) {
+                return BUSY;
+            }
+            long intendedStart = 0L;
+            if (schedule != null) {
+                if (schedule.peek() - now > 0) {
+                    return NOT_DUE;
+                }
+                intendedStart = schedule.next();
+            }
+            inFlight++;
+            lease.set(this, scheduler.openLoop ? intendedStart : 0L, null);
+            return TAKEN;
+        }
+
+        /**
+         * Count a request once fewer than the maximum number of requests are in flight, ignoring the schedule
+         *
+         * @param timeoutNanos how long to wait for a request of the instance to finish if it is busy
+         * @return false if the instance is still busy
+         */
+        synchronized boolean enter(long timeoutNanos) throws InterruptedException {
+            if (inFlight >= scheduler.concurrency) {
+                numBlocked++;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, timeoutNanos);
+                } finally {
+                    numBlocked--;
+                }
+                if (inFlight >= scheduler.concurrency) {
+                    return false;
+                }
+            }
+            inFlight++;
+            return true;
+        }
+
+        private synchronized long getDue() {
+            return schedule.peek();
+        }
+
+        synchronized void release() {
+            inFlight--;
+            if (numBlocked > 0) {
+                notify();
+            }
+        }
+
+        /**
+         * @return the position of the instance in the ports of the run
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * @return the live statistics of the instance, resolved once so the workers do not look them up per request
+         */
+        public PortStats getStats() {
+            return stats;
+        }
+
+        public C getClient() {
+            return client;
+        }
+
+        /**
+         * Replace a client which lost its connection. Workers which failed on the same client at the same time only
+         * replace it once
+         *
+         * @param broken the client the request failed on
+         * @return true if the client has been replaced by this call
+         */
+        public synchronized boolean reconnect(C broken) {
+            if (client != broken) {
+                return false;
+            }
+            scheduler.closer.accept(broken);
+            client = scheduler.connector.apply(port);
+            return true;
+        }
+
+        private synchronized void close() {
+            scheduler.closer.accept(client);
+        }
+    }
+
+    /**
+     * The instance handed to a worker for a single request. Reused by the worker for all its requests
+     */
+    public static final class Lease<C> {
+        private Slot<C> slot;
+        private long intendedStart;
+        private TraceRecord record;
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private volatile boolean waiting;
+        private Thread thread;
+
+        void set(Slot<C> slot, long intendedStart, TraceRecord record) {
+            this.slot = slot;
+            this.intendedStart = intendedStart;
+            this.record = record;
+        }
+
+        public Slot<C> getSlot() {
+            return slot;
+        }
+
+        /**
+         * @return the intended start time of the request in open loop mode, 0 otherwise
+         */
+        public long getIntendedStart() {
+            return intendedStart;
+        }
+
+        /**
+         * @return the request of a trace to replay, null if the request is chosen by the workload
+         */
+        public TraceRecord getRecord() {
+            return record;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.HdrHistogram.Histogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live statistics of a single instance, updated concurrently by all workers sending requests to it. All counters are
+ * striped {@link LongAdder}s, so workers do not contend on a shared cache line. The counters are never reset and are
+ * exported by the {@link MetricsServer}.
+ * <p>
+ * In addition the latency distribution of every operation type is recorded for the measurement window, i.e. without
+ * the warmup. The distributions are only allocated for the operation types actually sent to the instance.
+ * <p>
+ * For instances given by a connection string the statistics also listen to the commands of the clients and attribute
+ * them to the members of the replica set, or the routers of a sharded cluster, which executed them.
+ */
+public class PortStats implements CommandListener {
+
+    /**
+     * The upper bounds of the latency histogram buckets in nanoseconds
+     */
+    public static final long[] BUCKET_BOUNDS = {
+            TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MICROSECONDS.toNanos(250), TimeUnit.MICROSECONDS.toNanos(500),
+            TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(2), TimeUnit.MILLISECONDS.toNanos(5),
+            TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(25), TimeUnit.MILLISECONDS.toNanos(50),
+            TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(250), TimeUnit.MILLISECONDS.toNanos(500),
+            TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(2), TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(10)
+    };
+
+    private final String instance;
+    private final int instanceId;
+    private final LongAdder[] counts = new LongAdder[OpType.values().length];
+    private final LongAdder[] latencySums = new LongAdder[OpType.values().length];
+    private final LongAdder[][] buckets = new LongAdder[OpType.values().length][BUCKET_BOUNDS.length + 1];
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final AtomicReferenceArray<LatencyStats> latencies = new AtomicReferenceArray<>(OpType.values().length);
+    private final Map<String, MemberStats> members = new ConcurrentHashMap<>();
+    private volatile float targetRate = 0f;
+
+    /**
+     * @param instance   the name of the instance, see {@link ClientFactory#getInstanceName(BenchConfig, int)}
+     * @param instanceId the id of the instance, see {@link BenchConfig#getInstances()}
+     */
+    public PortStats(String instance, int instanceId) {
+        this.instance = instance;
+        this.instanceId = instanceId;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+            latencySums[i] = new LongAdder();
+            for (int j = 0; j < buckets[i].length; j++) {
+                buckets[i][j] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Count a finished operation
+     *
+     * @param latency the latency in nanoseconds
+     */
+    public void record(OpType type, long latency) {
+        final int idx = type.ordinal();
+        counts[idx].increment();
+        latencySums[idx].add(latency);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && latency > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets[idx][bucket].increment();
+        LatencyStats stats = latencies.get(idx);
+        if (stats == null) {
+            latencies.compareAndSet(idx, null, new LatencyStats());
+            stats = latencies.get(idx);
+        }
+        stats.record(latency);
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordError() {
+        errors.increment();
+    }
+
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    public void recordReconnect() {
+        reconnects.increment();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        getMember(event.getConnectionDescription().getServerAddress().toString()).record(event.getElapsedTime(TimeUnit.NANOSECONDS), false);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        getMember(event.getConnectionDescription().getServerAddress().toString()).record(event.getElapsedTime(TimeUnit.NANOSECONDS), true);
+    }
+
+    private MemberStats getMember(String address) {
+        final MemberStats stats = members.get(address);
+        return stats != null ? stats : members.computeIfAbsent(address, MemberStats::new);
+    }
+
+    /**
+     * @return the statistics of the members which executed commands, by address. Empty unless the instance is given
+     * by a connection string
+     */
+    public Map<String, MemberStats> getMembers() {
+        return Collections.unmodifiableMap(members);
+    }
+
+    /**
+     * @return the name of the instance, host:port for instances given by a port
+     */
+    public String getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the id of the instance, see {@link BenchConfig#getInstances()}
+     */
+    public int getInstanceId() {
+        return instanceId;
+    }
+
+    public long getCount(OpType type) {
+        return counts[type.ordinal()].sum();
+    }
+
+    /**
+     * @return the sum of the latencies of all operations of the given type in nanoseconds
+     */
+    public long getLatencySum(OpType type) {
+        return latencySums[type.ordinal()].sum();
+    }
+
+    /**
+     * @return the number of operations per bucket. The last bucket holds the operations slower than the largest bound
+     */
+    public long[] getBucketCounts(OpType type) {
+        final LongAdder[] opBuckets = buckets[type.ordinal()];
+        final long[] values = new long[opBuckets.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = opBuckets[i].sum();
+        }
+        return values;
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * @return the requests per second the scheduler aims to send to the instance, 0 if the rate is not limited
+     */
+    public float getTargetRate() {
+        return targetRate;
+    }
+
+    public void setTargetRate(float targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    /**
+     * @return the latencies of the given operation type recorded in the measurement window, null if no operation of
+     * this type has been sent to the instance
+     */
+    public LatencyStats getLatencies(OpType type) {
+        return latencies.get(type.ordinal());
+    }
+
+    /**
+     * @return the latencies of all operation types recorded in the measurement window
+     */
+    public Histogram collectLatencies() {
+        final Histogram merged = LatencyStats.createHistogram();
+        for (int i = 0; i < latencies.length(); i++) {
+            final LatencyStats stats = latencies.get(i);
+            if (stats != null) {
+                merged.add(stats.collect());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Start a new measurement window by discarding the latency distributions recorded so far
+     */
+    public void resetLatencies() {
+        for (int i = 0; i < latencies.length(); i++) {
+            final LatencyStats stats = latencies.get(i);
+            if (stats != null) {
+                stats.reset();
+            }
+        }
+        for (final MemberStats member : members.values()) {
+            member.latencies.reset();
+        }
+    }
+
+    /**
+     * Add the latencies of the given operation type recorded since the last call to the given histogram
+     *
+     * @return false if no operation of this type has been sent to the instance yet
+     */
+    public boolean collectInterval(OpType type, Histogram target) {
+        final LatencyStats stats = latencies.get(type.ordinal());
+        if (stats == null) {
+            return false;
+        }
+        stats.collectInterval(target);
+        return true;
+    }
+
+    /**
+     * The commands executed by a single member of a replica set or router of a sharded cluster. The latencies are
+     * the round trip times of the single commands as measured by the driver
+     */
+    public static final class MemberStats {
+        private final String address;
+        private final LongAdder commands = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyStats latencies = new LatencyStats();
+
+        private MemberStats(String address) {
+            this.address = address;
+        }
+
+        private void record(long latency, boolean failed) {
+            commands.increment();
+            if (failed) {
+                failures.increment();
+            } else {
+                latencies.record(latency);
+            }
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public long getCommands() {
+            return commands.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return a copy of the latencies of the successful commands recorded in the measurement window
+         */
+        public Histogram collectLatencies() {
+            return latencies.collect().copy();
+        }
+    }
+}
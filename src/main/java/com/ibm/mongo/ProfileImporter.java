@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.json.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Converts exports of the database profiler into a trace for the replay phase.
+ * <p>
+ * Every export holds the entries of the <code>system.profile</code> collections of a single instance as written by
+ * <code>mongoexport</code>, one JSON document per line, sorted by their <code>ts</code> field. The exports are merged
+ * by time and every database of every export becomes a tenant, numbered in the order of their first request, which
+ * the replay maps onto the instances of the run.
+ * <p>
+ * Queries, inserts, updates, removes and the count, aggregate, find and findAndModify commands are mapped to the
+ * closest {@link OpType}. The _id of the filter becomes the key of the request modulo the configured number of
+ * documents if it is a number, other filters are hashed into the configured number of documents. All other entries,
+ * e.g. getMores and administrative commands, are skipped.
+ */
+public class ProfileImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(ProfileImporter.class);
+
+    private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000");
+
+    /**
+     * Dates in ISO format, which the JSON parser of the driver cannot read without JAXB on current Java runtimes
+     */
+    private static final Pattern ISO_DATE = Pattern.compile("\"\\$date\"\\s*:\\s*\"([^\"]+)\"");
+
+    private static final DateTimeFormatter ISO_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss[.SSS][XXX][XX]");
+
+    private static final BsonString EMPTY = new BsonString("");
+
+    private static final Set<String> SYSTEM_DATABASES = new HashSet<>(Arrays.asList("admin", "local", "config"));
+
+    private final int numDocuments;
+    private final Map<String, Integer> tenants = new LinkedHashMap<>();
+    private long numSkipped = 0;
+    private long numUnordered = 0;
+
+    public ProfileImporter(BenchConfig config) {
+        this.numDocuments = Math.max(config.getNumDocuments(), 1);
+    }
+
+    /**
+     * Convert the given exports into a single trace
+     *
+     * @param exports   the exports, one per instance
+     * @param traceFile the trace to write
+     */
+    public void importAll(String[] exports, String traceFile) throws IOException {
+        final PriorityQueue<Export> pending = new PriorityQueue<>((a, b) -> Long.compare(a.millis, b.millis));
+        final List<Export> opened = new ArrayList<>();
+        try {
+            for (int i = 0; i < exports.length; i++) {
+                final Export export = new Export(i, exports[i]);
+                opened.add(export);
+                if (export.advance()) {
+                    pending.add(export);
+                }
+            }
+            if (pending.isEmpty()) {
+                throw new IOException("No requests found in the profiler exports");
+            }
+            final long startMillis = pending.peek().millis;
+            long lastMillis = startMillis;
+            long numRequests = 0;
+            try (final TraceWriter writer = new TraceWriter(traceFile, startMillis)) {
+                while (!pending.isEmpty()) {
+                    final Export export = pending.poll();
+                    writer.write((export.millis - startMillis) * 1000000L, export.type, export.tenant, export.key,
+                            export.payloadSize, export.numDocuments);
+                    lastMillis = Math.max(lastMillis, export.millis);
+                    numRequests++;
+                    if (export.advance()) {
+                        pending.add(export);
+                    }
+                }
+            }
+            log.info("Imported {} requests of {} tenants spanning {} secs into {}", numRequests, tenants.size(),
+                    decimalFormat.format((lastMillis - startMillis) / 1000f), traceFile);
+            if (numSkipped > 0) {
+                log.info("Skipped {} entries which are not requests of a supported type", numSkipped);
+            }
+            if (numUnordered > 0) {
+                log.warn("{} entries were not sorted by time, export the profiler collections sorted by ts", numUnordered);
+            }
+        } finally {
+            for (final Export export : opened) {
+                export.close();
+            }
+        }
+    }
+
+    private static long parseTime(BsonValue ts) {
+        if (ts != null && ts.isDateTime()) {
+            return ts.asDateTime().getValue();
+        }
+        return -1L;
+    }
+
+    private static String replaceIsoDates(String line) {
+        if (line.indexOf("\"$date\"") < 0) {
+            return line;
+        }
+        final Matcher matcher = ISO_DATE.matcher(line);
+        final StringBuffer replaced = new StringBuffer();
+        while (matcher.find()) {
+            try {
+                final long millis = OffsetDateTime.parse(matcher.group(1), ISO_FORMAT).toInstant().toEpochMilli();
+                matcher.appendReplacement(replaced, "\"\\$date\": " + millis);
+            } catch (DateTimeParseException e) {
+                matcher.appendReplacement(replaced, Matcher.quoteReplacement(matcher.group()));
+            }
+        }
+        matcher.appendTail(replaced);
+        return replaced.toString();
+    }
+
+    /**
+     * @return the filter of a query, update, remove or command
+     */
+    private static BsonDocument getFilter(BsonDocument command) {
+        for (final String field : new String[]{"filter", "q", "query"}) {
+            if (command.isDocument(field)) {
+                return command.getDocument(field);
+            }
+        }
+        if (command.isDocument("$query")) {
+            return command.getDocument("$query");
+        }
+        return command;
+    }
+
+    private static OpType getQueryType(BsonDocument command, BsonDocument filter) {
+        final BsonValue id = filter.get("_id");
+        if (id != null && !id.isDocument()) {
+            return OpType.READ;
+        }
+        if (id != null && (id.asDocument().containsKey("$gt") || id.asDocument().containsKey("$gte"))) {
+            return OpType.SCAN;
+        }
+        if (command.isDocument("sort") && !command.getDocument("sort").isEmpty()) {
+            return OpType.SORT;
+        }
+        if (command.isDocument("projection") && !command.getDocument("projection").isEmpty()) {
+            return OpType.PROJECTION;
+        }
+        return OpType.QUERY;
+    }
+
+    private int getKey(BsonDocument filter) {
+        BsonValue id = filter.get("_id");
+        if (id != null && id.isDocument() && !id.asDocument().isEmpty()) {
+            id = id.asDocument().values().iterator().next();
+        }
+        if (id != null && id.isNumber()) {
+            // numeric ids are kept where possible, but must address a document of the benchmark collection
+            return (int) Math.floorMod(id.asNumber().longValue(), (long) numDocuments);
+        }
+        return Math.floorMod((id != null ? id : filter).hashCode(), numDocuments);
+    }
+
+    private static int getSize(BsonValue value) {
+        if (value == null || !value.isDocument()) {
+            return 0;
+        }
+        return PayloadCache.encode(value.asDocument()).getByteBuffer().remaining();
+    }
+
+    /**
+     * A single export and its next request
+     */
+    private final class Export implements Closeable {
+        private final int index;
+        private final String fileName;
+        private final BufferedReader reader;
+        private long lineNumber = 0;
+        private long millis = -1L;
+        private OpType type;
+        private int tenant;
+        private int key;
+        private int payloadSize;
+        private int numDocuments;
+
+        private Export(int index, String fileName) throws IOException {
+            this.index = index;
+            this.fileName = fileName;
+            this.reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Read up to the next entry which is a request
+         *
+         * @return false at the end of the export
+         */
+        private boolean advance() throws IOException {
+            final long previous = millis;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final BsonDocument entry;
+                try {
+                    entry = BsonDocument.parse(replaceIsoDates(line));
+                } catch (JsonParseException | IllegalArgumentException e) {
+                    log.debug("Skipping invalid line {} of {}", lineNumber, fileName, e);
+                    numSkipped++;
+                    continue;
+                }
+                if (parse(entry)) {
+                    if (millis < previous) {
+                        numUnordered++;
+                    }
+                    return true;
+                }
+                numSkipped++;
+            }
+            return false;
+        }
+
+        private boolean parse(BsonDocument entry) {
+            millis = parseTime(entry.get("ts"));
+            final String ns = entry.getString("ns", EMPTY).getValue();
+            final int dot = ns.indexOf('.');
+            final String database = dot < 0 ? ns : ns.substring(0, dot);
+            if (millis < 0 || database.isEmpty() || SYSTEM_DATABASES.contains(database)) {
+                return false;
+            }
+            final BsonDocument command = entry.isDocument("command") ? entry.getDocument("command")
+                    : entry.isDocument("query") ? entry.getDocument("query") : new BsonDocument();
+            final BsonDocument filter = getFilter(command);
+            payloadSize = 0;
+            numDocuments = 1;
+            switch (entry.getString("op", EMPTY).getValue()) {
+                case "query":
+                    type = getQueryType(command, filter);
+                    break;
+                case "insert":
+                    type = OpType.INSERT;
+                    if (command.isArray("documents") && !command.getArray("documents").isEmpty()) {
+                        numDocuments = command.getArray("documents").size();
+                        payloadSize = getSize(command.getArray("documents").get(0));
+                    } else if (entry.isNumber("ninserted")) {
+                        numDocuments = Math.max(entry.getNumber("ninserted").intValue(), 1);
+                    }
+                    break;
+                case "update":
+                    type = command.getBoolean("upsert", BsonBoolean.FALSE).getValue()
+                            || entry.getBoolean("upsert", BsonBoolean.FALSE).getValue() ? OpType.UPSERT : OpType.UPDATE;
+                    payloadSize = getSize(command.containsKey("u") ? command.get("u") : entry.get("updateobj"));
+                    break;
+                case "remove":
+                case "delete":
+                    type = OpType.DELETE;
+                    break;
+                case "command":
+                    final String name = command.isEmpty() ? "" : command.keySet().iterator().next().toLowerCase(Locale.ROOT);
+                    if (name.equals("count")) {
+                        type = OpType.COUNT;
+                    } else if (name.equals("aggregate")) {
+                        type = OpType.AGGREGATE;
+                    } else if (name.equals("find")) {
+                        type = getQueryType(command, filter);
+                    } else if (name.equals("findandmodify")) {
+                        type = OpType.READ_MODIFY_WRITE;
+                        payloadSize = getSize(command.get("update"));
+                    } else {
+                        return false;
+                    }
+                    break;
+                default:
+                    return false;
+            }
+            key = getKey(filter);
+            final String tenantName = index + "/" + database;
+            Integer id = tenants.get(tenantName);
+            if (id == null) {
+                id = tenants.size();
+                tenants.put(tenantName, id);
+            }
+            tenant = id;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The write concern, read preference and read concern of the run phase requests and how inserts are batched. Options
+ * which are not configured keep the defaults of the driver and the server.
+ */
+public class RequestOptions {
+
+    private final WriteConcern writeConcern;
+    private final ReadPreference readPreference;
+    private final ReadConcern readConcern;
+    private final int insertBatch;
+    private final InsertManyOptions insertManyOptions;
+
+    public RequestOptions(WriteConcern writeConcern, ReadPreference readPreference, ReadConcern readConcern, int insertBatch, boolean orderedInserts) {
+        this.writeConcern = writeConcern;
+        this.readPreference = readPreference;
+        this.readConcern = readConcern;
+        this.insertBatch = insertBatch;
+        this.insertManyOptions = new InsertManyOptions().ordered(orderedInserts);
+    }
+
+    /**
+     * @throws IllegalArgumentException if one of the options is invalid
+     */
+    public static RequestOptions create(BenchConfig config) {
+        return new RequestOptions(parseWriteConcern(config.getWriteConcern()),
+                config.getReadPreference() == null ? null : ReadPreference.valueOf(config.getReadPreference()),
+                config.getReadConcern() == null ? null : new ReadConcern(ReadConcernLevel.fromString(config.getReadConcern())),
+                config.getInsertBatch(), config.isOrderedInserts());
+    }
+
+    /**
+     * Parse a write concern given as comma separated <code>w=&lt;n|majority|tag&gt;</code>, <code>j=&lt;true|false&gt;</code>
+     * and <code>wtimeout=&lt;ms&gt;</code>. A value without a key is the w option
+     *
+     * @return the write concern, null if none is given
+     */
+    public static WriteConcern parseWriteConcern(String spec) {
+        if (spec == null) {
+            return null;
+        }
+        WriteConcern writeConcern = WriteConcern.ACKNOWLEDGED;
+        for (final String option : spec.split(",")) {
+            final int equalsIdx = option.indexOf('=');
+            final String key = equalsIdx == -1 ? "w" : option.substring(0, equalsIdx).trim().toLowerCase();
+            final String value = option.substring(equalsIdx + 1).trim();
+            switch (key) {
+                case "w":
+                    if (value.matches("\\d+")) {
+                        writeConcern = writeConcern.withW(Integer.parseInt(value));
+                    } else {
+                        writeConcern = writeConcern.withW(value);
+                    }
+                    break;
+                case "j":
+                    writeConcern = writeConcern.withJournal(Boolean.parseBoolean(value));
+                    break;
+                case "wtimeout":
+                    writeConcern = writeConcern.withWTimeout(Long.parseLong(value), TimeUnit.MILLISECONDS);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown write concern option " + key);
+            }
+        }
+        return writeConcern;
+    }
+
+    public <T> MongoCollection<T> apply(MongoCollection<T> collection) {
+        MongoCollection<T> configured = collection;
+        if (writeConcern != null) {
+            configured = configured.withWriteConcern(writeConcern);
+        }
+        if (readPreference != null) {
+            configured = configured.withReadPreference(readPreference);
+        }
+        if (readConcern != null) {
+            configured = configured.withReadConcern(readConcern);
+        }
+        return configured;
+    }
+
+    public <T> com.mongodb.async.client.MongoCollection<T> apply(com.mongodb.async.client.MongoCollection<T> collection) {
+        com.mongodb.async.client.MongoCollection<T> configured = collection;
+        if (writeConcern != null) {
+            configured = configured.withWriteConcern(writeConcern);
+        }
+        if (readPreference != null) {
+            configured = configured.withReadPreference(readPreference);
+        }
+        if (readConcern != null) {
+            configured = configured.withReadConcern(readConcern);
+        }
+        return configured;
+    }
+
+    /**
+     * @return the number of documents inserted by a single insert operation
+     */
+    public int getInsertBatch() {
+        return insertBatch;
+    }
+
+    public InsertManyOptions getInsertManyOptions() {
+        return insertManyOptions;
+    }
+
+    @Override
+    public String toString() {
+        return "write concern " + (writeConcern == null ? "default" : writeConcern.asDocument().toJson())
+                + ", read preference " + (readPreference == null ? "default" : readPreference.getName())
+                + ", read concern " + (readConcern == null ? "default" : readConcern.asDocument().toJson())
+                + ", " + insertBatch + " documents per insert";
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+/**
+ * Drives the run phase, either locally or distributed over several agent processes
+ */
+public interface RunController {
+
+    /**
+     * Start the workers and wait until all of them are connected and sending requests
+     */
+    void start();
+
+    /**
+     * Discard the statistics of the warmup and start the measurement window
+     */
+    void startMeasurement();
+
+    /**
+     * @return the statistics of the measurement window so far
+     */
+    RunResult collect();
+
+    /**
+     * Stop the workers and wait for them to finish
+     *
+     * @return the statistics of the whole measurement window
+     */
+    RunResult stop();
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import com.mongodb.MongoClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Runs the run phase workers for all configured instances in the current process
+ */
+public class RunEngine implements RunController {
+
+    private static final Logger log = LoggerFactory.getLogger(RunEngine.class);
+
+    private final BenchConfig config;
+    private final Map<AbstractRunThread, Thread> threads = new HashMap<>();
+    private MetricsRegistry metrics;
+    private MetricsServer metricsServer;
+    private IntervalWriter intervalWriter;
+    private ServerStatusSampler sampler;
+    private HiccupMeter hiccups;
+    private PortScheduler<?> scheduler;
+    private TraceReader trace;
+    private TraceRecorder traceRecorder;
+    private LatencyRecorder latencyRecorder;
+    private volatile long start;
+
+    /**
+     * @throws IllegalStateException if the virtual execution mode is configured but virtual threads are not supported by
+     *                               the runtime
+     */
+    public RunEngine(BenchConfig config) {
+        if (config.getExecutionMode() == BenchConfig.ExecutionMode.VIRTUAL) {
+            VirtualThreads.checkSupported();
+        }
+        this.config = config;
+    }
+
+    @Override
+    public void start() {
+        final int[] ports = config.getInstances();
+        final Workload workload = Workload.create(config);
+        log.info("Running workload {} with {} key distribution", workload.getMix(), config.getKeyDistribution());
+        log.info("Sending requests with {}", RequestOptions.create(config));
+        metrics = new MetricsRegistry(config);
+        hiccups = new HiccupMeter(config.getIntervalPeriod() * 1000L, config.getStallThreshold());
+        hiccups.start();
+        if (config.getMetricsPort() > 0) {
+            try {
+                metricsServer = new MetricsServer(metrics, config.getMetricsBind(), config.getMetricsPort());
+                metricsServer.start();
+            } catch (IOException e) {
+                log.error("Unable to start metrics server on port {}", config.getMetricsPort(), e);
+            }
+        }
+        if (config.getTraceFile() != null) {
+            try {
+                trace = new TraceReader(config.getTraceFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        final BenchConfig.ExecutionMode mode = config.getExecutionMode();
+        final int numThreads;
+        final int totalConcurrency;
+        if (mode == BenchConfig.ExecutionMode.VIRTUAL) {
+            // the threads are not bound to an instance, the scheduler caps the requests in flight per instance instead
+            numThreads = ports.length * config.getConnectionsPerPort();
+            totalConcurrency = numThreads;
+        } else if (mode == BenchConfig.ExecutionMode.ASYNC) {
+            numThreads = config.getNumThreads();
+            totalConcurrency = numThreads * config.getInFlight();
+        } else {
+            numThreads = config.getNumThreads();
+            totalConcurrency = numThreads;
+        }
+        // a replayed trace may send most of its requests to a few instances, so these are not limited by default
+        int concurrency = trace != null ? totalConcurrency : (totalConcurrency + ports.length - 1) / ports.length;
+        if (config.getPortConcurrency() > 0) {
+            concurrency = config.getPortConcurrency();
+        }
+        final int maxConnections = concurrency;
+        if (mode == BenchConfig.ExecutionMode.ASYNC) {
+            final PortScheduler<com.mongodb.async.client.MongoClient> asyncScheduler = createScheduler(concurrency,
+                    port -> ClientFactory.createAsyncClient(config, port, maxConnections, metrics.getPortStats(port)),
+                    com.mongodb.async.client.MongoClient::close);
+            scheduler = asyncScheduler;
+            for (int i = 0; i < numThreads; i++) {
+                final AsyncRunThread t = new AsyncRunThread(config, workload, asyncScheduler);
+                threads.put(t, new Thread(t));
+            }
+        } else {
+            final PortScheduler<MongoClient> syncScheduler = createScheduler(concurrency,
+                    port -> ClientFactory.createClient(config, port, maxConnections, metrics.getPortStats(port)), MongoClient::close);
+            scheduler = syncScheduler;
+            for (int i = 0; i < numThreads; i++) {
+                final RunThread t = new RunThread(config, workload, syncScheduler);
+                threads.put(t, mode == BenchConfig.ExecutionMode.VIRTUAL ? VirtualThreads.newThread(t) : new Thread(t));
+            }
+        }
+        if (config.getLatencyFilePrefix() != null) {
+            try {
+                // the id of the first worker keeps the files of consecutive runs with the same prefix apart
+                latencyRecorder = new LatencyRecorder(config.getLatencyFilePrefix(), threads.values().iterator().next().getId());
+                for (final AbstractRunThread t : threads.keySet()) {
+                    t.setLatencyRecorder(latencyRecorder);
+                }
+            } catch (IOException e) {
+                log.error("Unable to open latency file", e);
+            }
+        }
+        if (config.getRecordTrace() != null) {
+            traceRecorder = new TraceRecorder(config.getRecordTrace());
+            try {
+                for (final AbstractRunThread t : threads.keySet()) {
+                    t.setTracePart(traceRecorder.createPart());
+                }
+            } catch (IOException e) {
+                log.error("Unable to open trace {}", config.getRecordTrace(), e);
+            }
+        }
+        log.info("Starting {} {} threads for {} instances", numThreads, mode == BenchConfig.ExecutionMode.VIRTUAL ? "virtual" : "client", ports.length);
+        for (final Thread t : threads.values()) {
+            t.start();
+        }
+
+        for (final AbstractRunThread r : threads.keySet()) {
+            while (!r.isInitialized()) {
+                Thread.yield();
+            }
+        }
+        log.info("Client threads have been initialized");
+        // the schedules start once all threads are ready, so open loop runs do not begin with a backlog. A trace is
+        // replayed from the start of the measurement, so none of its requests are discarded by the reset
+        if (trace == null) {
+            scheduler.start();
+        }
+        start = System.currentTimeMillis();
+        if (config.getServerStatusPeriod() > 0) {
+            sampler = new ServerStatusSampler(config, config.getServerStatusPeriod() * 1000L);
+            sampler.start();
+        }
+        if (config.getIntervalOutput() != null) {
+            try {
+                intervalWriter = new IntervalWriter(metrics, config.getIntervalOutput(), config.getIntervalPeriod() * 1000L, sampler, hiccups);
+                intervalWriter.start();
+            } catch (IOException e) {
+                log.error("Unable to open interval output {}", config.getIntervalOutput(), e);
+            }
+        }
+    }
+
+    private <C> PortScheduler<C> createScheduler(int concurrency, IntFunction<C> connector, Consumer<C> closer) {
+        if (trace != null) {
+            return new TraceScheduler<>(config, metrics, concurrency, connector, closer, trace);
+        }
+        return new PortScheduler<>(config, metrics, concurrency, connector, closer);
+    }
+
+    @Override
+    public void startMeasurement() {
+        for (AbstractRunThread r : threads.keySet()) {
+            r.resetData();
+        }
+        metrics.resetLatencies();
+        hiccups.startMeasurement();
+        if (intervalWriter != null) {
+            intervalWriter.startMeasurement();
+        }
+        if (trace != null) {
+            scheduler.start();
+        }
+        start = System.currentTimeMillis();
+    }
+
+    @Override
+    public RunResult collect() {
+        return RunResult.collect(threads.keySet(), metrics, hiccups, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public RunResult stop() {
+        for (AbstractRunThread r : threads.keySet()) {
+            r.stop();
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+        for (Thread t : threads.values()) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                log.error("Unable to join thread", e);
+            }
+        }
+        scheduler.close();
+        if (latencyRecorder != null) {
+            latencyRecorder.close();
+        }
+        if (traceRecorder != null) {
+            try {
+                traceRecorder.close();
+            } catch (IOException e) {
+                log.error("Unable to write trace {}", config.getRecordTrace(), e);
+            }
+        }
+        if (intervalWriter != null) {
+            try {
+                intervalWriter.close();
+            } catch (IOException e) {
+                log.error("Unable to write interval output", e);
+            }
+        }
+        if (sampler != null) {
+            sampler.close();
+        }
+        hiccups.close();
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        return RunResult.collect(threads.keySet(), metrics, hiccups, elapsed);
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the statistics of the measurement window of a run. Results of several processes can be merged
+ * without losing precision, since the full latency histograms are kept instead of percentiles.
+ */
+public class RunResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long duration;
+    private boolean openLoop;
+    private int numThreads;
+    private float threadRateSum;
+    private long misses;
+    private final long[] counts = new long[OpType.values().length];
+    private final long[] documents = new long[OpType.values().length];
+    private final Histogram[] latencies = new Histogram[OpType.values().length];
+    private final Histogram[] serviceTimes = new Histogram[OpType.values().length];
+    private final Map<String, InstanceResult> instances = new LinkedHashMap<>();
+    private final Histogram stalls = LatencyStats.createHistogram();
+    private final Histogram gcPauses = LatencyStats.createHistogram();
+    private final List<HiccupMeter.StallWindow> stalledWindows = new ArrayList<>();
+
+    public RunResult(long duration) {
+        this.duration = duration;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = LatencyStats.createHistogram();
+            serviceTimes[i] = LatencyStats.createHistogram();
+        }
+    }
+
+    /**
+     * Collect the statistics of the given threads and instances
+     *
+     * @param hiccups  the stalls of the process, may be null
+     * @param duration the length of the measurement window so far in milliseconds
+     */
+    public static RunResult collect(Collection<AbstractRunThread> threads, MetricsRegistry metrics, HiccupMeter hiccups, long duration) {
+        final RunResult result = new RunResult(duration);
+        for (final AbstractRunThread r : threads) {
+            for (final OpType type : OpType.values()) {
+                result.counts[type.ordinal()] += r.getCount(type);
+                result.documents[type.ordinal()] += r.getDocuments(type);
+                result.latencies[type.ordinal()].add(r.getLatencies(type).collect());
+                result.serviceTimes[type.ordinal()].add(r.getServiceTimes(type).collect());
+            }
+            result.misses += r.getMisses();
+            result.openLoop |= r.isOpenLoop();
+            result.threadRateSum += r.getRate();
+            result.numThreads++;
+        }
+        for (final PortStats stats : metrics.getAll()) {
+            result.instances.put(stats.getInstance(), new InstanceResult(stats));
+        }
+        if (hiccups != null) {
+            result.stalls.add(hiccups.collectStalls());
+            result.gcPauses.add(hiccups.collectGcPauses());
+            result.stalledWindows.addAll(hiccups.getStalledWindows());
+        }
+        return result;
+    }
+
+    /**
+     * Merge the result of another process running concurrently into this one
+     */
+    public void add(RunResult other) {
+        duration = Math.max(duration, other.duration);
+        openLoop |= other.openLoop;
+        numThreads += other.numThreads;
+        threadRateSum += other.threadRateSum;
+        misses += other.misses;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+            documents[i] += other.documents[i];
+            latencies[i].add(other.latencies[i]);
+            serviceTimes[i].add(other.serviceTimes[i]);
+        }
+        for (final InstanceResult instance : other.instances.values()) {
+            final InstanceResult existing = instances.get(instance.name);
+            if (existing == null) {
+                instances.put(instance.name, instance);
+            } else {
+                existing.add(instance);
+            }
+        }
+        stalls.add(other.stalls);
+        gcPauses.add(other.gcPauses);
+        stalledWindows.addAll(other.stalledWindows);
+        stalledWindows.sort((a, b) -> Long.compare(a.getTimestamp(), b.getTimestamp()));
+    }
+
+    /**
+     * @return the length of the measurement window in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public boolean isOpenLoop() {
+        return openLoop;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @return the sum of the request rates of all threads
+     */
+    public float getThreadRateSum() {
+        return threadRateSum;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getCount(OpType type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * @return the number of documents of the operations of the given type
+     */
+    public long getDocuments(OpType type) {
+        return documents[type.ordinal()];
+    }
+
+    public long getNumOperations() {
+        long sum = 0;
+        for (final long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    public Histogram getLatencies(OpType type) {
+        return latencies[type.ordinal()];
+    }
+
+    /**
+     * @return the latencies measured from the actual start of the operations. Only recorded in open loop mode
+     */
+    public Histogram getServiceTimes(OpType type) {
+        return serviceTimes[type.ordinal()];
+    }
+
+    /**
+     * @return the stalls of the benchmark processes in the measurement window, see {@link HiccupMeter}
+     */
+    public Histogram getStalls() {
+        return stalls;
+    }
+
+    /**
+     * @return the garbage collection pauses of the benchmark processes in the measurement window
+     */
+    public Histogram getGcPauses() {
+        return gcPauses;
+    }
+
+    /**
+     * @return the time windows of the measurement window in which a benchmark process stalled for longer than the
+     * threshold, ordered by time
+     */
+    public List<HiccupMeter.StallWindow> getStalledWindows() {
+        return stalledWindows;
+    }
+
+    public Collection<InstanceResult> getInstances() {
+        return instances.values();
+    }
+
+    /**
+     * The latencies and error counts of a single instance
+     */
+    public static class InstanceResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final Histogram latencies;
+        private long misses;
+        private long errors;
+        private long timeouts;
+        private long reconnects;
+        private float targetRate;
+        private final Map<String, MemberResult> members = new LinkedHashMap<>();
+
+        private InstanceResult(PortStats stats) {
+            this.name = stats.getInstance();
+            this.latencies = stats.collectLatencies();
+            this.misses = stats.getMisses();
+            this.errors = stats.getErrors();
+            this.timeouts = stats.getTimeouts();
+            this.reconnects = stats.getReconnects();
+            this.targetRate = stats.getTargetRate();
+            for (final PortStats.MemberStats member : stats.getMembers().values()) {
+                members.put(member.getAddress(), new MemberResult(member));
+            }
+        }
+
+        private void add(InstanceResult other) {
+            latencies.add(other.latencies);
+            misses += other.misses;
+            errors += other.errors;
+            timeouts += other.timeouts;
+            reconnects += other.reconnects;
+            targetRate += other.targetRate;
+            for (final MemberResult member : other.members.values()) {
+                final MemberResult existing = members.get(member.address);
+                if (existing == null) {
+                    members.put(member.address, member);
+                } else {
+                    existing.add(member);
+                }
+            }
+        }
+
+        /**
+         * @return the name of the instance, see {@link ClientFactory#getInstanceName(BenchConfig, int)}
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the latencies of all operation types in the measurement window
+         */
+        public Histogram getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * @return the number of operations which did not find their document since the start of the run
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of failed operations since the start of the run
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return the number of timeouts since the start of the run
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getReconnects() {
+            return reconnects;
+        }
+
+        /**
+         * @return the requests per second the instance should have been sent, summed over all agents, 0 if the rate
+         * is not limited
+         */
+        public float getTargetRate() {
+            return targetRate;
+        }
+
+        /**
+         * @return the members of a replica set or routers of a sharded cluster which executed commands, empty unless
+         * the instance is given by a connection string
+         */
+        public Collection<MemberResult> getMembers() {
+            return members.values();
+        }
+    }
+
+    /**
+     * The commands executed by a single member of an instance given by a connection string
+     */
+    public static class MemberResult implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String address;
+        private final Histogram latencies;
+        private long commands;
+        private long failures;
+
+        private MemberResult(PortStats.MemberStats stats) {
+            this.address = stats.getAddress();
+            this.latencies = stats.collectLatencies();
+            this.commands = stats.getCommands();
+            this.failures = stats.getFailures();
+        }
+
+        private void add(MemberResult other) {
+            latencies.add(other.latencies);
+            commands += other.commands;
+            failures += other.failures;
+        }
+
+        /**
+         * @return the address of the member as host:port
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return the round trip times of the successful commands in the measurement window
+         */
+        public Histogram getLatencies() {
+            return latencies;
+        }
+
+        /**
+         * @return the number of commands since the start of the run
+         */
+        public long getCommands() {
+            return commands;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+    }
+}
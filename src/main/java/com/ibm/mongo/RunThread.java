@@ -18,261 +18,182 @@
 package com.ibm.mongo;
 
 import com.mongodb.*;
-import org.apache.commons.lang.RandomStringUtils;
-import org.bson.Document;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.RawBsonDocument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
 
-public class RunThread implements Runnable {
+/**
+ * A run phase worker using the synchronous driver. The worker sends one request at a time to the next ready instance
+ * of the shared {@link PortScheduler}.
+ */
+public class RunThread extends AbstractRunThread {
     private static final Logger log = LoggerFactory.getLogger(RunThread.class);
-    private AtomicBoolean stop = new AtomicBoolean(false);
-    private float targetRatio = 0.9f;
-    private float currentRatio = 0f;
-    private int numInserts = 0;
-    private int numReads = 0;
-    private final String host;
-    private final List<Integer> ports;
-    private String data = RandomStringUtils.randomAlphabetic(1024);
-    private final Document[] toRead = new Document[9];
-    private int readIndex = 0;
-    private long maxReadlatency = 0;
-    private long minReadLatency = Long.MAX_VALUE;
-    private long maxWriteLatency = 0;
-    private long minWriteLatency = Long.MAX_VALUE;
-    private float accReadLatencies = 0;
-    private float accWriteLatencies = 0;
-    private AtomicBoolean initialized = new AtomicBoolean(false);
-    private final float targetRate;
-    private long startMillis;
-    private long elapsed = 0l;
-    private FileOutputStream readLatencySink;
-    private FileOutputStream insertLatencySink;
-    private String lineSeparator = System.getProperty("line.separator");
-    private String prefixLatencyFile;
-    private int timeoutMs;
-    private final boolean sslEnabled;
+    private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+    private final Random random = new Random();
+    private final RequestOptions requestOptions;
 
-    public RunThread(String host, List<Integer> ports, float targetRate, String prefixLatencyFile, int timeout, boolean sslEnabled) {
-        this.host = host;
-        this.ports = ports;
-        this.targetRate = targetRate;
-        for (int i = 0; i < 9; i++) {
-            toRead[i] = new Document("_id", i);
-        }
-        this.prefixLatencyFile = prefixLatencyFile;
-        this.timeoutMs = timeout * 1000;
-        this.sslEnabled = sslEnabled;
+    private final PortScheduler<MongoClient> scheduler;
+
+    public RunThread(BenchConfig config, Workload workload, PortScheduler<MongoClient> scheduler) {
+        super(config, workload);
+        this.requestOptions = RequestOptions.create(config);
+        this.scheduler = scheduler;
     }
 
     @Override
     public void run() {
-        int portsLen = ports.size();
-        final MongoClient[] clients = new MongoClient[portsLen];
-        log.info("Opening {} connections", portsLen);
-        for (int i = 0; i < portsLen; i++) {
-            final MongoClientOptions ops = MongoClientOptions.builder()
-                    .maxWaitTime(timeoutMs)
-                    .connectTimeout(timeoutMs)
-                    .socketTimeout(timeoutMs)
-                    .heartbeatConnectTimeout(timeoutMs)
-                    .serverSelectionTimeout(timeoutMs)
-                    .sslEnabled(sslEnabled)
-                    .build();
-            clients[i] = new MongoClient(new ServerAddress(host, ports.get(i)), ops);
-        }
-
-        if (prefixLatencyFile != null) {
-            try {
-                readLatencySink = new FileOutputStream(prefixLatencyFile + "_read_" + Thread.currentThread().getId());
-                insertLatencySink = new FileOutputStream(prefixLatencyFile + "_insert_" + Thread.currentThread().getId());
-            } catch (IOException e) {
-                log.error("Unable to open latency file", e);
-            }
-        }
+        final List<PortScheduler.Slot<MongoClient>> slots = scheduler.getSlots();
+        // the collections are cached per instance and refreshed once the shared client has been replaced
+        final MongoClient[] clients = new MongoClient[slots.size()];
+        final MongoCollection<RawBsonDocument>[] collections = new MongoCollection[slots.size()];
+        final PortScheduler.Lease<MongoClient> lease = new PortScheduler.Lease<>();
+        final BooleanSupplier stopped = this::isStopped;
 
-        int clientIdx = 0;
-        initialized.set(true);
-        long ratePause = (long) (1000f / targetRate);
-        startMillis = System.currentTimeMillis();
-        float currentRate = 0;
+        started();
 
         int timeouts = 0;
 
         // do the actual benchmark measurements
-        try {
-            while (!stop.get()) {
-                currentRatio = (float) numReads / (float) (numInserts + numReads);
-                if (targetRate > 0) {
-                    if ((float) (numReads + numInserts) * 1000f / (float) (System.currentTimeMillis() - startMillis) > targetRate) {
-                        sleep(ratePause);
-                    }
-                }
-                clientIdx = clientIdx + 1 < clients.length ? clientIdx + 1 : 0;
-                if (currentRatio < targetRatio) {
-                    try {
-                        readRecord(clients[clientIdx]);
-                    } catch (MongoSocketException | MongoTimeoutException e) {
-                        timeouts++;
-                        log.warn("Timeout occured while reading from {}:{}. Trying to reconnect client No. {}", clients[clientIdx].getAddress().getHost(), clients[clientIdx].getAddress().getPort(), clientIdx);
-                        final MongoClientOptions ops = clients[clientIdx].getMongoClientOptions();
-                        final ServerAddress address = clients[clientIdx].getAddress();
-                        clients[clientIdx].close();
-                        clients[clientIdx] = new MongoClient(address, ops);
-                        log.info("Reconnected to {}:{}", clients[clientIdx].getAddress().getHost(), clients[clientIdx].getAddress().getPort());
-                    }
-                } else {
-                    try {
-                        insertRecord(clients[clientIdx]);
-                    } catch (MongoSocketException | MongoTimeoutException e) {
-                        timeouts++;
-                        log.warn("Timeout occured while writing to {}:{}. Trying to reconnect client No. {}", clients[clientIdx].getAddress().getHost(), clients[clientIdx].getAddress().getPort(), clientIdx);
-                        final MongoClientOptions ops = clients[clientIdx].getMongoClientOptions();
-                        final ServerAddress address = clients[clientIdx].getAddress();
-                        clients[clientIdx].close();
-                        clients[clientIdx] = new MongoClient(address, ops);
-                        log.info("Reconnected to {}:{}", clients[clientIdx].getAddress().getHost(), clients[clientIdx].getAddress().getPort());
-                    }
-                }
-                elapsed = System.currentTimeMillis() - startMillis;
+        while (scheduler.acquire(lease, stopped)) {
+            final PortScheduler.Slot<MongoClient> slot = lease.getSlot();
+            final int idx = slot.getIndex();
+            final int port = slot.getPort();
+            final PortStats stats = slot.getStats();
+            final MongoClient client = slot.getClient();
+            if (clients[idx] != client) {
+                clients[idx] = client;
+                collections[idx] = getCollection(client, port);
             }
-        } catch (IOException e) {
-            log.error("Error while running benchmark", e);
-        }
-
-        log.info("Closing {} connections", clients.length);
-        for (final MongoClient c : clients) {
-            c.close();
-        }
-
-        try {
-            if (insertLatencySink != null) {
-                insertLatencySink.close();
-            }
-            if (readLatencySink != null) {
-                readLatencySink.close();
+            final TraceRecord record = lease.getRecord();
+            final OpType type = record != null ? record.getType() : workload.getMix().next(random);
+            try {
+                execute(type, collections[idx], port, stats, lease.getIntendedStart(), record);
+            } catch (MongoSocketException | MongoTimeoutException e) {
+                timeouts++;
+                stats.recordTimeout();
+                final String instance = stats.getInstance();
+                log.warn("Timeout occured during {} at {}. Trying to reconnect", type.getName(), instance);
+                if (slot.reconnect(client)) {
+                    stats.recordReconnect();
+                    log.info("Reconnected to {}", instance);
+                }
+            } catch (MongoException e) {
+                stats.recordError();
+                log.error("Error during {} at {}", type.getName(), stats.getInstance(), e);
+            } finally {
+                scheduler.release(slot);
             }
-        } catch (IOException e) {
-            log.error("Unable to close stream", e);
+            updateElapsed();
         }
 
         log.info("Thread finished with {} timeouts", timeouts);
     }
 
-    private void sleep(long ratePause) {
-        try {
-            Thread.sleep(ratePause);
-        } catch (InterruptedException e) {
-            log.error("Error while sleeping", e);
-        }
-    }
-
-    public float getRate() {
-        return ((float) (numInserts + numReads) * 1000f) / (float) elapsed;
-    }
-
-    private void insertRecord(MongoClient client) throws IOException {
-        long start = System.nanoTime();
-        client.getDatabase(MongoBench.DB_NAME).getCollection(MongoBench.COLLECTION_NAME).insertOne(new Document("data", data));
-        long latency = System.nanoTime() - start;
-        recordLatency(latency, insertLatencySink);
-        if (latency < minWriteLatency) {
-            minWriteLatency = latency;
+    private MongoCollection<RawBsonDocument> getCollection(MongoClient client, int port) {
+        return requestOptions.apply(client.getDatabase(ClientFactory.getDatabaseName(config, port)).getCollection(MongoBench.COLLECTION_NAME, RawBsonDocument.class));
+    }
+
+    /**
+     * @param record the replayed request, null for a request of the workload
+     */
+    private void execute(OpType type, MongoCollection<RawBsonDocument> collection, int port, PortStats stats, long intendedStart, TraceRecord record) {
+        final KeySpace keys = workload.getKeySpace(port);
+        final IndexedFields fields = workload.getFields();
+        final PayloadCache payloads = getPayloads(record);
+        final int limit = workload.getScanLength();
+        final int batchSize = type != OpType.INSERT ? 1 : record != null ? Math.max(record.getNumDocuments(), 1) : requestOptions.getInsertBatch();
+        // replayed inserts take new keys as well, so they do not collide with the documents of the load phase
+        final int id = type == OpType.INSERT ? keys.nextInsertKeys(batchSize) : record != null ? record.getKey() : workload.getKeyChooser().nextKey(keys, random);
+        final List<RawBsonDocument> batch = batchSize > 1 ? createBatch(payloads, id, batchSize) : null;
+        final RawBsonDocument document = getDocument(type, payloads, id, batch, true);
+        recordTrace(type, port, intendedStart, id, batchSize, document);
+        final long start = System.nanoTime();
+        final boolean found;
+        switch (type) {
+            case READ:
+                found = collection.find(payloads.getReusedIdFilter(id)).first() != null;
+                break;
+            case INSERT:
+                if (batch != null) {
+                    collection.insertMany(batch, requestOptions.getInsertManyOptions());
+                } else {
+                    collection.insertOne(document);
+                }
+                found = true;
+                break;
+            case UPDATE:
+                found = collection.updateOne(payloads.getReusedIdFilter(id), document).getMatchedCount() > 0;
+                break;
+            case UPSERT:
+                collection.updateOne(payloads.getReusedIdFilter(id), document, UPSERT);
+                found = true;
+                break;
+            case READ_MODIFY_WRITE:
+                found = collection.find(payloads.getReusedIdFilter(id)).first() != null
+                        && collection.updateOne(payloads.getReusedIdFilter(id), document).getMatchedCount() > 0;
+                break;
+            case DELETE:
+                found = collection.deleteOne(payloads.getReusedIdFilter(id)).getDeletedCount() > 0;
+                break;
+            case SCAN:
+                found = drain(collection.find(payloads.getRangeFilter(id)).limit(limit)) > 0;
+                break;
+            case QUERY:
+                found = drain(collection.find(fields.getGroupFilter(id)).limit(limit)) > 0;
+                break;
+            case RANGE_QUERY:
+                found = drain(collection.find(fields.getValueRangeFilter(id, keys.size(), limit)).limit(limit)) > 0;
+                break;
+            case PROJECTION:
+                found = drain(collection.find(fields.getGroupFilter(id)).projection(fields.getProjection()).limit(limit)) > 0;
+                break;
+            case SORT:
+                found = drain(collection.find(fields.getGroupFilter(id)).sort(fields.getSort()).limit(limit)) > 0;
+                break;
+            case COUNT:
+                found = collection.count(fields.getGroupFilter(id)) > 0;
+                break;
+            case AGGREGATE:
+                found = drain(collection.aggregate(fields.getAggregatePipeline(id))) > 0;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported operation type " + type);
         }
-        if (latency > maxWriteLatency) {
-            maxWriteLatency = latency;
+        recordLatency(type, stats, intendedStart, start, System.nanoTime(), batchSize);
+        if (!found) {
+            recordMiss(stats);
+            log.debug("No document with id {} at {} for {}", id, stats.getInstance(), type.getName());
         }
-        accWriteLatencies += latency;
-        numInserts++;
     }
 
-    private void readRecord(MongoClient client) throws IOException {
-        final Document doc = toRead[readIndex];
-        long start = System.nanoTime();
-        final Document fetched = client.getDatabase(MongoBench.DB_NAME).getCollection(MongoBench.COLLECTION_NAME).find(toRead[readIndex]).first();
-        long latency = System.nanoTime() - start;
-        recordLatency(latency, readLatencySink);
-        if (latency < minReadLatency) {
-            minReadLatency = latency;
-        }
-        if (latency > maxReadlatency) {
-            maxReadlatency = latency;
-        }
-        accReadLatencies += latency;
-        if (fetched == null) {
-            log.warn("Unable to read document with id {}", doc.get("_id"));
+    private static List<RawBsonDocument> createBatch(PayloadCache payloads, int firstId, int batchSize) {
+        final List<RawBsonDocument> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(payloads.getInsertDocument(firstId + i));
         }
-        if (readIndex + 2 >= toRead.length) {
-            readIndex = 0;
-        } else {
-            readIndex++;
-        }
-        numReads++;
-    }
-
-    private void recordLatency(final long latency, final FileOutputStream sink) throws IOException {
-        if (sink != null) {
-            sink.write(String.valueOf(latency).getBytes());
-            sink.write(lineSeparator.getBytes());
-            sink.flush();
+        return batch;
+    }
+
+    /**
+     * @return the number of documents read from the cursor
+     */
+    private static int drain(MongoIterable<RawBsonDocument> results) {
+        int numRead = 0;
+        try (final MongoCursor<RawBsonDocument> cursor = results.iterator()) {
+            while (cursor.hasNext()) {
+                cursor.next();
+                numRead++;
+            }
         }
+        return numRead;
     }
-
-    public void stop() {
-        stop.set(true);
-    }
-
-    public int getNumInserts() {
-        return numInserts;
-    }
-
-    public int getNumReads() {
-        return numReads;
-    }
-
-    public long getMaxReadlatency() {
-        return maxReadlatency;
-    }
-
-    public long getMaxWriteLatency() {
-        return maxWriteLatency;
-    }
-
-    public long getMinReadLatency() {
-        return minReadLatency;
-    }
-
-    public long getMinWriteLatency() {
-        return minWriteLatency;
-    }
-
-    public float getAccReadLatencies() {
-        return accReadLatencies;
-    }
-
-    public float getAccWriteLatencies() {
-        return accWriteLatencies;
-    }
-
-
-    public boolean isInitialized() {
-        return initialized.get();
-    }
-
-    public synchronized void resetData() {
-        numInserts = 0;
-        numReads = 0;
-        readIndex = 0;
-        maxReadlatency = 0;
-        minReadLatency = Long.MAX_VALUE;
-        maxWriteLatency = 0;
-        minWriteLatency = Long.MAX_VALUE;
-        accReadLatencies = 0;
-        accWriteLatencies = 0;
-        startMillis = System.currentTimeMillis();
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Searches the highest target rate at which a latency percentile stays below a service level objective. Every step
+ * runs the run phase with a fixed target rate for the warmup and the duration of the configuration. The rate is
+ * doubled until a step misses the objective, then the highest passing rate is found by bisection.
+ * <p>
+ * A step fails if the percentile exceeds the objective or if the achieved throughput is lower than the target rate, so
+ * the result is the highest rate the instances actually sustain. The latencies are measured from the intended start
+ * of the requests in open loop mode, which should be used for meaningful results above the saturation point.
+ */
+public class SaturationSearch {
+
+    private static final Logger log = LoggerFactory.getLogger(SaturationSearch.class);
+
+    private final static DecimalFormat decimalFormat = new DecimalFormat("0.0000", DecimalFormatSymbols.getInstance(Locale.ROOT));
+
+    /**
+     * The fraction of the target rate a step has to achieve to pass
+     */
+    private static final double MIN_ACHIEVED_RATE = 0.95d;
+
+    private final BenchConfig config;
+    private final List<Step> steps = new ArrayList<>();
+
+    public SaturationSearch(BenchConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the highest rate meeting the objective, 0 if even the start rate missed it
+     */
+    public float run() {
+        float good = 0f;
+        float bad = 0f;
+        float rate = config.getTargetRate() > 0f ? config.getTargetRate() : 1000f;
+        log.info("Searching the highest rate with {} below {} ms starting at {} requests/sec", getPercentileLabel(),
+                decimalFormat.format(config.getSloLatency()), decimalFormat.format(rate));
+        for (int i = 0; i < config.getSearchSteps(); i++) {
+            final Step step = measure(rate);
+            steps.add(step);
+            log.info("Step {}: target {} requests/sec, achieved {} requests/sec, {} {} ms: {}", i + 1, decimalFormat.format(step.targetRate),
+                    decimalFormat.format(step.achievedRate), getPercentileLabel(), formatLatency(step.percentile), step.passed ? "passed" : "failed");
+            if (step.passed) {
+                good = rate;
+            } else {
+                bad = rate;
+            }
+            if (bad == 0f) {
+                rate = good * 2f;
+            } else if (bad - good <= good * config.getSearchPrecision()) {
+                break;
+            } else {
+                rate = (good + bad) / 2f;
+            }
+        }
+        report(good);
+        return good;
+    }
+
+    private Step measure(float rate) {
+        final BenchConfig stepConfig = config.copy();
+        stepConfig.setTargetRate(rate);
+        final RunEngine engine = new RunEngine(stepConfig);
+        engine.start();
+        sleep(config.getWarmup() * 1000L);
+        engine.startMeasurement();
+        sleep(config.getDuration() * 1000L);
+        final RunResult result = engine.stop();
+        final Histogram latencies = LatencyStats.createHistogram();
+        for (final OpType type : OpType.values()) {
+            latencies.add(result.getLatencies(type));
+        }
+        return new Step(rate, result.getNumOperations() * 1000f / (float) Math.max(result.getDuration(), 1), latencies);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            log.error("Unable to sleep", e);
+        }
+    }
+
+    private void report(float maxRate) {
+        log.info("Throughput/latency curve:");
+        log.info("target [requests/sec], achieved [requests/sec], p50 [ms], p99 [ms], max [ms], {} [ms], passed", getPercentileLabel());
+        for (final Step step : steps) {
+            log.info(step.toString(", "));
+        }
+        if (maxRate > 0f) {
+            log.info("Highest rate with {} below {} ms: {} requests/sec", getPercentileLabel(), decimalFormat.format(config.getSloLatency()), decimalFormat.format(maxRate));
+        } else {
+            log.warn("Even the start rate missed the objective. Try a lower target rate");
+        }
+        if (config.getSearchOutput() != null) {
+            try {
+                writeCurve(new File(config.getSearchOutput()));
+            } catch (IOException e) {
+                log.error("Unable to write search output {}", config.getSearchOutput(), e);
+            }
+        }
+    }
+
+    private void writeCurve(File file) throws IOException {
+        try (final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII))) {
+            out.write("target,achieved,p50,p99,max,objective,passed\n");
+            for (final Step step : steps) {
+                out.write(step.toString(",") + "\n");
+            }
+        }
+    }
+
+    private String getPercentileLabel() {
+        final double percentile = config.getSloPercentile();
+        return percentile == Math.rint(percentile) ? "p" + (long) percentile : "p" + percentile;
+    }
+
+    private static String formatLatency(long nanos) {
+        return decimalFormat.format(nanos / 1000000f);
+    }
+
+    private final class Step {
+        private final float targetRate;
+        private final float achievedRate;
+        private final long p50;
+        private final long percentile;
+        private final long p99;
+        private final long max;
+        private final boolean passed;
+
+        private Step(float targetRate, float achievedRate, Histogram latencies) {
+            this.targetRate = targetRate;
+            this.achievedRate = achievedRate;
+            this.p50 = latencies.getValueAtPercentile(50d);
+            this.percentile = latencies.getValueAtPercentile(config.getSloPercentile());
+            this.p99 = latencies.getValueAtPercentile(99d);
+            this.max = latencies.getMaxValue();
+            this.passed = latencies.getTotalCount() > 0 && percentile <= config.getSloLatency() * 1000000d
+                    && achievedRate >= targetRate * MIN_ACHIEVED_RATE;
+        }
+
+        private String toString(String separator) {
+            return decimalFormat.format(targetRate) + separator + decimalFormat.format(achievedRate) + separator
+                    + formatLatency(p50) + separator + formatLatency(p99) + separator + formatLatency(max) + separator
+                    + formatLatency(percentile) + separator + passed;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import com.mongodb.async.client.MongoClient;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Polls <code>serverStatus</code> of every instance at a fixed period, so the client side latencies of the interval
+ * output can be lined up with the state of the servers: WiredTiger cache and checkpoints, read and write tickets,
+ * global lock queues and operation counters.
+ * <p>
+ * The sampler uses its own asynchronous client with a single connection per instance and never waits for a reply, so
+ * it neither shares connections with the workers nor delays them. If the reply of an instance is still outstanding at
+ * the next period the instance is skipped.
+ */
+public class ServerStatusSampler implements Runnable, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ServerStatusSampler.class);
+
+    /**
+     * The sampled values. Counters are reported as the difference between two samples, gauges as the last sample
+     */
+    public enum Metric {
+        INSERTS("server_inserts", true, "opcounters", "insert"),
+        QUERIES("server_queries", true, "opcounters", "query"),
+        UPDATES("server_updates", true, "opcounters", "update"),
+        DELETES("server_deletes", true, "opcounters", "delete"),
+        GETMORES("server_getmores", true, "opcounters", "getmore"),
+        COMMANDS("server_commands", true, "opcounters", "command"),
+        CACHE_BYTES("cache_bytes", false, "wiredTiger", "cache", "bytes currently in the cache"),
+        CACHE_DIRTY_BYTES("cache_dirty_bytes", false, "wiredTiger", "cache", "tracked dirty bytes in the cache"),
+        CACHE_APP_EVICTIONS("cache_app_evictions", true, "wiredTiger", "cache", "pages evicted by application threads"),
+        CACHE_PAGES_READ("cache_pages_read", true, "wiredTiger", "cache", "pages read into cache"),
+        CHECKPOINT_RUNNING("checkpoint_running", false, "wiredTiger", "transaction", "transaction checkpoint currently running"),
+        CHECKPOINTS("checkpoints", true, "wiredTiger", "transaction", "transaction checkpoints"),
+        READ_TICKETS_OUT("read_tickets_out", false, "wiredTiger", "concurrentTransactions", "read", "out"),
+        READ_TICKETS_AVAILABLE("read_tickets_available", false, "wiredTiger", "concurrentTransactions", "read", "available"),
+        WRITE_TICKETS_OUT("write_tickets_out", false, "wiredTiger", "concurrentTransactions", "write", "out"),
+        WRITE_TICKETS_AVAILABLE("write_tickets_available", false, "wiredTiger", "concurrentTransactions", "write", "available"),
+        QUEUED_READERS("queued_readers", false, "globalLock", "currentQueue", "readers"),
+        QUEUED_WRITERS("queued_writers", false, "globalLock", "currentQueue", "writers"),
+        ACTIVE_READERS("active_readers", false, "globalLock", "activeClients", "readers"),
+        ACTIVE_WRITERS("active_writers", false, "globalLock", "activeClients", "writers"),
+        CONNECTIONS("connections", false, "connections", "current");
+
+        private final String name;
+        private final boolean counter;
+        private final String[] path;
+
+        Metric(String name, boolean counter, String... path) {
+            this.name = name;
+            this.counter = counter;
+            this.path = path;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return true if the value only ever increases, so the difference between two samples is reported
+         */
+        public boolean isCounter() {
+            return counter;
+        }
+
+        /**
+         * @return the value in the reply, -1 if the server does not report it, e.g. a mongos or a storage engine
+         * other than WiredTiger
+         */
+        private long get(BsonDocument status) {
+            BsonValue value = status;
+            for (final String key : path) {
+                if (!value.isDocument() || !value.asDocument().containsKey(key)) {
+                    return -1L;
+                }
+                value = value.asDocument().get(key);
+            }
+            return value.isNumber() ? value.asNumber().longValue() : -1L;
+        }
+    }
+
+    /**
+     * The sections of the reply which are not needed and would only add to the cost of the command
+     */
+    private static final BsonDocument COMMAND = new BsonDocument("serverStatus", new BsonInt32(1))
+            .append("repl", new BsonInt32(0))
+            .append("metrics", new BsonInt32(0))
+            .append("locks", new BsonInt32(0))
+            .append("tcmalloc", new BsonInt32(0));
+
+    private final long periodMs;
+    private final Map<Integer, String> instances = new LinkedHashMap<>();
+    private final Map<Integer, MongoClient> clients = new LinkedHashMap<>();
+    private final Map<Integer, AtomicBoolean> pending = new LinkedHashMap<>();
+    private final Map<Integer, Sample> samples = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile boolean stopped = false;
+
+    /**
+     * @param periodMs the time between two samples of an instance in milliseconds
+     */
+    public ServerStatusSampler(BenchConfig config, long periodMs) {
+        this.periodMs = periodMs;
+        for (final int port : config.getInstances()) {
+            instances.put(port, ClientFactory.getInstanceName(config, port));
+            clients.put(port, ClientFactory.createAsyncClient(config, port, 1));
+            pending.put(port, new AtomicBoolean());
+        }
+        this.thread = new Thread(this, "server-status-sampler");
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        log.info("Sampling serverStatus of {} instances every {} ms", clients.size(), periodMs);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long next = System.currentTimeMillis();
+            while (!stopped) {
+                for (final int port : clients.keySet()) {
+                    sample(port);
+                }
+                next += periodMs;
+                long now;
+                while (!stopped && (now = System.currentTimeMillis()) < next) {
+                    Thread.sleep(Math.min(next - now, 100));
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while sampling serverStatus", e);
+        }
+    }
+
+    private void sample(final int port) {
+        final AtomicBoolean outstanding = pending.get(port);
+        if (!outstanding.compareAndSet(false, true)) {
+            log.debug("serverStatus of {} is still outstanding", instances.get(port));
+            return;
+        }
+        clients.get(port).getDatabase("admin").runCommand(COMMAND, BsonDocument.class, (status, t) -> {
+            if (t == null) {
+                samples.put(port, new Sample(System.currentTimeMillis(), status));
+            } else {
+                log.warn("Unable to sample serverStatus of {}: {}", instances.get(port), t.getMessage());
+            }
+            outstanding.set(false);
+        });
+    }
+
+    /**
+     * @return the last sample of the instance, null if no reply has been received yet
+     */
+    public Sample getSample(int port) {
+        return samples.get(port);
+    }
+
+    @Override
+    public void close() {
+        stopped = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for serverStatus sampler", e);
+        }
+        for (final MongoClient client : clients.values()) {
+            client.close();
+        }
+    }
+
+    /**
+     * The values of a single reply
+     */
+    public static final class Sample {
+        private final long timestamp;
+        private final long[] values = new long[Metric.values().length];
+
+        private Sample(long timestamp, BsonDocument status) {
+            this.timestamp = timestamp;
+            for (final Metric metric : Metric.values()) {
+                values[metric.ordinal()] = metric.get(status);
+            }
+        }
+
+        /**
+         * @return the time the reply has been received at in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the value of the metric, -1 if the server does not report it
+         */
+        public long get(Metric metric) {
+            return values[metric.ordinal()];
+        }
+
+        /**
+         * @param previous the previous sample of the same instance, may be null
+         * @return the value of a gauge, or the increase of a counter since the previous sample. If the counter has
+         * been reset in between, e.g. by a restart of the server, the value itself. -1 if the server does not report
+         * the metric or, for counters, if there is no previous sample
+         */
+        public long getDelta(Metric metric, Sample previous) {
+            final long value = get(metric);
+            if (!metric.isCounter() || value < 0) {
+                return value;
+            }
+            if (previous == null || previous.get(metric) < 0) {
+                return -1L;
+            }
+            final long delta = value - previous.get(metric);
+            return delta >= 0 ? delta : value;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.apache.commons.lang.RandomStringUtils;
+import org.bson.*;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.io.ByteBufferBsonInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal in-process stand-in for mongod speaking the MongoDB wire protocol.
+ * <p>
+ * The server answers the commands issued by the benchmark with canned replies and does not store any data. It is used
+ * to measure the overhead of the benchmark itself and to run the benchmark without a real MongoDB instance.
+ */
+public class StandInServer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(StandInServer.class);
+
+    private static final int OP_REPLY = 1;
+    private static final int OP_QUERY = 2004;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAX_WIRE_VERSION = 4;
+
+    private final BsonDocumentCodec codec = new BsonDocumentCodec();
+    private final BsonString data;
+    private final List<ServerSocket> serverSockets = new ArrayList<>();
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectionIds = new AtomicInteger();
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final AtomicLong inserts = new AtomicLong();
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong deletes = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * @param documentSize the size of the data field of the documents returned by queries
+     */
+    public StandInServer(int documentSize) {
+        this.data = new BsonString(RandomStringUtils.randomAlphabetic(documentSize));
+    }
+
+    /**
+     * Listen on the given ports of the loopback interface. A port of 0 picks a free port
+     *
+     * @return the ports the server listens on
+     */
+    public int[] start(int[] ports) throws IOException {
+        final int[] bound = new int[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            final ServerSocket serverSocket = new ServerSocket(ports[i], 1024, InetAddress.getLoopbackAddress());
+            serverSockets.add(serverSocket);
+            bound[i] = serverSocket.getLocalPort();
+            final Thread acceptor = new Thread(() -> accept(serverSocket), "stand-in-acceptor-" + bound[i]);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        log.info("Stand-in server listening on {} ports", bound.length);
+        return bound;
+    }
+
+    private void accept(ServerSocket serverSocket) {
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                final Thread handler = new Thread(() -> handle(socket), "stand-in-connection-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("Unable to accept connection", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        final int connectionId = connectionIds.incrementAndGet();
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+             final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            final BasicOutputBuffer reply = new BasicOutputBuffer();
+            byte[] body = new byte[64 * 1024];
+            while (!closed) {
+                header.clear();
+                in.readFully(header.array());
+                final int length = header.getInt();
+                final int requestId = header.getInt();
+                header.getInt();
+                final int opCode = header.getInt();
+                if (body.length < length - HEADER_SIZE) {
+                    body = new byte[length - HEADER_SIZE];
+                }
+                in.readFully(body, 0, length - HEADER_SIZE);
+                if (opCode != OP_QUERY) {
+                    // unacknowledged legacy writes and killCursors do not expect a reply
+                    continue;
+                }
+                final BsonDocument response = execute(ByteBuffer.wrap(body, 0, length - HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN), connectionId);
+                writeReply(reply, requestId, response);
+                reply.pipe(out);
+                out.flush();
+                reply.truncateToPosition(0);
+            }
+        } catch (EOFException | SocketException e) {
+            // connection closed by the client
+        } catch (IOException e) {
+            log.error("Error on stand-in connection", e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private BsonDocument execute(ByteBuffer body, int connectionId) {
+        body.getInt();
+        final StringBuilder ns = new StringBuilder();
+        byte b;
+        while ((b = body.get()) != 0) {
+            ns.append((char) b);
+        }
+        body.getInt();
+        body.getInt();
+        final BsonDocument query;
+        try (final BsonBinaryReader reader = new BsonBinaryReader(new ByteBufferBsonInput(new ByteBufNIO(body.slice().order(ByteOrder.LITTLE_ENDIAN))))) {
+            query = codec.decode(reader, DecoderContext.builder().build());
+        }
+        final BsonDocument command = query.containsKey("$query") ? query.getDocument("$query") : query;
+        final String name = command.isEmpty() ? "" : command.keySet().iterator().next();
+        final String db = ns.substring(0, ns.indexOf("."));
+        switch (name.toLowerCase()) {
+            case "ismaster":
+                return ok().append("ismaster", BsonBoolean.TRUE)
+                        .append("maxBsonObjectSize", new BsonInt32(16 * 1024 * 1024))
+                        .append("maxMessageSizeBytes", new BsonInt32(48000000))
+                        .append("maxWriteBatchSize", new BsonInt32(1000))
+                        .append("localTime", new BsonDateTime(System.currentTimeMillis()))
+                        .append("minWireVersion", new BsonInt32(0))
+                        .append("maxWireVersion", new BsonInt32(MAX_WIRE_VERSION));
+            case "buildinfo":
+                return ok().append("version", new BsonString("3.2.0"))
+                        .append("versionArray", new BsonArray(java.util.Arrays.asList(new BsonInt32(3), new BsonInt32(2), new BsonInt32(0), new BsonInt32(0))));
+            case "getlasterror":
+                return ok().append("connectionId", new BsonInt32(connectionId)).append("n", new BsonInt32(0));
+            case "insert":
+                final int numInserted = command.getArray("documents").size();
+                inserts.addAndGet(numInserted);
+                return ok().append("n", new BsonInt32(numInserted));
+            case "update":
+                final int numUpdated = command.getArray("updates").size();
+                updates.addAndGet(numUpdated);
+                return ok().append("n", new BsonInt32(numUpdated)).append("nModified", new BsonInt32(numUpdated));
+            case "delete":
+                final int numDeleted = command.getArray("deletes").size();
+                deletes.addAndGet(numDeleted);
+                return ok().append("n", new BsonInt32(numDeleted));
+            case "find":
+                queries.incrementAndGet();
+                final BsonDocument filter = command.getDocument("filter", new BsonDocument());
+                final BsonValue id = filter.containsKey("_id") && filter.get("_id").isNumber() ? filter.get("_id") : new BsonInt32(0);
+                return cursor(db + "." + command.getString("find").getValue(), "firstBatch",
+                        new BsonDocument("_id", id).append("data", data));
+            case "aggregate":
+                queries.incrementAndGet();
+                return cursor(db + "." + command.getString("aggregate").getValue(), "firstBatch", null);
+            case "getmore":
+                return cursor(db + "." + command.getString("collection").getValue(), "nextBatch", null);
+            case "count":
+                queries.incrementAndGet();
+                return ok().append("n", new BsonInt32(1));
+            case "listcollections":
+                commands.incrementAndGet();
+                return cursor(db + ".$cmd.listCollections", "firstBatch", null);
+            case "listdatabases":
+                commands.incrementAndGet();
+                return ok().append("databases", new BsonArray()).append("totalSize", new BsonInt32(0));
+            case "serverstatus":
+                commands.incrementAndGet();
+                return ok().append("connections", new BsonDocument("current", new BsonInt32(connections.size())))
+                        .append("opcounters", new BsonDocument("insert", new BsonInt64(inserts.get()))
+                                .append("query", new BsonInt64(queries.get()))
+                                .append("update", new BsonInt64(updates.get()))
+                                .append("delete", new BsonInt64(deletes.get()))
+                                .append("getmore", new BsonInt64(0))
+                                .append("command", new BsonInt64(commands.get())));
+            default:
+                commands.incrementAndGet();
+                return ok();
+        }
+    }
+
+    private static BsonDocument ok() {
+        return new BsonDocument("ok", new BsonDouble(1d));
+    }
+
+    private static BsonDocument cursor(String ns, String batchName, BsonDocument doc) {
+        final BsonArray batch = new BsonArray();
+        if (doc != null) {
+            batch.add(doc);
+        }
+        return ok().append("cursor", new BsonDocument("id", new BsonInt64(0))
+                .append("ns", new BsonString(ns))
+                .append(batchName, batch));
+    }
+
+    private void writeReply(BasicOutputBuffer reply, int responseTo, BsonDocument response) {
+        reply.writeInt32(0);
+        reply.writeInt32(requestIds.incrementAndGet());
+        reply.writeInt32(responseTo);
+        reply.writeInt32(OP_REPLY);
+        reply.writeInt32(0);
+        reply.writeInt64(0);
+        reply.writeInt32(0);
+        reply.writeInt32(1);
+        try (final BsonBinaryWriter writer = new BsonBinaryWriter(reply)) {
+            codec.encode(writer, response, EncoderContext.builder().build());
+        }
+        reply.writeInt32(0, reply.getPosition());
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (final ServerSocket serverSocket : serverSockets) {
+            serverSocket.close();
+        }
+        for (final Socket socket : connections) {
+            socket.close();
+        }
+    }
+}
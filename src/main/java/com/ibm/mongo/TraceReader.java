@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams the records of a trace written by the {@link TraceWriter}. The file is memory mapped one window at a time,
+ * so traces of any size are read without loading them into the heap and pages already read can be dropped by the
+ * operating system. The reader is shared by all workers of a replay, which take the records in the order of the file.
+ */
+public class TraceReader implements Closeable {
+
+    /**
+     * The number of records mapped at a time, about 64 MB
+     */
+    private static final long RECORDS_PER_WINDOW = 64L * 1024 * 1024 / TraceWriter.RECORD_SIZE;
+
+    private final String fileName;
+    private final FileChannel channel;
+    private final long startMillis;
+    private final long numRecords;
+    private MappedByteBuffer window;
+    private long windowEnd = 0;
+    private long next = 0;
+
+    public TraceReader(String fileName) throws IOException {
+        this.fileName = fileName;
+        this.channel = new RandomAccessFile(fileName, "r").getChannel();
+        final ByteBuffer header = ByteBuffer.allocate(TraceWriter.HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                channel.close();
+                throw new IOException("Not a trace file: " + fileName);
+            }
+        }
+        header.flip();
+        if (header.getInt() != TraceWriter.MAGIC) {
+            channel.close();
+            throw new IOException("Not a trace file: " + fileName);
+        }
+        final int version = header.getInt();
+        if (version != TraceWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported trace file version " + version + " in " + fileName);
+        }
+        this.startMillis = header.getLong();
+        this.numRecords = (channel.size() - TraceWriter.HEADER_SIZE) / TraceWriter.RECORD_SIZE;
+    }
+
+    /**
+     * Read the next record. Safe to call concurrently from multiple threads
+     *
+     * @param record receives the record
+     * @return false if all records have been read
+     */
+    public synchronized boolean next(TraceRecord record) throws IOException {
+        if (next >= numRecords) {
+            return false;
+        }
+        if (next >= windowEnd) {
+            final long count = Math.min(RECORDS_PER_WINDOW, numRecords - next);
+            window = map(next, count);
+            windowEnd = next + count;
+        }
+        read(window, record);
+        next++;
+        if (next >= numRecords) {
+            window = null;
+        }
+        return true;
+    }
+
+    private MappedByteBuffer map(long first, long count) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, TraceWriter.HEADER_SIZE + first * TraceWriter.RECORD_SIZE,
+                count * TraceWriter.RECORD_SIZE);
+    }
+
+    private void read(ByteBuffer buffer, TraceRecord record) throws IOException {
+        final long time = buffer.getLong();
+        final byte code = buffer.get();
+        final OpType type;
+        try {
+            type = OpType.fromCode(code);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid operation type " + code + " in " + fileName);
+        }
+        record.set(time, type, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+    }
+
+    /**
+     * @return the start of the trace in milliseconds since the epoch
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * @return the start of the last request in nanoseconds since the start of the trace, 0 for an empty trace
+     */
+    public synchronized long getLength() throws IOException {
+        if (numRecords == 0) {
+            return 0L;
+        }
+        final TraceRecord last = new TraceRecord();
+        read(map(numRecords - 1, 1), last);
+        return last.getTime();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
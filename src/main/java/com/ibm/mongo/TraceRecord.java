@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+/**
+ * A single request of a trace, see {@link TraceWriter}. Records are reused while reading a trace
+ */
+public final class TraceRecord {
+    private long time;
+    private OpType type;
+    private int port;
+    private int key;
+    private int payloadSize;
+    private int numDocuments;
+
+    void set(long time, OpType type, int port, int key, int payloadSize, int numDocuments) {
+        this.time = time;
+        this.type = type;
+        this.port = port;
+        this.key = key;
+        this.payloadSize = payloadSize;
+        this.numDocuments = numDocuments;
+    }
+
+    /**
+     * @return the start of the request in nanoseconds since the start of the trace
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public OpType getType() {
+        return type;
+    }
+
+    /**
+     * @return the port of the instance the request has been sent to, or the index of the tenant for imported traces
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the _id of the document the request has been sent for
+     */
+    public int getKey() {
+        return key;
+    }
+
+    /**
+     * @return the size of the data written by the request in bytes, 0 for reads
+     */
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    /**
+     * @return the number of documents of the request, e.g. the batch size of an insert
+     */
+    public int getNumDocuments() {
+        return numDocuments;
+    }
+}
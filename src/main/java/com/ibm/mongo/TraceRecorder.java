@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Records the requests of a run phase as a trace. Every worker writes its requests into its own {@link Part}, which
+ * like the {@link LatencySink} collects the records in a preallocated direct buffer and writes them to a part file of
+ * its own once the buffer is full, so the workers never wait for each other. The parts are merged by time into the
+ * trace when the recorder is closed.
+ */
+public class TraceRecorder implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceRecorder.class);
+
+    private static final int PART_BUFFER_SIZE = 4096 * TraceWriter.RECORD_SIZE;
+
+    private final String fileName;
+    private final long startMillis;
+    private final long startNanos;
+    private final List<Part> parts = new ArrayList<>();
+
+    public TraceRecorder(String fileName) {
+        this.fileName = fileName;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return a new part for a single worker
+     */
+    public synchronized Part createPart() throws IOException {
+        final Part part = new Part(fileName + ".part" + parts.size());
+        parts.add(part);
+        return part;
+    }
+
+    /**
+     * Merge the parts into the trace and delete them. Must only be called once all workers have finished
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        final PriorityQueue<PartReader> pending = new PriorityQueue<>((a, b) -> Long.compare(a.time, b.time));
+        final List<PartReader> readers = new ArrayList<>(parts.size());
+        long numRecords = 0;
+        try {
+            for (final Part part : parts) {
+                part.close();
+                final PartReader reader = new PartReader(part.fileName);
+                readers.add(reader);
+                if (reader.advance()) {
+                    pending.add(reader);
+                }
+            }
+            try (final TraceWriter writer = new TraceWriter(fileName, startMillis)) {
+                while (!pending.isEmpty()) {
+                    final PartReader reader = pending.poll();
+                    writer.write(reader.time, reader.type, reader.port, reader.key, reader.payloadSize, reader.numDocuments);
+                    numRecords++;
+                    if (reader.advance()) {
+                        pending.add(reader);
+                    }
+                }
+            }
+        } finally {
+            for (final PartReader reader : readers) {
+                reader.close();
+            }
+            for (final Part part : parts) {
+                Files.deleteIfExists(Paths.get(part.fileName));
+            }
+        }
+        log.info("Recorded {} requests into trace {}", numRecords, fileName);
+    }
+
+    /**
+     * The requests of a single worker. Not thread safe
+     */
+    public final class Part implements Closeable {
+        private final String fileName;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean closed = false;
+
+        private Part(String fileName) throws IOException {
+            final RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+            file.setLength(0);
+            this.fileName = fileName;
+            this.channel = file.getChannel();
+            this.buffer = ByteBuffer.allocateDirect(PART_BUFFER_SIZE);
+        }
+
+        /**
+         * Record a request sent by the benchmark, see {@link TraceWriter#write(long, OpType, int, int, int, int)}
+         *
+         * @param startNanos the start of the request as returned by {@link System#nanoTime()}
+         * @throws IOException if the buffer is full and could not be written to the file
+         */
+        public void record(long startNanos, OpType type, int port, int key, int payloadSize, int numDocuments) throws IOException {
+            if (buffer.remaining() < TraceWriter.RECORD_SIZE) {
+                flush();
+            }
+            buffer.putLong(startNanos - TraceRecorder.this.startNanos)
+                    .put(type.getCode())
+                    .putInt(port)
+                    .putInt(key)
+                    .putInt(payloadSize)
+                    .putInt(numDocuments);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a part one at a time during the merge
+     */
+    private static final class PartReader implements Closeable {
+        private final DataInputStream in;
+        private long time;
+        private OpType type;
+        private int port;
+        private int key;
+        private int payloadSize;
+        private int numDocuments;
+
+        private PartReader(String fileName) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 64 * 1024));
+        }
+
+        private boolean advance() throws IOException {
+            try {
+                time = in.readLong();
+                type = OpType.fromCode(in.readByte());
+                port = in.readInt();
+                key = in.readInt();
+                payloadSize = in.readInt();
+                numDocuments = in.readInt();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Hands out the requests of a trace to the workers instead of choosing instances from the ready queue. Every worker
+ * takes the next record of the shared {@link TraceReader}, waits until the request is due and sends it to the instance
+ * of the record. Requests are due at their time in the trace divided by the replay speed, and latencies are measured
+ * from that time, so requests delayed because all workers or all requests in flight of an instance were busy are
+ * reported as late.
+ * <p>
+ * Records of ports which are not part of the run, e.g. the tenants of an imported trace, are mapped to the instances
+ * of the run by their port modulo the number of instances.
+ *
+ * @param <C> the type of the clients
+ */
+public class TraceScheduler<C> extends PortScheduler<C> {
+
+    private static final Logger log = LoggerFactory.getLogger(TraceScheduler.class);
+
+    /**
+     * The maximum time a worker waits before checking whether it has been stopped
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final TraceReader reader;
+    private final double speed;
+    private final List<Slot<C>> slots;
+    private final Map<Integer, Slot<C>> slotsByPort = new HashMap<>();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private volatile long startNanos;
+
+    /**
+     * @param concurrency the maximum number of requests in flight per instance
+     * @param reader      the trace to replay, closed with the scheduler
+     */
+    public TraceScheduler(BenchConfig config, MetricsRegistry metrics, int concurrency, IntFunction<C> connector, Consumer<C> closer, TraceReader reader) {
+        super(config, metrics, concurrency, connector, closer);
+        this.reader = reader;
+        this.speed = config.getReplaySpeed();
+        this.slots = getSlots();
+        for (final Slot<C> slot : slots) {
+            slotsByPort.put(slot.getPort(), slot);
+        }
+        log.info("Replaying {} requests at {} times the recorded speed", reader.getNumRecords(), speed);
+    }
+
+    @Override
+    public void start() {
+        startNanos = System.nanoTime();
+        started.countDown();
+    }
+
+    @Override
+    public boolean acquire(Lease<C> lease, BooleanSupplier stopped) {
+        // the workers start before the replay, the times of the trace are relative to its start
+        try {
+            while (!started.await(MAX_PARK_NANOS, TimeUnit.NANOSECONDS)) {
+                if (stopped.getAsBoolean()) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        TraceRecord record = lease.getRecord();
+        if (record == null) {
+            record = new TraceRecord();
+        }
+        try {
+            if (!reader.next(record)) {
+                if (finished.compareAndSet(false, true)) {
+                    log.info("Reached the end of the trace");
+                }
+                return false;
+            }
+        } catch (IOException e) {
+            if (finished.compareAndSet(false, true)) {
+                log.error("Unable to read the trace", e);
+            }
+            return false;
+        }
+        final long intendedStart = startNanos + (long) (record.getTime() / speed);
+        long remaining;
+        while ((remaining = intendedStart - System.nanoTime()) > 0) {
+            if (stopped.getAsBoolean()) {
+                return false;
+            }
+            if (remaining > MAX_PARK_NANOS) {
+                LockSupport.parkNanos(MAX_PARK_NANOS);
+            } else {
+                OpenLoopSchedule.waitUntil(intendedStart);
+            }
+        }
+        final Slot<C> slot = getSlot(record.getPort());
+        try {
+            // wait for a request of the instance to finish if all of its requests are in flight
+            while (!slot.enter(MAX_PARK_NANOS)) {
+                if (stopped.getAsBoolean()) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        lease.set(slot, intendedStart, record);
+        return true;
+    }
+
+    private Slot<C> getSlot(int port) {
+        final Slot<C> slot = slotsByPort.get(port);
+        return slot != null ? slot : slots.get(Math.floorMod(port, slots.size()));
+    }
+
+    @Override
+    public void release(Slot<C> slot) {
+        slot.release();
+    }
+
+    @Override
+    public boolean isOpenLoop() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.error("Unable to close the trace", e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a trace, which the replay phase sends again with the original timing. The writer is used by a single thread,
+ * the {@link TraceRecorder} merges the requests of the workers of a run into a trace and the {@link ProfileImporter}
+ * converts profiler exports.
+ * <p>
+ * The file starts with a header of {@link #MAGIC}, {@link #VERSION} and the start of the trace in milliseconds since
+ * the epoch (long), followed by records of {@link #RECORD_SIZE} bytes in big endian order: the start of the request in
+ * nanoseconds since the start of the trace (long), the {@link OpType} code (byte), the instance or tenant (int), the _id
+ * of the document (int), the encoded size of the written document in bytes (int) and the number of documents (int).
+ * Records of concurrent requests may be slightly out of order.
+ */
+public class TraceWriter implements Closeable {
+
+    public static final int MAGIC = 0x4D425452;
+
+    public static final int VERSION = 1;
+
+    public static final int HEADER_SIZE = 4 + 4 + 8;
+
+    public static final int RECORD_SIZE = 8 + 1 + 4 + 4 + 4 + 4;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * RECORD_SIZE * 64;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    /**
+     * @param startMillis the start of the trace in milliseconds since the epoch
+     */
+    public TraceWriter(String fileName, long startMillis) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+        file.setLength(0);
+        this.channel = file.getChannel();
+        this.buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(startMillis).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Append a record
+     *
+     * @param time         the start of the request in nanoseconds since the start of the trace
+     * @param type         the type of the request
+     * @param port         the id of the instance, see {@link BenchConfig#getInstances()}, or the index of the tenant
+     * @param key          the _id of the document
+     * @param payloadSize  the encoded size of the document written by the request in bytes, 0 for reads
+     * @param numDocuments the number of documents of the request
+     * @throws IOException if the buffer is full and could not be written to the file
+     */
+    public void write(long time, OpType type, int port, int key, int payloadSize, int numDocuments) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        buffer.putLong(time)
+                .put(type.getCode())
+                .putInt(port)
+                .putInt(key)
+                .putInt(payloadSize)
+                .putInt(numDocuments);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import java.util.Random;
+
+/**
+ * Every document is chosen with the same probability
+ */
+public class UniformKeyChooser implements KeyChooser {
+
+    @Override
+    public int nextKey(KeySpace keys, Random random) {
+        return random.nextInt(Math.max(keys.size(), 1));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Creates virtual threads when running on Java 21 or later. The build targets an older Java version, so the API is
+ * looked up reflectively. There is no fallback to platform threads on older runtimes, since thousands of them would
+ * distort the measurements, so the virtual execution mode is rejected there.
+ */
+public final class VirtualThreads {
+
+    private static final Object BUILDER;
+
+    private static final Method UNSTARTED;
+
+    static {
+        Object builder = null;
+        Method unstarted = null;
+        try {
+            builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException | InvocationTargetException e) {
+            builder = null;
+            unstarted = null;
+        }
+        BUILDER = builder;
+        UNSTARTED = unstarted;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return BUILDER != null;
+    }
+
+    /**
+     * @throws IllegalStateException if virtual threads are not supported by the runtime
+     */
+    public static void checkSupported() {
+        if (BUILDER == null) {
+            throw new IllegalStateException("Virtual threads need Java 21 or later, but this is Java " + System.getProperty("java.version"));
+        }
+    }
+
+    /**
+     * Create an unstarted virtual thread
+     *
+     * @throws IllegalStateException if virtual threads are not supported by the runtime or can not be created
+     */
+    public static Thread newThread(Runnable runnable) {
+        checkSupported();
+        try {
+            return (Thread) UNSTARTED.invoke(BUILDER, runnable);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create virtual thread", e);
+        }
+    }
+}
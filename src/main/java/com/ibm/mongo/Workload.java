@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The operations issued during the run phase: the operation mix, how the documents are chosen and the key space of
+ * every instance. A single workload is shared by all run phase threads.
+ */
+public class Workload {
+
+    private static final Logger log = LoggerFactory.getLogger(Workload.class);
+
+    private final OperationMix mix;
+    private final KeyChooser keyChooser;
+    private final int scanLength;
+    private final IndexedFields fields;
+    private final DocumentGenerator generator;
+    private final Map<Integer, KeySpace> keySpaces = new HashMap<>();
+
+    public Workload(OperationMix mix, KeyChooser keyChooser, int[] ports, int numDocuments, int scanLength, IndexedFields fields,
+                    DocumentGenerator generator) {
+        this.mix = mix;
+        this.keyChooser = keyChooser;
+        this.scanLength = scanLength;
+        this.fields = fields;
+        this.generator = generator;
+        for (final int port : ports) {
+            keySpaces.put(port, new KeySpace(numDocuments));
+        }
+    }
+
+    public static Workload create(BenchConfig config) {
+        final IndexedFields fields = IndexedFields.create(config);
+        final Workload workload = new Workload(OperationMix.parse(config.getOperationMix()),
+                KeyChooser.create(config.getKeyDistribution(), config.getNumDocuments()),
+                config.getInstances(), config.getNumDocuments(), config.getScanLength(), fields, createGenerator(config, fields));
+        MongoBench.forEachInstance(config, "determine the highest _id at", port -> workload.initKeySpace(config, port));
+        return workload;
+    }
+
+    /**
+     * @return the generator for the schema of the configuration, null if the fixed payload is used
+     */
+    public static DocumentGenerator createGenerator(BenchConfig config, IndexedFields fields) {
+        if (config.getSchema() == null) {
+            return null;
+        }
+        return new DocumentGenerator(config.getSchema(), config.getCompressibility(), config.getSeed(), fields);
+    }
+
+    /**
+     * Continue the key space after the highest numeric _id of the instance, so documents inserted by previous runs do
+     * not lead to duplicate key errors. Called for all instances in parallel, every call only touches the key space of
+     * its own instance
+     */
+    private void initKeySpace(BenchConfig config, int port) {
+        final MongoClient client = ClientFactory.createClient(config, port);
+        try {
+            final BsonDocument last = client.getDatabase(ClientFactory.getDatabaseName(config, port)).getCollection(MongoBench.COLLECTION_NAME, BsonDocument.class)
+                    .find(new BsonDocument("_id", new BsonDocument("$gte", new BsonInt32(0))))
+                    .sort(new BsonDocument("_id", new BsonInt32(-1)))
+                    .limit(1)
+                    .first();
+            final BsonValue id = last == null ? null : last.get("_id");
+            if (id != null && id.isInt32()) {
+                keySpaces.get(port).ensureAbove(id.asInt32().getValue());
+            }
+        } catch (MongoException e) {
+            log.warn("Unable to determine the highest _id at {}", ClientFactory.getInstanceName(config, port), e);
+        } finally {
+            client.close();
+        }
+    }
+
+    public OperationMix getMix() {
+        return mix;
+    }
+
+    public KeyChooser getKeyChooser() {
+        return keyChooser;
+    }
+
+    /**
+     * @return the maximum number of documents read by a single scan or query
+     */
+    public int getScanLength() {
+        return scanLength;
+    }
+
+    public IndexedFields getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the generator of inserted and updated documents, null if the fixed payload is used
+     */
+    public DocumentGenerator getGenerator() {
+        return generator;
+    }
+
+    public KeySpace getKeySpace(int port) {
+        return keySpaces.get(port);
+    }
+}
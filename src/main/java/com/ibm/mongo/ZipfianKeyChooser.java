@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+package com.ibm.mongo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Chooses keys following a Zipfian distribution, i.e. a few keys are very popular while most keys are rarely
+ * accessed. The implementation follows the algorithm of Gray et al. "Quickly Generating Billion-Record Synthetic
+ * Databases" as used by YCSB.
+ * <p>
+ * The ranks are computed over the keys loaded during the load phase. If scrambled, the popular keys are spread over the
+ * whole key range by hashing instead of being clustered at the lowest ids.
+ * <p>
+ * Computing zeta takes time linear in the number of keys, so it is cached per number of keys and constant. Choosers
+ * created repeatedly for the same collection, e.g. for every step of a saturation search, only compute it once.
+ */
+public class ZipfianKeyChooser implements KeyChooser {
+
+    private static final Logger log = LoggerFactory.getLogger(ZipfianKeyChooser.class);
+
+    public static final double DEFAULT_CONSTANT = 0.99d;
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+    private static final long FNV_PRIME = 1099511628211L;
+
+    private static final ConcurrentMap<ZetaKey, Double> zetaCache = new ConcurrentHashMap<>();
+
+    private final int numKeys;
+    private final double theta;
+    private final double zetaN;
+    private final double alpha;
+    private final double eta;
+    private final boolean scrambled;
+
+    public ZipfianKeyChooser(int numKeys, double theta, boolean scrambled) {
+        if (theta <= 0d || theta >= 1d) {
+            throw new IllegalArgumentException("The Zipfian constant must be between 0 and 1");
+        }
+        this.numKeys = Math.max(numKeys, 1);
+        this.theta = theta;
+        this.scrambled = scrambled;
+        this.zetaN = zetaCache.computeIfAbsent(new ZetaKey(this.numKeys, theta), key -> {
+            final long start = System.currentTimeMillis();
+            final double zeta = zeta(key.n, key.theta);
+            log.debug("Computed zeta for {} keys in {} ms", key.n, System.currentTimeMillis() - start);
+            return zeta;
+        });
+        final double zeta2 = zeta(2, theta);
+        this.alpha = 1d / (1d - theta);
+        this.eta = (1d - Math.pow(2d / this.numKeys, 1d - theta)) / (1d - zeta2 / zetaN);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0d;
+        for (int i = 1; i <= n; i++) {
+            sum += 1d / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    /**
+     * @return the rank of the next key, 0 being the most popular one
+     */
+    public int nextRank(Random random) {
+        final double u = random.nextDouble();
+        final double uz = u * zetaN;
+        if (uz < 1d) {
+            return 0;
+        }
+        if (uz < 1d + Math.pow(0.5d, theta)) {
+            return 1;
+        }
+        return Math.min((int) (numKeys * Math.pow(eta * u - eta + 1d, alpha)), numKeys - 1);
+    }
+
+    @Override
+    public int nextKey(KeySpace keys, Random random) {
+        final int rank = nextRank(random);
+        if (!scrambled) {
+            return rank;
+        }
+        return (int) ((fnvHash(rank) & Long.MAX_VALUE) % numKeys);
+    }
+
+    private static long fnvHash(long value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < 8; i++) {
+            hash ^= value & 0xFF;
+            hash *= FNV_PRIME;
+            value >>= 8;
+        }
+        return hash;
+    }
+
+    /**
+     * The parameters of a cached zeta value
+     */
+    private static final class ZetaKey {
+        private final int n;
+        private final double theta;
+
+        private ZetaKey(int n, double theta) {
+            this.n = n;
+            this.theta = theta;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ZetaKey)) {
+                return false;
+            }
+            final ZetaKey other = (ZetaKey) o;
+            return n == other.n && Double.compare(theta, other.theta) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * n + Double.hashCode(theta);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+import static org.junit.Assert.assertEquals;
+
+public class CollectionSetupTest {
+
+    @Test
+    public void testCompleteRange() {
+        assertEquals(100, CollectionSetup.findFirstMissing(0, 100, counter(existing(0, 100))));
+    }
+
+    @Test
+    public void testEmptyRange() {
+        assertEquals(50, CollectionSetup.findFirstMissing(50, 100, counter(new BitSet())));
+    }
+
+    @Test
+    public void testInterruptedLoad() {
+        for (final int loaded : new int[]{1, 17, 63, 64, 99}) {
+            assertEquals(50 + loaded, CollectionSetup.findFirstMissing(50, 150, counter(existing(50, 50 + loaded))));
+        }
+    }
+
+    @Test
+    public void testDocumentsAfterTheGap() {
+        // documents of a failed batch are missing, the following batches have been inserted
+        final BitSet ids = existing(0, 1000);
+        ids.clear(400, 410);
+        assertEquals(400, CollectionSetup.findFirstMissing(0, 1000, counter(ids)));
+        ids.clear(0);
+        assertEquals(0, CollectionSetup.findFirstMissing(0, 1000, counter(ids)));
+    }
+
+    @Test
+    public void testLastDocumentMissing() {
+        assertEquals(Integer.MAX_VALUE - 1, CollectionSetup.findFirstMissing(Integer.MAX_VALUE - 1000, Integer.MAX_VALUE,
+                (from, to) -> to - from - (to == Integer.MAX_VALUE ? 1 : 0)));
+    }
+
+    @Test
+    public void testBoundaries() {
+        final List<LoadThread.Range> ranges = Arrays.asList(new LoadThread.Range(1, 0, 10), new LoadThread.Range(2, 0, 10),
+                new LoadThread.Range(1, 10, 20), new LoadThread.Range(2, 10, 20), new LoadThread.Range(1, 20, 30));
+        assertEquals(Arrays.asList(10, 20), CollectionSetup.getBoundaries(ranges, 1));
+        assertEquals(Collections.singletonList(10), CollectionSetup.getBoundaries(ranges, 2));
+        assertEquals(Collections.emptyList(), CollectionSetup.getBoundaries(ranges, 3));
+    }
+
+    private static BitSet existing(int from, int to) {
+        final BitSet ids = new BitSet();
+        ids.set(from, to);
+        return ids;
+    }
+
+    /**
+     * @return the count of a collection with the given _ids
+     */
+    private static IntBinaryOperator counter(BitSet ids) {
+        return (from, to) -> ids.get(from, to).cardinality();
+    }
+}
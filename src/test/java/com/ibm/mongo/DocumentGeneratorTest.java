@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentGeneratorTest {
+
+    private static final String SCHEMA = "{\"name\": \"$string:8\", \"age\": \"$int:18..99\", \"score\": \"$double\", \"active\": \"$bool\","
+            + " \"joined\": \"$date:0..30\", \"avatar\": \"$binary:32\", \"kind\": \"user\","
+            + " \"address\": {\"zip\": \"$long:10000..99999\"}, \"tags\": {\"$array\": \"$string:4\", \"$size\": \"1..3\"}, \"pair\": [1, \"$int:5\"]}";
+
+    private final IndexedFields fields = new IndexedFields(10);
+
+    @Test
+    public void testTemplateTypes() {
+        final DocumentGenerator generator = new DocumentGenerator(SCHEMA, 1d, 42L, fields);
+        for (int id = 0; id < 100; id++) {
+            final RawBsonDocument doc = generator.createDocument(id);
+            assertEquals(id, doc.getInt32("_id").getValue());
+            assertEquals(fields.getGroup(id), doc.getInt32(IndexedFields.GROUP).getValue());
+            assertEquals(8, doc.getString("name").getValue().length());
+            final int age = doc.getInt32("age").getValue();
+            assertTrue(age >= 18 && age <= 99);
+            final double score = doc.getDouble("score").getValue();
+            assertTrue(score >= 0d && score < 1d);
+            assertEquals(BsonType.BOOLEAN, doc.get("active").getBsonType());
+            final long ageOfJoin = System.currentTimeMillis() - doc.getDateTime("joined").getValue();
+            assertTrue(ageOfJoin >= 0L && ageOfJoin <= 31L * 24 * 3600 * 1000);
+            assertEquals(32, doc.getBinary("avatar").getData().length);
+            assertEquals("user", doc.getString("kind").getValue());
+            final long zip = doc.getDocument("address").getInt64("zip").getValue();
+            assertTrue(zip >= 10000L && zip <= 99999L);
+            final BsonArray tags = doc.getArray("tags");
+            assertTrue(tags.size() >= 1 && tags.size() <= 3);
+            for (final BsonValue tag : tags) {
+                assertEquals(4, tag.asString().getValue().length());
+            }
+            assertEquals(1, doc.getArray("pair").get(0).asInt32().getValue());
+            assertEquals(5, doc.getArray("pair").get(1).asInt32().getValue());
+        }
+    }
+
+    @Test
+    public void testReproducible() {
+        final DocumentGenerator first = new DocumentGenerator(SCHEMA, 1d, 42L, fields);
+        final DocumentGenerator second = new DocumentGenerator(SCHEMA, 1d, 42L, fields);
+        final BsonDocument a = withoutDates(first.createDocument(7));
+        assertEquals(a, withoutDates(second.createDocument(7)));
+        assertNotEquals(a, withoutDates(first.createDocument(8)));
+        assertNotEquals(a, withoutDates(new DocumentGenerator(SCHEMA, 1d, 43L, fields).createDocument(7)));
+        final List<RawBsonDocument> batch = first.createDocuments(3, 6);
+        assertEquals(a, withoutDates(batch.get(1)));
+    }
+
+    @Test
+    public void testNormalDistribution() {
+        final DocumentGenerator generator = new DocumentGenerator("{\"fixed\": \"$int:100~0\", \"spread\": \"$double:50~10\"}", 1d, 1L, fields);
+        double sum = 0d;
+        final int n = 10000;
+        for (int id = 0; id < n; id++) {
+            final RawBsonDocument doc = generator.createDocument(id);
+            assertEquals(100, doc.getInt32("fixed").getValue());
+            sum += doc.getDouble("spread").getValue();
+        }
+        assertEquals(50d, sum / n, 0.5d);
+    }
+
+    @Test
+    public void testCompressibility() {
+        final DocumentGenerator generator = new DocumentGenerator("{\"text\": \"$string:640\"}", 0.25d, 1L, fields);
+        final String text = generator.createDocument(1).getString("text").getValue();
+        int constant = 0;
+        for (final char c : text.toCharArray()) {
+            if (c == 'a') {
+                constant++;
+            }
+        }
+        // about two thirds of every block are filled up with the constant
+        assertTrue(constant > text.length() / 2);
+    }
+
+    @Test
+    public void testUpdateReplacesTemplateFields() {
+        final DocumentGenerator generator = new DocumentGenerator("{\"a\": \"$int:1..9\", \"b\": \"x\"}", 1d, 1L, fields);
+        final BsonDocument set = generator.createUpdate(5L).getDocument("$set");
+        assertEquals(2, set.size());
+        assertTrue(set.getInt32("a").getValue() >= 1 && set.getInt32("a").getValue() <= 9);
+        assertEquals("x", set.getString("b").getValue());
+        assertFalse(set.containsKey("_id"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidJson() {
+        new DocumentGenerator("{\"a\": ", 1d, 1L, fields);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownGenerator() {
+        new DocumentGenerator("{\"a\": \"$uuid\"}", 1d, 1L, fields);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedField() {
+        new DocumentGenerator("{\"group\": 1}", 1d, 1L, fields);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRange() {
+        new DocumentGenerator("{\"a\": \"$int:9..1\"}", 1d, 1L, fields);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeDeviation() {
+        new DocumentGenerator("{\"a\": \"$int:100~-1\"}", 1d, 1L, fields);
+    }
+
+    /**
+     * @return the document without the created field, which is the time of the generation
+     */
+    private static BsonDocument withoutDates(RawBsonDocument doc) {
+        final BsonDocument copy = new BsonDocument();
+        copy.putAll(doc);
+        copy.remove(IndexedFields.CREATED);
+        copy.remove("joined");
+        return copy;
+    }
+}
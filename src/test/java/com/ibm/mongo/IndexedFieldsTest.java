@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import com.mongodb.client.model.IndexModel;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedFieldsTest {
+
+    @Test
+    public void testNoFieldsByDefault() {
+        final IndexedFields fields = IndexedFields.create(new BenchConfig());
+        assertFalse(fields.hasGroup());
+        assertFalse(fields.hasValue());
+        assertFalse(fields.hasCreated());
+    }
+
+    @Test
+    public void testFieldsOfIndexes() {
+        final BenchConfig config = new BenchConfig();
+        config.setIndexes("group+-data,ttl:60");
+        final IndexedFields fields = IndexedFields.create(config);
+        assertTrue(fields.hasGroup());
+        assertFalse(fields.hasValue());
+        assertTrue(fields.hasCreated());
+    }
+
+    @Test
+    public void testFieldsOfWorkload() {
+        final BenchConfig config = new BenchConfig();
+        config.setOperationMix("read=1,range-query=1,count=0");
+        IndexedFields fields = IndexedFields.create(config);
+        assertFalse(fields.hasGroup());
+        assertTrue(fields.hasValue());
+        assertFalse(fields.hasCreated());
+
+        config.setOperationMix("read=1,sort=1");
+        fields = IndexedFields.create(config);
+        assertTrue(fields.hasGroup());
+        assertTrue(fields.hasValue());
+    }
+
+    @Test
+    public void testParseIndexes() {
+        final List<IndexModel> indexes = IndexedFields.parseIndexes("group+-value, value,TTL");
+        assertEquals(3, indexes.size());
+        assertEquals(new BsonDocument(IndexedFields.GROUP, new BsonInt32(1)).append(IndexedFields.VALUE, new BsonInt32(-1)), indexes.get(0).getKeys());
+        assertEquals(new BsonDocument(IndexedFields.VALUE, new BsonInt32(1)), indexes.get(1).getKeys());
+        assertEquals(new BsonDocument(IndexedFields.CREATED, new BsonInt32(1)), indexes.get(2).getKeys());
+        assertEquals(Long.valueOf(IndexedFields.DEFAULT_TTL_SECONDS), indexes.get(2).getOptions().getExpireAfter(TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownIndexedField() {
+        IndexedFields.parseIndexes("group+name");
+    }
+
+    @Test
+    public void testDerivedValuesInRange() {
+        final IndexedFields fields = new IndexedFields(7);
+        for (int id = -1000; id < 1000; id++) {
+            assertTrue(fields.getGroup(id) >= 0 && fields.getGroup(id) < 7);
+            assertTrue(fields.getValue(id) >= 0 && fields.getValue(id) < IndexedFields.VALUE_RANGE);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.bson.BsonDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalWriterTest {
+
+    private static final String HOST = "db,\"one\"\\\ntwo";
+    private static final String INSTANCE = HOST + ":27017";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCsvEscaping() throws IOException {
+        final File file = folder.newFile("intervals.csv");
+        writeSingleWindow(file);
+        final String csv = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        final String quoted = "\"db,\"\"one\"\"\\\ntwo:27017\"";
+        assertTrue(csv, csv.contains("," + quoted + ",read,1,"));
+        assertTrue(csv, csv.contains("," + quoted + ",all,1,"));
+        assertTrue(csv, csv.contains(",all,read,1,"));
+    }
+
+    @Test
+    public void testJsonEscaping() throws IOException {
+        final File file = folder.newFile("intervals.jsonl");
+        writeSingleWindow(file);
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        // every record is a single line, the line feed of the instance name is escaped
+        int instanceRecords = 0;
+        for (final String line : lines) {
+            final BsonDocument record = BsonDocument.parse(line);
+            final String instance = record.getString("instance").getValue();
+            if (instance.equals(INSTANCE)) {
+                instanceRecords++;
+                assertEquals(1L, record.getNumber("count").longValue());
+            } else {
+                assertEquals(IntervalWriter.ALL, instance);
+            }
+        }
+        assertEquals(2, instanceRecords);
+    }
+
+    private static void writeSingleWindow(File file) throws IOException {
+        final BenchConfig config = new BenchConfig();
+        config.setHost(HOST);
+        config.setInstances(new int[]{27017});
+        final MetricsRegistry metrics = new MetricsRegistry(config);
+        metrics.getPortStats(27017).record(OpType.READ, 2000000L);
+        // the window is written when closing
+        final IntervalWriter writer = new IntervalWriter(metrics, file.getPath(), 60000L);
+        writer.start();
+        writer.close();
+    }
+}
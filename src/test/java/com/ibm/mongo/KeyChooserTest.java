@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyChooserTest {
+
+    private static final int NUM_KEYS = 1000;
+    private static final int NUM_SAMPLES = 100000;
+
+    @Test
+    public void testCreate() {
+        assertTrue(KeyChooser.create("uniform", NUM_KEYS) instanceof UniformKeyChooser);
+        assertTrue(KeyChooser.create("Zipfian", NUM_KEYS) instanceof ZipfianKeyChooser);
+        assertTrue(KeyChooser.create("zipfian:0.5", NUM_KEYS) instanceof ZipfianKeyChooser);
+        assertTrue(KeyChooser.create("latest:0.9", NUM_KEYS) instanceof LatestKeyChooser);
+        assertTrue(KeyChooser.create("hotspot", NUM_KEYS) instanceof HotspotKeyChooser);
+        assertTrue(KeyChooser.create("hotspot:0.1:0.9", NUM_KEYS) instanceof HotspotKeyChooser);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDistribution() {
+        KeyChooser.create("gaussian", NUM_KEYS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfParameters() {
+        KeyChooser.create("hotspot:0.1", NUM_KEYS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidZipfianConstant() {
+        KeyChooser.create("zipfian:1.5", NUM_KEYS);
+    }
+
+    @Test
+    public void testKeysInRange() {
+        final KeySpace keys = new KeySpace(NUM_KEYS);
+        final Random random = new Random(42);
+        for (final String spec : new String[]{"uniform", "zipfian", "latest", "hotspot"}) {
+            final KeyChooser chooser = KeyChooser.create(spec, NUM_KEYS);
+            for (int i = 0; i < NUM_SAMPLES; i++) {
+                final int key = chooser.nextKey(keys, random);
+                assertTrue(spec + " chose " + key, key >= 0 && key < NUM_KEYS);
+            }
+        }
+    }
+
+    @Test
+    public void testZipfianPrefersLowRanks() {
+        final ZipfianKeyChooser chooser = new ZipfianKeyChooser(NUM_KEYS, ZipfianKeyChooser.DEFAULT_CONSTANT, false);
+        final Random random = new Random(42);
+        final int[] counts = new int[NUM_KEYS];
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            counts[chooser.nextRank(random)]++;
+        }
+        assertTrue(counts[0] > counts[1]);
+        assertTrue(counts[1] > counts[10]);
+        assertTrue(counts[10] > counts[NUM_KEYS - 1]);
+        // the most popular key gets 1 / zeta(1000, 0.99), i.e. about 13% of the operations
+        assertEquals(0.13d, counts[0] / (double) NUM_SAMPLES, 0.01d);
+    }
+
+    @Test
+    public void testLatestFollowsInserts() {
+        final KeySpace keys = new KeySpace(NUM_KEYS);
+        final LatestKeyChooser chooser = new LatestKeyChooser(NUM_KEYS, ZipfianKeyChooser.DEFAULT_CONSTANT);
+        final Random random = new Random(42);
+        keys.nextInsertKeys(500);
+        int latest = 0;
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            final int key = chooser.nextKey(keys, random);
+            assertTrue(key <= keys.latest());
+            if (key == keys.latest()) {
+                latest++;
+            }
+        }
+        assertTrue(latest > NUM_SAMPLES / 10);
+    }
+
+    @Test
+    public void testHotspotFractions() {
+        final KeySpace keys = new KeySpace(NUM_KEYS);
+        final HotspotKeyChooser chooser = new HotspotKeyChooser(0.2d, 0.8d);
+        final Random random = new Random(42);
+        int hot = 0;
+        for (int i = 0; i < NUM_SAMPLES; i++) {
+            if (chooser.nextKey(keys, random) < NUM_KEYS / 5) {
+                hot++;
+            }
+        }
+        assertEquals(0.8d, hot / (double) NUM_SAMPLES, 0.01d);
+    }
+}
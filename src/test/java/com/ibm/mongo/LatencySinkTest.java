@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LatencySinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConvertRoundTrip() throws IOException {
+        final String prefix = new File(folder.getRoot(), "lat").getPath();
+        // a small buffer, so the records are written in several batches
+        try (final LatencySink sink = new LatencySink(prefix + "_7" + LatencySink.FILE_SUFFIX, 4 * LatencySink.RECORD_SIZE)) {
+            for (int i = 0; i < 10; i++) {
+                sink.record(System.nanoTime(), i % 3 == 0 ? OpType.INSERT : OpType.READ, 27017, 1000L + i);
+            }
+        }
+        assertEquals(Collections.singletonList(new File(prefix + "_7" + LatencySink.FILE_SUFFIX)), LatencyFileConverter.findFiles(prefix));
+
+        new LatencyFileConverter().convertAll(prefix);
+
+        assertEquals(Arrays.asList("1000", "1003", "1006", "1009"), readLines(prefix + "_insert_7"));
+        assertEquals(Arrays.asList("1001", "1002", "1004", "1005", "1007", "1008"), readLines(prefix + "_read_7"));
+        assertFalse(new File(prefix + "_update_7").exists());
+    }
+
+    @Test
+    public void testRecorderWritesAllThreads() throws Exception {
+        final String prefix = new File(folder.getRoot(), "rec").getPath();
+        final int numThreads = 4;
+        // more than a single chunk per thread
+        final int perThread = 1000;
+        final LatencyRecorder recorder = new LatencyRecorder(prefix, 3);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final long latency = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    recorder.record(System.nanoTime(), OpType.READ, 27017, latency);
+                }
+            }));
+        }
+        for (final Thread t : threads) {
+            t.start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        recorder.close();
+
+        new LatencyFileConverter().convertAll(prefix);
+
+        final long[] counts = new long[numThreads];
+        final List<String> lines = readLines(prefix + "_read_3");
+        for (final String line : lines) {
+            counts[Integer.parseInt(line)]++;
+        }
+        assertEquals(numThreads * perThread, lines.size());
+        for (final long count : counts) {
+            assertEquals(perThread, count);
+        }
+    }
+
+    private static List<String> readLines(String fileName) throws IOException {
+        return Files.readAllLines(new File(fileName).toPath(), StandardCharsets.US_ASCII);
+    }
+}
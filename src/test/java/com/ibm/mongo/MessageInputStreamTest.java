@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MessageInputStreamTest {
+
+    @Test
+    public void testAllowedClasses() {
+        assertTrue(MessageInputStream.isAllowed("com.ibm.mongo.AgentMessage"));
+        assertTrue(MessageInputStream.isAllowed("com.ibm.mongo.AgentMessage$Type"));
+        assertTrue(MessageInputStream.isAllowed("org.HdrHistogram.Histogram"));
+        assertTrue(MessageInputStream.isAllowed("java.lang.Long"));
+        assertTrue(MessageInputStream.isAllowed("[J"));
+        assertTrue(MessageInputStream.isAllowed("[[I"));
+        assertTrue(MessageInputStream.isAllowed("[Ljava.lang.String;"));
+        assertTrue(MessageInputStream.isAllowed("[Lcom.ibm.mongo.RunResult;"));
+    }
+
+    @Test
+    public void testRejectedClasses() {
+        assertFalse(MessageInputStream.isAllowed("java.util.HashSet"));
+        assertFalse(MessageInputStream.isAllowed("java.lang.Runtime"));
+        assertFalse(MessageInputStream.isAllowed("[Ljava.lang.Runtime;"));
+        assertFalse(MessageInputStream.isAllowed("org.apache.commons.collections.functors.InvokerTransformer"));
+        assertFalse(MessageInputStream.isAllowed("com.ibm.mongodb.Gadget"));
+        // a class named like a primitive type code is not an array
+        assertFalse(MessageInputStream.isAllowed("J"));
+    }
+
+    @Test
+    public void testReadsProtocolMessages() throws Exception {
+        final AgentMessage message = read(write(new AgentMessage(AgentMessage.Type.MEASURE, 1234L)));
+        assertEquals(AgentMessage.Type.MEASURE, message.getType());
+        assertEquals(1234L, message.getPayload());
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void testRejectsForeignPayload() throws Exception {
+        read(write(new AgentMessage(AgentMessage.Type.RESULT, new HashSet<>())));
+    }
+
+    static byte[] write(Serializable object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    static AgentMessage read(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (final MessageInputStream in = new MessageInputStream(new ByteArrayInputStream(bytes))) {
+            return (AgentMessage) in.readObject();
+        }
+    }
+}
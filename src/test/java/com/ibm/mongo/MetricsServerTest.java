@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsServerTest {
+
+    @Test
+    public void testEscapesLabelValues() throws IOException {
+        final BenchConfig config = new BenchConfig();
+        config.setHost("a\"b\\c\nd");
+        config.setInstances(new int[]{27017});
+        final MetricsRegistry registry = new MetricsRegistry(config);
+        registry.getPortStats(27017).record(OpType.READ, 1500000L);
+        final MetricsServer server = new MetricsServer(registry, null, 0);
+        try {
+            final String metrics = server.render();
+            assertTrue(metrics, metrics.contains("mongobench_operations_total{instance=\"a\\\"b\\\\c\\nd:27017\",op=\"read\"} 1\n"));
+            for (final String line : metrics.split("\n")) {
+                assertTrue(line, line.startsWith("# ") || line.startsWith("mongobench_"));
+            }
+            assertFalse(metrics.contains("\"b\\c"));
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OpenLoopScheduleTest {
+
+    @Test
+    public void testConstantSpacing() {
+        final OpenLoopSchedule schedule = new OpenLoopSchedule(1000f, OpenLoopSchedule.Arrival.CONSTANT);
+        schedule.start();
+        final long first = schedule.peek();
+        assertEquals(first, schedule.next());
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(first + i * 1000000L, schedule.next());
+        }
+    }
+
+    @Test
+    public void testPeekDoesNotAdvance() {
+        final OpenLoopSchedule schedule = new OpenLoopSchedule(10f, OpenLoopSchedule.Arrival.POISSON);
+        schedule.start();
+        final long first = schedule.peek();
+        assertEquals(first, schedule.peek());
+        assertEquals(first, schedule.next());
+        assertTrue(schedule.peek() >= first);
+    }
+
+    @Test
+    public void testPoissonMeanInterval() {
+        final OpenLoopSchedule schedule = new OpenLoopSchedule(1000f, OpenLoopSchedule.Arrival.POISSON);
+        schedule.start();
+        final int n = 100000;
+        final long first = schedule.next();
+        long previous = first;
+        for (int i = 0; i < n; i++) {
+            final long next = schedule.next();
+            assertTrue(next >= previous);
+            previous = next;
+        }
+        // the mean of 100000 exponential intervals is within 2% of 1 ms with overwhelming probability
+        assertEquals(1000000d, (previous - first) / (double) n, 20000d);
+    }
+
+    @Test
+    public void testWaitUntil() {
+        final long deadline = System.nanoTime() + 2000000L;
+        OpenLoopSchedule.waitUntil(deadline);
+        assertTrue(System.nanoTime() >= deadline);
+        // a deadline in the past returns immediately
+        OpenLoopSchedule.waitUntil(deadline - 1000000000L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroRate() {
+        new OpenLoopSchedule(0f, OpenLoopSchedule.Arrival.CONSTANT);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class OperationMixTest {
+
+    @Test
+    public void testParseNormalizesWeights() {
+        final OperationMix mix = OperationMix.parse("read=3, insert=1,range-query=0");
+        assertEquals(0.75d, mix.getWeight(OpType.READ), 1e-9d);
+        assertEquals(0.25d, mix.getWeight(OpType.INSERT), 1e-9d);
+        assertEquals(0d, mix.getWeight(OpType.RANGE_QUERY), 0d);
+        assertEquals(0d, mix.getWeight(OpType.UPDATE), 0d);
+    }
+
+    @Test
+    public void testDefaultMix() {
+        final OperationMix mix = OperationMix.parse(OperationMix.DEFAULT_MIX);
+        assertEquals(0.9d, mix.getWeight(OpType.READ), 1e-9d);
+        assertEquals(0.1d, mix.getWeight(OpType.INSERT), 1e-9d);
+    }
+
+    @Test
+    public void testNextFollowsWeights() {
+        final OperationMix mix = OperationMix.parse("read=0.5,update=0.3,scan=0.2");
+        final Random random = new Random(42);
+        final Map<OpType, Integer> counts = new EnumMap<>(OpType.class);
+        final int n = 100000;
+        for (int i = 0; i < n; i++) {
+            counts.merge(mix.next(random), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        assertEquals(0.5d, counts.get(OpType.READ) / (double) n, 0.01d);
+        assertEquals(0.3d, counts.get(OpType.UPDATE) / (double) n, 0.01d);
+        assertEquals(0.2d, counts.get(OpType.SCAN) / (double) n, 0.01d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingWeight() {
+        OperationMix.parse("read");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOperation() {
+        OperationMix.parse("read=1,merge=1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeWeight() {
+        OperationMix.parse("read=1,insert=-1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoPositiveWeight() {
+        OperationMix.parse("read=0");
+    }
+}
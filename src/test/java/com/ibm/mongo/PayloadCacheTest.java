@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.RawBsonDocument;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCacheTest {
+
+    private final IndexedFields fields = new IndexedFields(10);
+
+    @Test
+    public void testPatchedInsertDocument() {
+        final PayloadCache payloads = new PayloadCache(100, 0, fields, null);
+        for (final int id : new int[]{0, 1, 4711, Integer.MAX_VALUE, -5}) {
+            assertFields(payloads.getInsertDocument(id), id, fields);
+            assertFields(payloads.getReusedInsertDocument(id), id, fields);
+        }
+        assertSame(payloads.getReusedInsertDocument(1), payloads.getReusedInsertDocument(2));
+        assertEquals(payloads.getInsertDocument(3).getByteBuffer().remaining() - 100, payloads.getInsertOverhead());
+    }
+
+    @Test
+    public void testPatchedIdFilter() {
+        final PayloadCache payloads = new PayloadCache(10, 4, fields, null);
+        for (final int id : new int[]{0, 3, 4, 123456, -1}) {
+            assertEquals(new BsonDocument("_id", new BsonInt32(id)), payloads.getIdFilter(id));
+            assertEquals(new BsonDocument("_id", new BsonInt32(id)), payloads.getReusedIdFilter(id));
+        }
+        assertSame(payloads.getIdFilter(2), payloads.getIdFilter(2));
+    }
+
+    @Test
+    public void testBatchHasDistinctData() {
+        final PayloadCache payloads = new PayloadCache(64, 0, fields, null);
+        final List<RawBsonDocument> docs = payloads.createDocuments(5, 100);
+        assertEquals(5, docs.size());
+        for (int i = 0; i < docs.size(); i++) {
+            assertFields(docs.get(i), 100 + i, fields);
+            assertEquals(64, docs.get(i).getString("data").getValue().length());
+        }
+        assertNotEquals(docs.get(0).getString("data"), docs.get(1).getString("data"));
+    }
+
+    @Test
+    public void testOnlyConfiguredFields() {
+        final IndexedFields valueOnly = new IndexedFields(10, false, true, false);
+        final PayloadCache payloads = new PayloadCache(16, 0, valueOnly, null);
+        for (final RawBsonDocument doc : new RawBsonDocument[]{payloads.getInsertDocument(42), payloads.getReusedInsertDocument(42), payloads.createDocuments(1, 42).get(0)}) {
+            assertEquals(42, doc.getInt32("_id").getValue());
+            assertEquals(valueOnly.getValue(42), doc.getInt32(IndexedFields.VALUE).getValue());
+            assertFalse(doc.containsKey(IndexedFields.GROUP));
+            assertFalse(doc.containsKey(IndexedFields.CREATED));
+            assertTrue(doc.containsKey("data"));
+        }
+    }
+
+    private static void assertFields(RawBsonDocument doc, int id, IndexedFields fields) {
+        assertEquals(id, doc.getInt32("_id").getValue());
+        assertEquals(fields.getGroup(id), doc.getInt32(IndexedFields.GROUP).getValue());
+        assertEquals(fields.getValue(id), doc.getInt32(IndexedFields.VALUE).getValue());
+        assertTrue(Math.abs(System.currentTimeMillis() - doc.getDateTime(IndexedFields.CREATED).getValue()) < 60000L);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PortSchedulerTest {
+
+    @Test
+    public void testPerPortCap() {
+        final PortScheduler<String> scheduler = createScheduler(2, new int[]{40001, 40002}, 0f, null);
+        scheduler.start();
+        final Map<Integer, Integer> perPort = new HashMap<>();
+        final List<PortScheduler.Slot<String>> taken = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final PortScheduler.Lease<String> lease = new PortScheduler.Lease<>();
+            assertTrue(scheduler.acquire(lease, stopAfter(1000)));
+            assertEquals("client" + lease.getSlot().getPort(), lease.getSlot().getClient());
+            assertEquals(0L, lease.getIntendedStart());
+            perPort.merge(lease.getSlot().getPort(), 1, Integer::sum);
+            taken.add(lease.getSlot());
+        }
+        assertEquals(Integer.valueOf(2), perPort.get(40001));
+        assertEquals(Integer.valueOf(2), perPort.get(40002));
+
+        // both instances are at their cap
+        assertFalse(scheduler.acquire(new PortScheduler.Lease<>(), stopAfter(50)));
+
+        // a release makes room for exactly one more request of that instance
+        final PortScheduler.Slot<String> released = taken.get(0);
+        scheduler.release(released);
+        final PortScheduler.Lease<String> lease = new PortScheduler.Lease<>();
+        assertTrue(scheduler.acquire(lease, stopAfter(1000)));
+        assertEquals(released.getPort(), lease.getSlot().getPort());
+        assertFalse(scheduler.acquire(new PortScheduler.Lease<>(), stopAfter(50)));
+        scheduler.close();
+    }
+
+    @Test
+    public void testReleaseWakesWaitingWorker() throws Exception {
+        final PortScheduler<String> scheduler = createScheduler(1, new int[]{40001}, 0f, null);
+        scheduler.start();
+        final PortScheduler.Lease<String> first = new PortScheduler.Lease<>();
+        assertTrue(scheduler.acquire(first, stopAfter(1000)));
+
+        final AtomicBoolean acquired = new AtomicBoolean();
+        final Thread waiter = new Thread(() -> acquired.set(scheduler.acquire(new PortScheduler.Lease<>(), stopAfter(5000))));
+        waiter.start();
+        Thread.sleep(50);
+        assertFalse(acquired.get());
+        scheduler.release(first.getSlot());
+        waiter.join(5000);
+        assertTrue(acquired.get());
+        scheduler.close();
+    }
+
+    @Test
+    public void testCapHoldsUnderContention() throws Exception {
+        final int concurrency = 2;
+        final int[] ports = {40001, 40002, 40003};
+        final PortScheduler<String> scheduler = createScheduler(concurrency, ports, 0f, null);
+        final AtomicInteger[] inFlight = new AtomicInteger[ports.length];
+        for (int i = 0; i < ports.length; i++) {
+            inFlight[i] = new AtomicInteger();
+        }
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger numRequests = new AtomicInteger();
+        scheduler.start();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                final PortScheduler.Lease<String> lease = new PortScheduler.Lease<>();
+                for (int i = 0; i < 2000; i++) {
+                    if (!scheduler.acquire(lease, stopAfter(5000))) {
+                        return;
+                    }
+                    final PortScheduler.Slot<String> slot = lease.getSlot();
+                    final int current = inFlight[slot.getIndex()].incrementAndGet();
+                    maxInFlight.accumulateAndGet(current, Math::max);
+                    inFlight[slot.getIndex()].decrementAndGet();
+                    numRequests.incrementAndGet();
+                    scheduler.release(slot);
+                }
+            }));
+        }
+        for (final Thread t : threads) {
+            t.start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(8 * 2000, numRequests.get());
+        assertTrue("max in flight " + maxInFlight.get(), maxInFlight.get() <= concurrency);
+        scheduler.close();
+    }
+
+    @Test
+    public void testRequestsTakenWhenDue() {
+        // 100 requests per second per instance, 10ms apart
+        final int[] ports = {40001, 40002};
+        final PortScheduler<String> scheduler = createScheduler(4, ports, 200f, OpenLoopSchedule.Arrival.CONSTANT);
+        assertTrue(scheduler.isOpenLoop());
+        scheduler.start();
+        final long interval = TimeUnit.MILLISECONDS.toNanos(10);
+        final long[] lastStart = new long[ports.length];
+        final int[] counts = new int[ports.length];
+        final PortScheduler.Lease<String> lease = new PortScheduler.Lease<>();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(scheduler.acquire(lease, stopAfter(1000)));
+            final long now = System.nanoTime();
+            final long intendedStart = lease.getIntendedStart();
+            final int index = lease.getSlot().getIndex();
+            assertTrue("taken before due", now - intendedStart >= 0);
+            if (counts[index] > 0) {
+                assertEquals(interval, (double) (intendedStart - lastStart[index]), interval / 100.0);
+            }
+            lastStart[index] = intendedStart;
+            counts[index]++;
+            scheduler.release(lease.getSlot());
+        }
+        // both instances keep their own schedule
+        assertTrue(counts[0] >= 9 && counts[1] >= 9);
+        scheduler.close();
+    }
+
+    @Test
+    public void testClosedLoopIgnoresIntendedStart() {
+        final PortScheduler<String> scheduler = createScheduler(1, new int[]{40001}, 1000f, null);
+        assertFalse(scheduler.isOpenLoop());
+        scheduler.start();
+        final PortScheduler.Lease<String> lease = new PortScheduler.Lease<>();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(scheduler.acquire(lease, stopAfter(1000)));
+            assertEquals(0L, lease.getIntendedStart());
+            scheduler.release(lease.getSlot());
+        }
+        scheduler.close();
+    }
+
+    private static PortScheduler<String> createScheduler(int concurrency, int[] ports, float targetRate, OpenLoopSchedule.Arrival arrival) {
+        final BenchConfig config = new BenchConfig();
+        config.setInstances(ports);
+        config.setTargetRate(targetRate);
+        config.setArrival(arrival);
+        return new PortScheduler<>(config, new MetricsRegistry(config), concurrency, port -> "client" + port, client -> {
+        });
+    }
+
+    private static BooleanSupplier stopAfter(long millis) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        return () -> System.nanoTime() - deadline > 0;
+    }
+}
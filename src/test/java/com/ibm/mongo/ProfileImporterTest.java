@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProfileImporterTest {
+
+    private static final long START_MILLIS = 1704103200000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMapping() throws IOException {
+        final String first = write("first.json",
+                "{\"op\":\"query\",\"ns\":\"app.users\",\"query\":{\"find\":\"users\",\"filter\":{\"_id\":5}},\"ts\":{\"$date\":\"2024-01-01T10:00:00.000Z\"}}",
+                "{\"op\":\"insert\",\"ns\":\"app.users\",\"query\":{\"insert\":\"users\",\"documents\":[{\"_id\":1,\"name\":\"abcdef\"},{\"_id\":2}]},\"ts\":{\"$date\":\"2024-01-01T10:00:00.100Z\"}}",
+                "not json",
+                "{\"op\":\"update\",\"ns\":\"app.users\",\"query\":{\"_id\":7},\"updateobj\":{\"$set\":{\"x\":1}},\"upsert\":true,\"ts\":{\"$date\":\"2024-01-01T10:00:00.250Z\"}}",
+                "{\"op\":\"command\",\"ns\":\"admin.$cmd\",\"command\":{\"serverStatus\":1},\"ts\":{\"$date\":\"2024-01-01T10:00:00.260Z\"}}",
+                "{\"op\":\"command\",\"ns\":\"app.$cmd\",\"command\":{\"count\":\"users\",\"query\":{\"group\":3}},\"ts\":{\"$date\":\"2024-01-01T10:00:00.400Z\"}}");
+        final String second = write("second.json",
+                "{\"op\":\"command\",\"ns\":\"shop.orders\",\"command\":{\"find\":\"orders\",\"filter\":{\"_id\":{\"$gte\":12345}}},\"ts\":{\"$date\":1704103200050}}",
+                "{\"op\":\"getmore\",\"ns\":\"shop.orders\",\"ts\":{\"$date\":\"2024-01-01T10:00:00.060Z\"}}",
+                "{\"op\":\"remove\",\"ns\":\"shop.orders\",\"query\":{\"_id\":-1},\"ts\":{\"$date\":\"2024-01-01T10:00:00.300Z\"}}",
+                "{\"op\":\"command\",\"ns\":\"app.$cmd\",\"command\":{\"findAndModify\":\"users\",\"query\":{\"_id\":9},\"update\":{\"$inc\":{\"n\":1}}},\"ts\":{\"$date\":\"2024-01-01T10:00:00.500Z\"}}");
+        final BenchConfig config = new BenchConfig();
+        config.setNumDocuments(1000);
+        final String traceFile = new File(folder.getRoot(), "trace.bin").getPath();
+
+        new ProfileImporter(config).importAll(new String[]{first, second}, traceFile);
+
+        final List<TraceRecord> records = read(traceFile, 7);
+        // the exports are merged by time, tenants are numbered by their first request
+        assertRecord(records.get(0), 0L, OpType.READ, 0, 5, 1);
+        assertRecord(records.get(1), 50L, OpType.SCAN, 1, 345, 1);
+        assertEquals(OpType.INSERT, records.get(2).getType());
+        assertEquals(2, records.get(2).getNumDocuments());
+        assertTrue(records.get(2).getPayloadSize() > "abcdef".length());
+        assertRecord(records.get(3), 250L, OpType.UPSERT, 0, 7, 1);
+        assertTrue(records.get(3).getPayloadSize() > 0);
+        assertRecord(records.get(4), 300L, OpType.DELETE, 1, 999, 1);
+        assertEquals(OpType.COUNT, records.get(5).getType());
+        assertEquals(400L * 1000000L, records.get(5).getTime());
+        // filters without an _id are hashed into the collection
+        for (final TraceRecord record : records) {
+            assertTrue(record.getKey() >= 0 && record.getKey() < 1000);
+        }
+        // the same database in another export is a separate tenant
+        assertRecord(records.get(6), 500L, OpType.READ_MODIFY_WRITE, 2, 9, 1);
+    }
+
+    @Test
+    public void testNoRequests() throws IOException {
+        final String export = write("admin.json",
+                "{\"op\":\"command\",\"ns\":\"admin.$cmd\",\"command\":{\"serverStatus\":1},\"ts\":{\"$date\":\"2024-01-01T10:00:00.000Z\"}}");
+        try {
+            new ProfileImporter(new BenchConfig()).importAll(new String[]{export}, new File(folder.getRoot(), "trace.bin").getPath());
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("No requests found in the profiler exports", e.getMessage());
+        }
+    }
+
+    private static void assertRecord(TraceRecord record, long millis, OpType type, int tenant, int key, int numDocuments) {
+        assertEquals(millis * 1000000L, record.getTime());
+        assertEquals(type, record.getType());
+        assertEquals(tenant, record.getPort());
+        assertEquals(key, record.getKey());
+        assertEquals(numDocuments, record.getNumDocuments());
+    }
+
+    private String write(String name, String... lines) throws IOException {
+        final File file = folder.newFile(name);
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file.getPath();
+    }
+
+    private static List<TraceRecord> read(String traceFile, int expected) throws IOException {
+        final List<TraceRecord> records = new ArrayList<>();
+        try (final TraceReader reader = new TraceReader(traceFile)) {
+            assertEquals(START_MILLIS, reader.getStartMillis());
+            TraceRecord record = new TraceRecord();
+            while (reader.next(record)) {
+                records.add(record);
+                record = new TraceRecord();
+            }
+        }
+        assertEquals(expected, records.size());
+        return records;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class RunResultTest {
+
+    @Test
+    public void testMergeAgents() {
+        final RunResult first = collect(1000L, 27017, 27018);
+        final RunResult second = collect(1200L, 27018, 27019);
+        first.getLatencies(OpType.READ).recordValue(1000L);
+        second.getLatencies(OpType.READ).recordValue(3000L);
+        second.getLatencies(OpType.INSERT).recordValue(5000L);
+
+        first.add(second);
+
+        assertEquals(1200L, first.getDuration());
+        assertEquals(2L, first.getLatencies(OpType.READ).getTotalCount());
+        assertEquals(first.getLatencies(OpType.READ).highestEquivalentValue(3000L), first.getLatencies(OpType.READ).getMaxValue());
+        assertEquals(1L, first.getLatencies(OpType.INSERT).getTotalCount());
+        final Map<String, RunResult.InstanceResult> instances = new HashMap<>();
+        for (final RunResult.InstanceResult instance : first.getInstances()) {
+            instances.put(instance.getName(), instance);
+        }
+        assertEquals(3, instances.size());
+        // the instance driven by both results is merged
+        assertEquals(2L, instances.get("localhost:27018").getErrors());
+        assertEquals(2L, instances.get("localhost:27018").getLatencies().getTotalCount());
+        assertEquals(1L, instances.get("localhost:27017").getErrors());
+        assertEquals(1L, instances.get("localhost:27019").getLatencies().getTotalCount());
+    }
+
+    @Test
+    public void testSentToCoordinator() throws Exception {
+        final RunResult result = collect(1000L, 27017);
+        result.getLatencies(OpType.UPDATE).recordValue(2000L);
+        final AgentMessage message = MessageInputStreamTest.read(MessageInputStreamTest.write(new AgentMessage(AgentMessage.Type.RESULT, result)));
+        final RunResult received = (RunResult) message.getPayload();
+        assertEquals(1000L, received.getDuration());
+        assertEquals(1L, received.getLatencies(OpType.UPDATE).getTotalCount());
+        assertEquals(1, received.getInstances().size());
+    }
+
+    /**
+     * @return the result of an agent driving the given ports with one read and one error per port
+     */
+    private static RunResult collect(long duration, int... ports) {
+        final BenchConfig config = new BenchConfig();
+        config.setHost("localhost");
+        config.setInstances(ports);
+        final MetricsRegistry metrics = new MetricsRegistry(config);
+        for (final int port : ports) {
+            metrics.getPortStats(port).record(OpType.READ, 1000000L);
+            metrics.getPortStats(port).recordError();
+        }
+        return RunResult.collect(Collections.emptyList(), metrics, null, duration);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017, IBM All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you
+ * may not use this file except in compliance with the License. You
+ * may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License. See accompanying
+ * LICENSE file.
+ */
+
+package com.ibm.mongo;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraceReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final String fileName = new File(folder.getRoot(), "trace.bin").getPath();
+        final OpType[] types = OpType.values();
+        final int numRecords = 5000;
+        try (final TraceWriter writer = new TraceWriter(fileName, 1234567L)) {
+            for (int i = 0; i < numRecords; i++) {
+                writer.write(i * 1000L, types[i % types.length], 40001 + i % 3, i, i % 7 * 100, 1 + i % 4);
+            }
+        }
+        assertEquals(TraceWriter.HEADER_SIZE + (long) numRecords * TraceWriter.RECORD_SIZE, new File(fileName).length());
+
+        try (final TraceReader reader = new TraceReader(fileName)) {
+            assertEquals(1234567L, reader.getStartMillis());
+            assertEquals(numRecords, reader.getNumRecords());
+            assertEquals((numRecords - 1) * 1000L, reader.getLength());
+            final TraceRecord record = new TraceRecord();
+            for (int i = 0; i < numRecords; i++) {
+                assertTrue(reader.next(record));
+                assertEquals(i * 1000L, record.getTime());
+                assertEquals(types[i % types.length], record.getType());
+                assertEquals(40001 + i % 3, record.getPort());
+                assertEquals(i, record.getKey());
+                assertEquals(i % 7 * 100, record.getPayloadSize());
+                assertEquals(1 + i % 4, record.getNumDocuments());
+            }
+            assertFalse(reader.next(record));
+        }
+    }
+
+    @Test
+    public void testEmptyTrace() throws IOException {
+        final String fileName = new File(folder.getRoot(), "empty.bin").getPath();
+        new TraceWriter(fileName, 42L).close();
+        try (final TraceReader reader = new TraceReader(fileName)) {
+            assertEquals(0L, reader.getNumRecords());
+            assertEquals(0L, reader.getLength());
+            assertFalse(reader.next(new TraceRecord()));
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws IOException {
+        final File file = folder.newFile("other.bin");
+        try (final RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.writeInt(0x12345678);
+            out.writeInt(TraceWriter.VERSION);
+            out.writeLong(0L);
+        }
+        try {
+            new TraceReader(file.getPath()).close();
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Not a trace file"));
+        }
+    }
+}